@@ -0,0 +1,53 @@
+package com.rchome.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks selected on the command line, which takes the usual
+ * JMH options, with the GC profiler attached so every result carries its
+ * allocation rate. Afterwards prints the bytes per entry measured by
+ * {@link BuildBenchmark}.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        boolean header = false;
+        for(RunResult result : results) {
+            if(!result.getParams().getBenchmark().equals(BuildBenchmark.class.getName() + ".build")) {
+                continue;
+            }
+            Result allocation = null;
+            for(Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if(secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                    allocation = secondary.getValue();
+                }
+            }
+            if(allocation == null) {
+                continue;
+            }
+            if(!header) {
+                System.out.println();
+                System.out.printf("%-16s %10s %14s%n", "implementation", "size", "bytes/entry");
+                header = true;
+            }
+            int size = Integer.parseInt(result.getParams().getParam("size"));
+            System.out.printf("%-16s %10d %14.1f%n", result.getParams().getParam("implementation"), size,
+                    allocation.getScore() / size);
+        }
+    }
+}
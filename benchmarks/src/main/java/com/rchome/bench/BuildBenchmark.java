@@ -0,0 +1,58 @@
+package com.rchome.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a whole map of <tt>size</tt> shuffled keys per invocation. The keys
+ * and values are boxed beforehand, so under the GC profiler the normalized
+ * allocation divided by <tt>size</tt> is the heap cost of one entry.
+ * {@link BenchmarkMain} prints that figure. Storage outside the heap, as in
+ * <tt>OffHeapBST</tt>, is not counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildBenchmark {
+    @Param
+    public Implementation implementation;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Long[] keys;
+
+    @Setup
+    public void setUp() {
+        long[] order = Distribution.UNIFORM.insertionOrder(size, new Random(42));
+        keys = new Long[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = order[i];
+        }
+    }
+
+    @Benchmark
+    public Map<Long, Long> build() {
+        Map<Long, Long> map = implementation.create();
+        for(Long key : keys) {
+            map.put(key, key);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,132 @@
+package com.rchome.bench;
+
+import com.rchome.bst.ConcurrentBST;
+import com.rchome.bst.DefaultBST;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a map shared by several threads, preloaded with half of
+ * <tt>2 * KEYS</tt> keys so that puts and removes keep its size steady.
+ * Scaling is measured by overriding the thread count with <tt>-t</tt>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentScalingBenchmark {
+    private static final int KEYS = 100_000;
+
+    public enum Target {
+        CONCURRENT_BST {
+            @Override
+            Map<Long, Long> create() {
+                return new ConcurrentBST<>();
+            }
+        },
+        SYNCHRONIZED_DEFAULT_BST {
+            @Override
+            Map<Long, Long> create() {
+                return Collections.synchronizedMap(new DefaultBST<>());
+            }
+        },
+        CONCURRENT_SKIP_LIST_MAP {
+            @Override
+            Map<Long, Long> create() {
+                return new ConcurrentSkipListMap<>();
+            }
+        };
+
+        abstract Map<Long, Long> create();
+    }
+
+    @Param
+    public Target target;
+
+    private Map<Long, Long> map;
+    private Long[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = new Long[2 * KEYS];
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = (long) i;
+        }
+        map = target.create();
+        Random random = new Random(42);
+        for(int i = 0; i < KEYS; i++) {
+            Long key = keys[random.nextInt(keys.length)];
+            map.put(key, key);
+        }
+    }
+
+    /**
+     * Gets <tt>readPercent</tt>% of the time, otherwise puts or removes in
+     * equal parts.
+     */
+    private Long operate(int readPercent) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long key = keys[random.nextInt(keys.length)];
+        int operation = random.nextInt(100);
+        if(operation < readPercent) {
+            return map.get(key);
+        }
+        else if((operation & 1) == 0) {
+            return map.put(key, key);
+        }
+        else {
+            return map.remove(key);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long readMostly() {
+        return operate(90);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long mixed() {
+        return operate(50);
+    }
+
+    /**
+     * Three threads only reading while a fourth only writes, so the read
+     * throughput shows how much a writer holds readers up.
+     */
+    @Benchmark
+    @Group("readersAndWriter")
+    @GroupThreads(3)
+    public Long reader() {
+        return operate(100);
+    }
+
+    @Benchmark
+    @Group("readersAndWriter")
+    @GroupThreads(1)
+    public Long writer() {
+        return operate(0);
+    }
+}
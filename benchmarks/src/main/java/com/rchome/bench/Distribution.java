@@ -0,0 +1,98 @@
+package com.rchome.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Orders in which keys <tt>0..size-1</tt> are inserted and looked up.
+ */
+public enum Distribution {
+    /** Shuffled inserts, uniformly random lookups. */
+    UNIFORM {
+        @Override
+        long[] insertionOrder(int size, Random random) {
+            long[] keys = ascending(size);
+            shuffle(keys, random);
+            return keys;
+        }
+    },
+    /** Ascending inserts, the worst case for an unbalanced tree. */
+    SORTED {
+        @Override
+        long[] insertionOrder(int size, Random random) {
+            return ascending(size);
+        }
+    },
+    /** Descending inserts. */
+    REVERSE_SORTED {
+        @Override
+        long[] insertionOrder(int size, Random random) {
+            long[] keys = ascending(size);
+            for(int i = 0, j = size - 1; i < j; i++, j--) {
+                long key = keys[i];
+                keys[i] = keys[j];
+                keys[j] = key;
+            }
+            return keys;
+        }
+    },
+    /**
+     * Shuffled inserts, lookups following Zipf's law with exponent 1 over a
+     * random ranking of the keys, so the hot keys are spread over the tree.
+     */
+    ZIPFIAN {
+        @Override
+        long[] insertionOrder(int size, Random random) {
+            return UNIFORM.insertionOrder(size, random);
+        }
+
+        @Override
+        Long[] lookups(long[] keys, int count, Random random) {
+            long[] ranked = keys.clone();
+            shuffle(ranked, random);
+            double[] cumulative = new double[ranked.length];
+            double sum = 0;
+            for(int i = 0; i < ranked.length; i++) {
+                sum += 1.0 / (i + 1);
+                cumulative[i] = sum;
+            }
+            Long[] lookups = new Long[count];
+            for(int i = 0; i < count; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                lookups[i] = ranked[Math.min(rank < 0 ? -rank - 1 : rank, ranked.length - 1)];
+            }
+            return lookups;
+        }
+    };
+
+    abstract long[] insertionOrder(int size, Random random);
+
+    /**
+     * Returns <tt>count</tt> keys drawn from <tt>keys</tt>, boxed up front so
+     * that benchmarks do not measure boxing.
+     */
+    Long[] lookups(long[] keys, int count, Random random) {
+        Long[] lookups = new Long[count];
+        for(int i = 0; i < count; i++) {
+            lookups[i] = keys[random.nextInt(keys.length)];
+        }
+        return lookups;
+    }
+
+    private static long[] ascending(int size) {
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = i;
+        }
+        return keys;
+    }
+
+    private static void shuffle(long[] keys, Random random) {
+        for(int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.rchome.bench;
+
+import com.rchome.bst.ByteCodec;
+import com.rchome.bst.DurableBST;
+import com.rchome.bst.DurableBST.SyncPolicy;
+import com.rchome.bst.RedBlackBST;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Puts through a {@link DurableBST} in a temporary directory, from several
+ * threads so that {@link SyncPolicy#ALWAYS} can share fsyncs among them.
+ * The log is compacted every few megabytes, so the cost of checkpoints is
+ * included.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class DurableBenchmark {
+    private static final int KEYS = 100_000;
+    private static final long COMPACTION_THRESHOLD = 16 << 20;
+
+    @Param
+    public SyncPolicy policy;
+
+    private Path directory;
+    private DurableBST<Long, Long> tree;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("durable-benchmark");
+        tree = DurableBST.open(directory, new RedBlackBST<>(), ByteCodec.LONG, ByteCodec.LONG, policy,
+                               DurableBST.DEFAULT_SYNC_INTERVAL_MILLIS, COMPACTION_THRESHOLD);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        tree.close();
+        List<Path> paths = new ArrayList<>();
+        try(Stream<Path> walk = Files.walk(directory)) {
+            walk.forEach(paths::add);
+        }
+        paths.sort(Comparator.reverseOrder());
+        for(Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public Long put() {
+        long key = ThreadLocalRandom.current().nextInt(KEYS);
+        return tree.put(key, key);
+    }
+}
@@ -0,0 +1,74 @@
+package com.rchome.bench;
+
+import com.rchome.bst.FrozenLongMap;
+import com.rchome.bst.FrozenMap;
+import com.rchome.bst.RedBlackBST;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in a red-black tree against its frozen copies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrozenBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private RedBlackBST<Long, Long> tree;
+    private FrozenMap<Long, Long> frozen;
+    private FrozenLongMap<Long> frozenLong;
+    private Long[] lookups;
+    private long[] primitiveLookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long[] keys = Distribution.UNIFORM.insertionOrder(size, random);
+        tree = new RedBlackBST<>();
+        for(long key : keys) {
+            tree.put(key, key);
+        }
+        frozen = tree.freeze();
+        frozenLong = FrozenLongMap.of(tree);
+        lookups = Distribution.UNIFORM.lookups(keys, LOOKUPS, random);
+        primitiveLookups = new long[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++) {
+            primitiveLookups[i] = lookups[i];
+        }
+    }
+
+    @Benchmark
+    public Long tree() {
+        return tree.get(lookups[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public Long frozen() {
+        return frozen.get(lookups[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public Long frozenLong() {
+        return frozenLong.get(primitiveLookups[next++ & (LOOKUPS - 1)]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.rchome.bench;
+
+import com.rchome.bst.BinarySearchTree;
+import com.rchome.bst.ByteCodec;
+import com.rchome.bst.CompactBST;
+import com.rchome.bst.ConcurrentBST;
+import com.rchome.bst.DefaultBST;
+import com.rchome.bst.LongLongBST;
+import com.rchome.bst.OffHeapBST;
+import com.rchome.bst.PersistentBST;
+import com.rchome.bst.RedBlackBST;
+import com.rchome.bst.SplayBST;
+import com.rchome.btree.BPlusTree;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The maps under benchmark, all valued by <tt>Long</tt> so that the
+ * primitive and off-heap trees can take part.
+ */
+public enum Implementation {
+    TREE_MAP {
+        @Override
+        <K> Map<K, Long> create() {
+            return new TreeMap<>();
+        }
+    },
+    DEFAULT_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new DefaultBST<>();
+        }
+    },
+    RED_BLACK_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new RedBlackBST<>();
+        }
+    },
+    SPLAY_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new SplayBST<>();
+        }
+    },
+    COMPACT_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new CompactBST<>();
+        }
+    },
+    CONCURRENT_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new ConcurrentBST<>();
+        }
+    },
+    PERSISTENT_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return new PersistentBST<>();
+        }
+    },
+    LONG_LONG_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return (Map<K, Long>) (Map<?, Long>) new LongLongBST();
+        }
+    },
+    OFF_HEAP_BST {
+        @Override
+        <K> Map<K, Long> create() {
+            return (Map<K, Long>) (Map<?, Long>) new OffHeapBST<>(ByteCodec.LONG, ByteCodec.LONG);
+        }
+    },
+    B_PLUS_TREE {
+        @Override
+        <K> Map<K, Long> create() {
+            return new BPlusTree<>();
+        }
+    };
+
+    /**
+     * Creates an empty map. The primitive and off-heap trees only accept
+     * <tt>Long</tt> keys.
+     */
+    abstract <K> Map<K, Long> create();
+
+    /**
+     * Returns the height of a map made by {@link #create()}, or -1 for the
+     * implementations that do not expose one.
+     */
+    static int height(Map<Long, Long> map) {
+        if(map instanceof BinarySearchTree) {
+            return ((BinarySearchTree<Long, Long>) map).getHeight();
+        }
+        else if(map instanceof CompactBST) {
+            return ((CompactBST<Long, Long>) map).getHeight();
+        }
+        else if(map instanceof LongLongBST) {
+            return ((LongLongBST) map).getHeight();
+        }
+        else if(map instanceof OffHeapBST) {
+            return ((OffHeapBST<Long, Long>) map).getHeight();
+        }
+        else if(map instanceof BPlusTree) {
+            return ((BPlusTree<Long, Long>) map).getHeight();
+        }
+        return -1;
+    }
+}
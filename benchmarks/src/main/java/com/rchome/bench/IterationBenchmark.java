@@ -0,0 +1,64 @@
+package com.rchome.bench;
+
+import com.rchome.bst.BinarySearchTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scans of the binary search trees with and without in-order threading.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IterationBenchmark {
+    @Param({"DEFAULT_BST", "RED_BLACK_BST", "SPLAY_BST"})
+    public Implementation implementation;
+
+    @Param({"false", "true"})
+    public boolean threaded;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private BinarySearchTree<Long, Long> tree;
+
+    @Setup
+    public void setUp() {
+        tree = (BinarySearchTree<Long, Long>) implementation.<Long>create();
+        tree.setThreaded(threaded);
+        for(long key : Distribution.UNIFORM.insertionOrder(size, new Random(42))) {
+            tree.put(key, key);
+        }
+    }
+
+    @Benchmark
+    public void ascending(Blackhole blackhole) {
+        for(Map.Entry<Long, Long> entry : tree.entrySet()) {
+            blackhole.consume(entry.getKey());
+        }
+    }
+
+    @Benchmark
+    public void descending(Blackhole blackhole) {
+        for(Long key : tree.descendingKeySet()) {
+            blackhole.consume(key);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.rchome.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations against a map preloaded with <tt>size</tt> keys inserted
+ * in the order given by the distribution. Each invocation uses the next key
+ * of a precomputed lookup sequence, so every operation hits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param
+    public Implementation implementation;
+
+    @Param
+    public Distribution distribution;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Map<Long, Long> map;
+    private Long[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long[] keys = distribution.insertionOrder(size, random);
+        lookups = distribution.lookups(keys, LOOKUPS, random);
+        map = implementation.create();
+        for(long key : keys) {
+            map.put(key, key);
+        }
+    }
+
+    private Long nextKey() {
+        return lookups[next++ & (LOOKUPS - 1)];
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(nextKey());
+    }
+
+    /**
+     * Overwrites the value of a present key.
+     */
+    @Benchmark
+    public Long put() {
+        Long key = nextKey();
+        return map.put(key, key);
+    }
+
+    /**
+     * Adds to the value of a present key, as a counting workload does.
+     */
+    @Benchmark
+    public Long merge() {
+        return map.merge(nextKey(), 1L, Long::sum);
+    }
+
+    /**
+     * Removes a key and inserts it again, which keeps the size steady.
+     */
+    @Benchmark
+    public Long removeAndPut() {
+        Long key = nextKey();
+        map.remove(key);
+        return map.put(key, key);
+    }
+
+    /**
+     * Walks every entry; divide by <tt>size</tt> for the cost per entry.
+     */
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for(Map.Entry<Long, Long> entry : map.entrySet()) {
+            blackhole.consume(entry.getKey());
+        }
+    }
+
+    /**
+     * Reports -1 for the maps without a height.
+     */
+    @Benchmark
+    public int getHeight() {
+        return Implementation.height(map);
+    }
+}
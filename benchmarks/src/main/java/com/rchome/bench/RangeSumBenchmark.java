@@ -0,0 +1,83 @@
+package com.rchome.bench;
+
+import com.rchome.bst.AggregateBST;
+import com.rchome.bst.LongSumBST;
+import com.rchome.bst.RedBlackBST;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summing the values of a key range covering a tenth of the tree, by
+ * iterating a sub map against the aggregate-caching trees.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RangeSumBenchmark {
+    private static final int QUERIES = 1 << 10;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private RedBlackBST<Long, Long> tree;
+    private AggregateBST<Long, Long> monoid;
+    private LongSumBST<Long, Long> longSum;
+    private Long[] lows, highs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        tree = new RedBlackBST<>();
+        monoid = new AggregateBST<>(Long::sum, 0L);
+        longSum = LongSumBST.ofLongs();
+        for(long key : Distribution.UNIFORM.insertionOrder(size, random)) {
+            tree.put(key, key);
+            monoid.put(key, key);
+            longSum.put(key, key);
+        }
+        lows = new Long[QUERIES];
+        highs = new Long[QUERIES];
+        for(int i = 0; i < QUERIES; i++) {
+            lows[i] = (long) random.nextInt(size);
+            highs[i] = lows[i] + size / 10;
+        }
+    }
+
+    @Benchmark
+    public long iterate() {
+        int i = next++ & (QUERIES - 1);
+        long sum = 0;
+        for(long value : tree.subMap(lows[i], highs[i]).values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Long monoid() {
+        int i = next++ & (QUERIES - 1);
+        return monoid.aggregate(lows[i], highs[i]);
+    }
+
+    @Benchmark
+    public long longSum() {
+        int i = next++ & (QUERIES - 1);
+        return longSum.sum(lows[i], highs[i]);
+    }
+}
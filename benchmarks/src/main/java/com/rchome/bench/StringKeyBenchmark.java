@@ -0,0 +1,73 @@
+package com.rchome.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in maps keyed by random strings. <tt>sharedPrefix</tt> is the
+ * number of leading characters all keys have in common, which decides how
+ * often a comparison can be settled by the first characters alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StringKeyBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"TREE_MAP", "DEFAULT_BST", "RED_BLACK_BST", "SPLAY_BST", "CONCURRENT_BST", "PERSISTENT_BST", "B_PLUS_TREE"})
+    public Implementation implementation;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"0", "8"})
+    public int sharedPrefix;
+
+    private Map<String, Long> map;
+    private String[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] keys = new String[size];
+        map = implementation.create();
+        for(int i = 0; i < size; i++) {
+            StringBuilder key = new StringBuilder();
+            for(int j = 0; j < sharedPrefix; j++) {
+                key.append('k');
+            }
+            for(int j = 0; j < 12; j++) {
+                key.append((char) ('a' + random.nextInt(26)));
+            }
+            keys[i] = key.toString();
+            map.put(keys[i], (long) i);
+        }
+        lookups = new String[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++) {
+            // copies, so that equal keys are not found by reference
+            lookups[i] = new String(keys[random.nextInt(size)]);
+        }
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(lookups[next++ & (LOOKUPS - 1)]);
+    }
+}
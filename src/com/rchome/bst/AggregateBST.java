@@ -0,0 +1,120 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+import java.util.function.BinaryOperator;
+
+/**
+ * A red-black tree that can combine the values of any range of keys in
+ * <tt>O(log n)</tt> time. The values form a monoid: <tt>combine</tt> must be
+ * associative and <tt>identity</tt> neutral for it, but <tt>combine</tt>
+ * need not be commutative, since values are always combined in key order.
+ * Sums, minima, maxima, string concatenation and the like all fit; counts
+ * are already available from {@link #countInRange}.
+ * <p/>
+ * Every node caches the combination of its subtree, so each update
+ * combines <tt>O(log n)</tt> values too. For sums of <tt>long</tt> or
+ * <tt>double</tt> values, {@link LongSumBST} and {@link DoubleSumBST} do the
+ * same without boxing.
+ * <p/>
+ * The set operations of a {@link BinarySearchTreeSet} over this tree may
+ * call <tt>combine</tt> from several fork-join pool threads at once, on
+ * separate subtrees.
+ */
+public class AggregateBST<K, V> extends AggregatingBST<K, V> {
+
+    private final BinaryOperator<V> combine;
+    private final V identity;
+
+    private class MonoidNode extends AggregateNode {
+        V aggregate;
+
+        MonoidNode(K key, V value) {
+            super(key, value);
+            aggregate = value;
+        }
+    }
+
+    public AggregateBST(BinaryOperator<V> combine, V identity) {
+        this(combine, identity, null);
+    }
+
+    public AggregateBST(BinaryOperator<V> combine, V identity, Comparator<? super K> comparator) {
+        super(comparator);
+        if(combine == null) {
+            throw new NullPointerException();
+        }
+        this.combine = combine;
+        this.identity = identity;
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        return new AggregateBST<>(combine, identity, comparator());
+    }
+
+    @Override
+    protected Node createNode(K key, V value) {
+        return new MonoidNode(key, value);
+    }
+
+    @Override
+    protected void updateNode(Node node) {
+        super.updateNode(node);
+        V aggregate = node.getValue();
+        if(node.left != null) {
+            aggregate = combine.apply(aggregateOf(node.left), aggregate);
+        }
+        if(node.right != null) {
+            aggregate = combine.apply(aggregate, aggregateOf(node.right));
+        }
+        ((MonoidNode) node).aggregate = aggregate;
+    }
+
+    private V aggregateOf(Node node) {
+        return ((MonoidNode) node).aggregate;
+    }
+
+    /**
+     * Returns the combination of every value in the tree, or the identity if
+     * it is empty.
+     */
+    public V aggregate() {
+        return root == null ? identity : aggregateOf(root);
+    }
+
+    /**
+     * Returns the combination of the values of the keys <tt>k</tt> with
+     * <tt>lo &lt;= k &lt; hi</tt>.
+     */
+    public V aggregate(K lo, K hi) {
+        return aggregate(lo, true, hi, false);
+    }
+
+    /**
+     * Returns the combination, in key order, of the values of the keys
+     * between <tt>lo</tt> and <tt>hi</tt>, each end included or excluded as
+     * requested, or the identity if there are none.
+     *
+     * @throws NullPointerException if either bound is null and this tree
+     *                              does not permit null keys
+     */
+    public V aggregate(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        MonoidAccumulator accumulator = new MonoidAccumulator();
+        addRange(accumulator, lo, loInclusive, hi, hiInclusive);
+        return accumulator.aggregate;
+    }
+
+    private class MonoidAccumulator extends Accumulator {
+        V aggregate = identity;
+
+        @Override
+        void addNode(Node node) {
+            aggregate = combine.apply(aggregate, node.getValue());
+        }
+
+        @Override
+        void addSubtree(Node node) {
+            aggregate = combine.apply(aggregate, aggregateOf(node));
+        }
+    }
+}
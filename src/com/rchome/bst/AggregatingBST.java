@@ -0,0 +1,102 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+
+/**
+ * A red-black tree whose nodes cache an aggregate of the values in their
+ * subtree, such as a sum, so that a range of keys can be aggregated in
+ * logarithmic time. Subclasses recompute a node's aggregate from its
+ * children in {@link #updateNode}, which every structural change already
+ * calls to keep sizes right, and fold the pieces of a range together with
+ * an {@link Accumulator}.
+ */
+abstract class AggregatingBST<K, V> extends RedBlackBST<K, V> {
+
+    AggregatingBST(Comparator<? super K> comparator) {
+        super(comparator);
+    }
+
+    @Override
+    protected boolean supportsThreading() {
+        return false;
+    }
+
+    protected class AggregateNode extends RedBlackNode {
+
+        protected AggregateNode(K key, V value) {
+            super(key, value);
+        }
+
+        /**
+         * Replaces the value and updates the aggregates of every subtree it
+         * belongs to. The node may have been created by another tree and
+         * moved here by a split, join or set operation, so its path is
+         * updated without asking which tree it is in.
+         */
+        @Override
+        public V setValue(V value) {
+            V old = super.setValue(value);
+            updatePath(this);
+            return old;
+        }
+    }
+
+    /**
+     * The aggregate of one range query, built up by {@link #addRange}. Each
+     * query has its own, so concurrent readers do not interfere.
+     */
+    abstract class Accumulator {
+        /**
+         * Folds the value of <tt>node</tt> alone into the aggregate.
+         */
+        abstract void addNode(Node node);
+
+        /**
+         * Folds the cached aggregate of the subtree rooted at <tt>node</tt>
+         * into the aggregate.
+         */
+        abstract void addSubtree(Node node);
+    }
+
+    /**
+     * Calls <tt>addNode</tt> and <tt>addSubtree</tt> on <tt>accumulator</tt>,
+     * in key order, for the nodes and whole subtrees that together hold
+     * exactly the keys between <tt>lo</tt> and <tt>hi</tt>. Only the two
+     * search paths for the bounds are walked, so there are
+     * <tt>O(log n)</tt> calls.
+     */
+    final void addRange(Accumulator accumulator, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        compare(lo, hi); // type (and possibly null) check, even on an empty tree
+        addRange(accumulator, root, lo, loInclusive, hi, hiInclusive, true, true);
+    }
+
+    private void addRange(Accumulator accumulator, Node node, K lo, boolean loInclusive, K hi, boolean hiInclusive,
+                          boolean checkLo, boolean checkHi) {
+        while(node != null) {
+            if(!checkLo && !checkHi) {
+                accumulator.addSubtree(node);
+                return;
+            }
+            K key = node.getKey();
+            if(checkLo) {
+                int compare = compare(key, lo);
+                if(compare < 0 || (compare == 0 && !loInclusive)) {
+                    node = node.right;
+                    continue;
+                }
+            }
+            if(checkHi) {
+                int compare = compare(key, hi);
+                if(compare > 0 || (compare == 0 && !hiInclusive)) {
+                    node = node.left;
+                    continue;
+                }
+            }
+            // everything left of here is below hi, everything right above lo
+            addRange(accumulator, node.left, lo, loInclusive, hi, hiInclusive, checkLo, false);
+            accumulator.addNode(node);
+            node = node.right;
+            checkLo = false;
+        }
+    }
+}
@@ -1,16 +1,41 @@
 package com.rchome.bst;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Created by Raymond on 12/9/2014.
  */
-public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
+public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
 
     protected Node root;
     protected int modCount;
+    // how compare() orders keys, chosen once there are keys so that it
+    // need not test for a comparator or cast to Comparable on every call
+    private static final int NATURAL_KEYS = 0, INTEGER_KEYS = 1, LONG_KEYS = 2, STRING_KEYS = 3, COMPARATOR_KEYS = 4;
+
     private Comparator<? super K> comparator;
+    // what compare() uses for COMPARATOR_KEYS: the comparator, or a counting
+    // wrapper while metrics are enabled
+    private Comparator<? super K> order;
+    private int keyOrder;
+    private TreeMetrics metrics;
+    private boolean threaded;
     private int size;
+    // where the last unsuccessful search fell off the tree: the parent for
+    // a new node (null in an empty tree) and the side
+    private Node searchParent;
+    private int searchCompare;
+    // views, created on first use
+    private transient EntrySet entrySet;
+    private transient KeySet<K> keySet;
+    private transient Values values;
+    private transient NavigableMap<K, V> descendingMap;
 
     private static boolean nullSafeEquals(Object o1, Object o2) {
         return o1 == null ? o2 == null : o1.equals(o2);
@@ -18,6 +43,8 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
 
     protected class Node implements Entry<K, V> {
         Node left, right, parent;
+        // number of nodes and height (in edges) of the subtree rooted here
+        int size = 1, height;
         private K key;
         private V value;
 
@@ -98,10 +125,6 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
             return old;
         }
 
-        void setKey(K key) {
-            this.key = key;
-        }
-
         boolean isLeftChild() {
             return parent != null && parent.left == this;
         }
@@ -109,12 +132,195 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
         boolean isRightChild() {
             return parent != null && parent.right == this;
         }
+
+        // in-order neighbours, which only the nodes of threaded trees keep
+        Node prev() {
+            return null;
+        }
+
+        Node next() {
+            return null;
+        }
+
+        void setPrev(Node prev) {
+            throw new UnsupportedOperationException();
+        }
+
+        void setNext(Node next) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The node {@link #createThreadedNode} returns, which links to its
+     * in-order neighbours.
+     */
+    protected class ThreadedNode extends Node {
+        private Node prev, next;
+
+        public ThreadedNode(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        Node prev() {
+            return prev;
+        }
+
+        @Override
+        Node next() {
+            return next;
+        }
+
+        @Override
+        void setPrev(Node prev) {
+            this.prev = prev;
+        }
+
+        @Override
+        void setNext(Node next) {
+            this.next = next;
+        }
     }
 
     public BinarySearchTree() {}
 
     public BinarySearchTree(Comparator<? super K> comparator) {
         this.comparator = comparator;
+        this.order = comparator;
+        if(comparator != null) {
+            keyOrder = COMPARATOR_KEYS;
+        }
+    }
+
+    /**
+     * Starts collecting metrics, if this tree is not already, and returns
+     * the object that holds them. Until {@link #disableMetrics()} is called,
+     * every comparison and structural change is counted.
+     */
+    public TreeMetrics enableMetrics() {
+        if(metrics == null) {
+            final TreeMetrics counters = new TreeMetrics();
+            final Comparator<? super K> comparator = this.comparator;
+            order = (key1, key2) -> {
+                counters.comparisons++;
+                return comparator == null ? ((Comparable<? super K>) key1).compareTo(key2) : comparator.compare(key1, key2);
+            };
+            keyOrder = COMPARATOR_KEYS;
+            metrics = counters;
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops collecting metrics. The object returned by
+     * {@link #enableMetrics()} keeps its last values.
+     */
+    public void disableMetrics() {
+        metrics = null;
+        order = comparator;
+        keyOrder = comparator == null ? NATURAL_KEYS : COMPARATOR_KEYS;
+        if(root != null) {
+            chooseKeyOrder(root.key);
+        }
+    }
+
+    /**
+     * Turns in-order threading on or off. A threaded tree links every node
+     * to its predecessor and successor as it changes, so iterating over it
+     * in either direction, whole or over a range, follows one pointer per
+     * entry instead of climbing the tree. Keeping the links costs a few
+     * writes per insert and removal, and 8 bytes per entry with compressed
+     * references, as only the nodes of a threaded tree have the two link
+     * fields. Switching rebuilds the tree balanced with the other kind of
+     * node, which takes linear time.
+     *
+     * @throws UnsupportedOperationException if this kind of tree cannot be
+     *                                       threaded
+     */
+    public void setThreaded(boolean threaded) {
+        if(threaded == this.threaded) {
+            return;
+        }
+        if(threaded && !supportsThreading()) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be threaded");
+        }
+        List<Entry<K, V>> entries = new ArrayList<>(size);
+        for(Node node = firstNode(); node != null; node = successor(node)) {
+            entries.add(node);
+        }
+        this.threaded = threaded;
+        buildFromSorted(entries.iterator(), entries.size());
+    }
+
+    public boolean isThreaded() {
+        return threaded;
+    }
+
+    /**
+     * Recomputes the in-order links of every node of a threaded tree.
+     */
+    private void rethread() {
+        Node previous = null;
+        for(Node node = firstNode(); node != null; node = walkSuccessor(node)) {
+            node.setPrev(previous);
+            if(previous != null) {
+                previous.setNext(node);
+            }
+            previous = node;
+        }
+        if(previous != null) {
+            previous.setNext(null);
+        }
+    }
+
+    /**
+     * Links a node that has just been attached as a leaf between its
+     * in-order neighbours, if the tree is threaded. This must happen after
+     * setting the node's parent and before any rebalancing, while the parent
+     * is still one of the neighbours.
+     */
+    protected void threadLeaf(Node node) {
+        if(!threaded) {
+            return;
+        }
+        Node parent = node.parent;
+        if(parent.left == node) {
+            node.setNext(parent);
+            node.setPrev(parent.prev());
+        }
+        else {
+            node.setPrev(parent);
+            node.setNext(parent.next());
+        }
+        if(node.prev() != null) {
+            node.prev().setNext(node);
+        }
+        if(node.next() != null) {
+            node.next().setPrev(node);
+        }
+    }
+
+    /**
+     * Picks the fastest way to compare keys like <tt>key</tt> when the tree
+     * uses their natural ordering. Integer, Long and String are final, so
+     * every other key the tree can hold has the same class.
+     */
+    private void chooseKeyOrder(K key) {
+        if(order != null) {
+            return;
+        }
+        Class<?> type = key.getClass();
+        keyOrder = type == String.class ? STRING_KEYS :
+                type == Integer.class ? INTEGER_KEYS :
+                type == Long.class ? LONG_KEYS : NATURAL_KEYS;
+    }
+
+    /**
+     * Returns the metrics being collected, or null if they are disabled.
+     */
+    public TreeMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -129,31 +335,118 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
         return size;
     }
 
+    /**
+     * Returns the number of edges on the longest path from the root to a
+     * leaf, or 0 if the tree is empty.
+     */
     public int getHeight() {
-        if(root == null) {
-            return 0;
+        return root == null ? 0 : root.height;
+    }
+
+    /**
+     * Returns the number of keys in this map strictly less than
+     * <tt>key</tt>, which is the index <tt>key</tt> has or would have in
+     * ascending order.
+     */
+    public int rank(K key) {
+        return rank(key, false);
+    }
+
+    /**
+     * Returns the number of keys less than (or equal to, if
+     * <tt>inclusive</tt>) <tt>key</tt>.
+     */
+    protected int rank(K key, boolean inclusive) {
+        int rank = 0;
+        Node current = root;
+        while(current != null) {
+            int compare = compare(key, current.key);
+            if(compare < 0 || (compare == 0 && !inclusive)) {
+                current = current.left;
+            }
+            else {
+                rank += sizeOf(current.left) + 1;
+                if(compare == 0) {
+                    break;
+                }
+                current = current.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the key at position <tt>index</tt> in ascending order.
+     *
+     * @throws IndexOutOfBoundsException if <tt>index</tt> is negative or not
+     *                                   less than {@link #size()}
+     */
+    public K select(int index) {
+        return selectNode(index).key;
+    }
+
+    protected Node selectNode(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
         }
-        Queue<Node> frontier = new ArrayDeque<>();
-        Queue<Integer> heights = new ArrayDeque<>();
-        frontier.add(root);
-        heights.add(0);
-        int maxHeight = 0;
-        while(!frontier.isEmpty()) {
-            Node current = frontier.remove();
-            Integer height = heights.remove();
-            if(height > maxHeight) {
-                maxHeight = height;
+        Node current = root;
+        while(true) {
+            int leftSize = sizeOf(current.left);
+            if(index < leftSize) {
+                current = current.left;
             }
-            if(current.left != null) {
-                frontier.add(current.left);
-                heights.add(height + 1);
+            else if(index > leftSize) {
+                index -= leftSize + 1;
+                current = current.right;
             }
-            if(current.right != null) {
-                frontier.add(current.right);
-                heights.add(height + 1);
+            else {
+                return current;
             }
         }
-        return maxHeight;
+    }
+
+    /**
+     * Returns the number of keys <tt>k</tt> with <tt>lo &lt;= k &lt; hi</tt>.
+     */
+    public int countInRange(K lo, K hi) {
+        return countInRange(lo, true, hi, false);
+    }
+
+    /**
+     * Returns the number of keys between <tt>lo</tt> and <tt>hi</tt>, each
+     * end included or excluded as requested.
+     */
+    public int countInRange(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        return Math.max(0, rank(hi, hiInclusive) - rank(lo, !loInclusive));
+    }
+
+    private static int sizeOf(BinarySearchTree<?, ?>.Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int heightOf(BinarySearchTree<?, ?>.Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    /**
+     * Recomputes the subtree size and height of <tt>node</tt> from its
+     * children, which must already be up to date.
+     */
+    protected void updateNode(Node node) {
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+        node.height = Math.max(heightOf(node.left), heightOf(node.right)) + 1;
+    }
+
+    /**
+     * Recomputes <tt>node</tt> and every ancestor of it. Subclasses call this
+     * from the lowest node whose subtree changed after linking or unlinking a
+     * node; rotations keep the two nodes they move up to date themselves.
+     */
+    protected void updatePath(Node node) {
+        while(node != null) {
+            updateNode(node);
+            node = node.parent;
+        }
     }
 
     /**
@@ -189,6 +482,9 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
     }
 
     protected Node getNode(Object key) {
+        if(metrics != null) {
+            return getNodeMetered((K) key);
+        }
         K key1 = (K) key;
         Node current = root;
         while(current != null) {
@@ -208,11 +504,44 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
         return null;
     }
 
+    /**
+     * The same search as {@link #getNode}, kept apart so that the metrics
+     * cost nothing when they are disabled.
+     */
+    private Node getNodeMetered(K key) {
+        Node current = root;
+        int visited = 0;
+        while(current != null) {
+            findOperation(current);
+            visited++;
+            int compare = compare(key, current.key);
+            if(compare < 0) {
+                current = current.left;
+            }
+            else if(compare > 0) {
+                current = current.right;
+            }
+            else {
+                break;
+            }
+        }
+        metrics.recordLookup(visited);
+        return current;
+    }
+
     protected int compare(K key1, K key2) {
-        if(comparator == null) {
-            return ((Comparable<? super K>)key1).compareTo(key2);
+        switch(keyOrder) {
+            case INTEGER_KEYS:
+                return Integer.compare((Integer) key1, (Integer) key2);
+            case LONG_KEYS:
+                return Long.compare((Long) key1, (Long) key2);
+            case STRING_KEYS:
+                return ((String) key1).compareTo((String) key2);
+            case COMPARATOR_KEYS:
+                return order.compare(key1, key2);
+            default:
+                return ((Comparable<? super K>)key1).compareTo(key2);
         }
-        return comparator.compare(key1, key2);
     }
 
     protected abstract void findOperation(Node current);
@@ -251,6 +580,142 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
         return node.getValue();
     }
 
+    /**
+     * Looks up every key of <tt>keys</tt>, storing the value mapped to
+     * <tt>keys[i]</tt> (or <tt>null</tt>) in <tt>values[i]</tt>, and
+     * returns how many keys were found. Each search resumes from where the
+     * previous one ended, so when the keys are in ascending order the whole
+     * batch of <tt>k</tt> lookups takes <tt>O(k log(n/k + 1))</tt> time on
+     * the balanced trees. Keys in any other order are still found, just
+     * without the saving. Unlike {@link #get}, this does not splay.
+     *
+     * @throws IllegalArgumentException if <tt>values</tt> is shorter than <tt>keys</tt>
+     * @throws NullPointerException     if a key is null
+     */
+    public int getAll(K[] keys, V[] values) {
+        if(values.length < keys.length) {
+            throw new IllegalArgumentException("values is shorter than keys");
+        }
+        Finger finger = new Finger();
+        int found = 0;
+        for(int i = 0; i < keys.length; i++) {
+            Node node = finger.seek(keys[i]);
+            values[i] = node == null ? null : node.getValue();
+            if(node != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the mappings of this tree for the keys in <tt>keys</tt> that
+     * it contains, as a new tree of the same kind. The keys are looked up
+     * as in {@link #getAll(Object[], Object[])}.
+     *
+     * @throws NullPointerException if a key is null
+     */
+    public SortedMap<K, V> getAll(SortedSet<? extends K> keys) {
+        List<Node> matches = new ArrayList<>();
+        Finger finger = new Finger();
+        for(K key : keys) {
+            Node node = finger.seek(key);
+            if(node != null) {
+                matches.add(node);
+            }
+        }
+        BinarySearchTree<K, V> result = newTree();
+        if(Objects.equals(comparator, keys.comparator())) {
+            result.buildFromSorted(matches.iterator(), matches.size());
+        }
+        else {
+            for(Node node : matches) {
+                result.put(node.key, node.value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether every element of <tt>keys</tt> is a key in this
+     * tree. A {@link SortedSet} ordered like this tree is checked in a single
+     * pass as in {@link #getAll(Object[], Object[])}; other collections
+     * are checked key by key.
+     *
+     * @throws ClassCastException   if a key cannot be compared with the keys in this tree
+     * @throws NullPointerException if a key is null
+     */
+    public boolean containsAllKeys(Collection<?> keys) {
+        if(keys instanceof SortedSet && Objects.equals(comparator, ((SortedSet<?>) keys).comparator())) {
+            Finger finger = new Finger();
+            for(Object key : keys) {
+                if(finger.seek((K) key) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for(Object key : keys) {
+            if(getNode(key) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The node a batch of searches last stopped at. Each search climbs from
+     * there only until it reaches a subtree whose key range must contain the
+     * key it is looking for, and descends from that subtree, so a key close
+     * to the previous one is found in time logarithmic in the distance
+     * between them rather than in the size of the tree.
+     */
+    private class Finger {
+        private Node node;
+
+        /**
+         * Returns the node for <tt>key</tt>, or <tt>null</tt> if there is
+         * none.
+         */
+        Node seek(K key) {
+            Node current = node == null ? root : node;
+            if(current == null) {
+                compare(key, key); // type (and possibly null) check
+                return null;
+            }
+            int compare = compare(key, current.key);
+            if(compare != 0) {
+                // current's subtree holds the finger, so its bound on the far
+                // side from key is already past key; climb until the bound on
+                // key's side is too
+                Node finger = current;
+                while(current.parent != null) {
+                    Node parent = current.parent;
+                    if(compare > 0 ? current == parent.left && compare(key, parent.key) < 0
+                                   : current == parent.right && compare(key, parent.key) > 0) {
+                        break;
+                    }
+                    current = parent;
+                }
+                if(current != finger) {
+                    compare = compare(key, current.key);
+                }
+            }
+            while(true) {
+                node = current;
+                if(compare == 0) {
+                    return current;
+                }
+                Node child = compare < 0 ? current.left : current.right;
+                if(child == null) {
+                    return null;
+                }
+                current = child;
+                compare = compare(key, current.key);
+            }
+        }
+    }
+
     /**
      * Associates the specified value with the specified key in this map
      * (optional operation).  If the map previously contained a mapping for
@@ -277,128 +742,1868 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
      */
     @Override
     public V put(K key, V value) {
+        Node node = search(key);
+        if(node == null) {
+            addNode(key, value);
+            return null;
+        }
+        V old = node.getValue();
+        replaceValue(node, value);
+        return old;
+    }
+
+    /**
+     * Finds the node for <tt>key</tt> like {@link #getNode}, but when there
+     * is none remembers where the search fell off the tree, so that
+     * {@link #addNode} can link a new node there without searching again.
+     */
+    private Node search(K key) {
         if(key == null) {
             throw new NullPointerException();
         }
-        Node prevNode = insertNode(new Node(key, value));
-        if(prevNode == null) {
-            size++;
-            return null;
+        if(root == null) {
+            chooseKeyOrder(key);
         }
-        modCount++;
-        return prevNode.getValue();
+        Node parent = null;
+        Node current = root;
+        int compare = 0;
+        while(current != null) {
+            compare = compare(key, current.key);
+            if(compare == 0) {
+                return current;
+            }
+            parent = current;
+            current = compare < 0 ? current.left : current.right;
+        }
+        searchParent = parent;
+        searchCompare = compare;
+        return null;
     }
 
-    protected abstract Node insertNode(Node node);
-
     /**
-     * Removes the mapping for a key from this map if it is present
-     * (optional operation).   More formally, if this map contains a mapping
-     * from key <tt>k</tt> to value <tt>v</tt> such that
-     * <code>(key==null ?  k==null : key.equals(k))</code>, that mapping
-     * is removed.  (The map can contain at most one such mapping.)
-     * <p/>
-     * <p>Returns the value to which this map previously associated the key,
-     * or <tt>null</tt> if the map contained no mapping for the key.
-     * <p/>
-     * <p>If this map permits null values, then a return value of
-     * <tt>null</tt> does not <i>necessarily</i> indicate that the map
-     * contained no mapping for the key; it's also possible that the map
-     * explicitly mapped the key to <tt>null</tt>.
-     * <p/>
-     * <p>The map will not contain a mapping for the specified key once the
-     * call returns.
-     *
-     * @param key key whose mapping is to be removed from the map
-     * @return the previous value associated with <tt>key</tt>, or
-     * <tt>null</tt> if there was no mapping for <tt>key</tt>.
-     * @throws UnsupportedOperationException if the <tt>remove</tt> operation
-     *                                       is not supported by this map
-     * @throws ClassCastException            if the key is of an inappropriate type for
-     *                                       this map
-     *                                       (<a href="Collection.html#optional-restrictions">optional</a>)
-     * @throws NullPointerException          if the specified key is null and this
-     *                                       map does not permit null keys
-     *                                       (<a href="Collection.html#optional-restrictions">optional</a>)
+     * Adds a node for a key the last {@link #search} did not find, then lets
+     * the subclass rebalance through {@link #insertNode}. Nothing may run
+     * between that search and this call, since any other lookup can move
+     * nodes or search again.
      */
-    @Override
-    public V remove(Object key) {
-        Node node = getNode(key);
-        if(node == null) {
-            return null;
+    private void addNode(K key, V value) {
+        Node node = newNode(key, value);
+        Node parent = searchParent;
+        searchParent = null;
+        if(parent == null) {
+            root = node;
         }
-        V value = node.getValue();
+        else {
+            if(searchCompare < 0) {
+                parent.left = node;
+            }
+            else {
+                parent.right = node;
+            }
+            node.parent = parent;
+            threadLeaf(node);
+        }
+        size++;
         modCount++;
-        size--;
-        removeNode(node);
-        return value;
+        if(metrics != null) {
+            metrics.inserts++;
+        }
+        insertNode(node);
     }
 
-    protected abstract void removeNode(Node node);
+    /**
+     * Rebalances the tree after {@link #put} or one of its relatives has
+     * linked <tt>node</tt> in as a new leaf (or as the root of an empty
+     * tree) and threaded it. The sizes above it are not yet updated.
+     */
+    protected abstract void insertNode(Node node);
 
     /**
-     * Removes all of the mappings from this map (optional operation).
-     * The map will be empty after this call returns.
+     * Stores <tt>value</tt> in the existing <tt>node</tt> for {@link #put},
+     * {@link #merge} and the like. The node stays where it is, so nothing is
+     * allocated and iterators remain valid.
+     */
+    protected void replaceValue(Node node, V value) {
+        node.setValue(value);
+        if(metrics != null) {
+            metrics.replaces++;
+        }
+    }
+
+    /**
+     * Throws if a function passed to {@link #compute} and the like added or
+     * removed keys, which would leave the node it was called for stale.
+     */
+    private void checkUnmodified(int expectedModCount) {
+        if(modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Sets the result of a remapping function for <tt>key</tt>, whose node
+     * (null if absent) was found before calling it: removes the mapping when
+     * the result is null.
+     */
+    private V remap(Node node, K key, V value) {
+        if(value == null) {
+            if(node != null) {
+                deleteNode(node);
+            }
+        }
+        else if(node == null) {
+            // the function may have looked up other keys since the search
+            search(key);
+            addNode(key, value);
+        }
+        else {
+            replaceValue(node, value);
+        }
+        return value;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Node node = search(key);
+        if(node == null) {
+            addNode(key, value);
+            return null;
+        }
+        V old = node.getValue();
+        if(old == null) {
+            replaceValue(node, value);
+        }
+        return old;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if(mappingFunction == null) {
+            throw new NullPointerException();
+        }
+        Node node = search(key);
+        if(node != null && node.getValue() != null) {
+            return node.getValue();
+        }
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        if(value == null) {
+            return null;
+        }
+        checkUnmodified(expectedModCount);
+        return remap(node, key, value);
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if(remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        Node node = search(key);
+        if(node == null || node.getValue() == null) {
+            return null;
+        }
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, node.getValue());
+        checkUnmodified(expectedModCount);
+        return remap(node, key, value);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if(remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        Node node = search(key);
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key, node == null ? null : node.getValue());
+        checkUnmodified(expectedModCount);
+        return remap(node, key, value);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if(value == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        Node node = search(key);
+        if(node == null) {
+            addNode(key, value);
+            return value;
+        }
+        V old = node.getValue();
+        if(old == null) {
+            replaceValue(node, value);
+            return value;
+        }
+        int expectedModCount = modCount;
+        V merged = remappingFunction.apply(old, value);
+        checkUnmodified(expectedModCount);
+        return remap(node, key, merged);
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map. When
+     * <tt>m</tt> is a {@link SortedMap} ordered the same way as this tree,
+     * the two are merged in order and the tree is rebuilt balanced in linear
+     * time, unless <tt>m</tt> is small enough that individual puts are
+     * cheaper.
      *
-     * @throws UnsupportedOperationException if the <tt>clear</tt> operation
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if <tt>m</tt> is null or contains a null key
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if(m instanceof SortedMap && Objects.equals(comparator, ((SortedMap<?, ?>) m).comparator())) {
+            int otherSize = m.size();
+            if(root == null) {
+                buildFromSorted(m.entrySet().iterator(), otherSize);
+                return;
+            }
+            int depth = 32 - Integer.numberOfLeadingZeros(size);
+            if((long) otherSize * depth > size + otherSize) {
+                mergeSorted(SetOperation.UNION, m.entrySet().iterator());
+                return;
+            }
+        }
+        super.putAll(m);
+    }
+
+    /**
+     * Merges this tree's entries with <tt>entries</tt>, which must be in
+     * ascending key order, keeping those that belong to the result of
+     * <tt>operation</tt>, and rebuilds the tree from them. For equal keys the
+     * union takes the value from <tt>entries</tt> and the intersection keeps
+     * this tree's.
+     */
+    private void mergeSorted(SetOperation operation, Iterator<? extends Entry<? extends K, ? extends V>> entries) {
+        List<Entry<? extends K, ? extends V>> merged = new ArrayList<>();
+        Iterator<Entry<K, V>> mine = entrySet().iterator();
+        Entry<K, V> a = mine.hasNext() ? mine.next() : null;
+        Entry<? extends K, ? extends V> b = entries.hasNext() ? entries.next() : null;
+        while(a != null || b != null) {
+            int compare = a == null ? 1 : b == null ? -1 : compare(a.getKey(), b.getKey());
+            if(compare < 0) {
+                if(operation != SetOperation.INTERSECTION) {
+                    merged.add(a);
+                }
+                a = mine.hasNext() ? mine.next() : null;
+            }
+            else if(compare > 0) {
+                if(operation == SetOperation.UNION || operation == SetOperation.SYMMETRIC_DIFFERENCE) {
+                    merged.add(b);
+                }
+                b = entries.hasNext() ? entries.next() : null;
+            }
+            else {
+                if(operation == SetOperation.UNION) {
+                    merged.add(b);
+                }
+                else if(operation == SetOperation.INTERSECTION) {
+                    merged.add(a);
+                }
+                a = mine.hasNext() ? mine.next() : null;
+                b = entries.hasNext() ? entries.next() : null;
+            }
+        }
+        buildFromSorted(merged.iterator(), merged.size());
+    }
+
+    /**
+     * Replaces the contents of this tree with <tt>size</tt> entries read
+     * from <tt>entries</tt>, which must be in ascending key order without
+     * duplicates; this is not checked. The middle entry of every range
+     * becomes the root of its subtree, so the result is balanced, and no
+     * keys are compared.
+     */
+    protected void buildFromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        int bottom = size == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(size);
+        int incompleteLevel = Integer.bitCount(size + 1) == 1 ? -1 : bottom;
+        root = buildFromSorted(entries, 0, size - 1, 0, incompleteLevel);
+        this.size = size;
+        modCount++;
+        if(root != null) {
+            chooseKeyOrder(root.key);
+        }
+        if(threaded) {
+            rethread();
+        }
+    }
+
+    private Node buildFromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries,
+                                 int lo, int hi, int depth, int incompleteLevel) {
+        if(lo > hi) {
+            return null;
+        }
+        int middle = (lo + hi) >>> 1;
+        Node left = buildFromSorted(entries, lo, middle - 1, depth + 1, incompleteLevel);
+        Entry<? extends K, ? extends V> entry = entries.next();
+        if(entry.getKey() == null) {
+            throw new NullPointerException();
+        }
+        Node node = newNode(entry.getKey(), entry.getValue());
+        node.left = left;
+        if(left != null) {
+            left.parent = node;
+        }
+        node.right = buildFromSorted(entries, middle + 1, hi, depth + 1, incompleteLevel);
+        if(node.right != null) {
+            node.right.parent = node;
+        }
+        updateNode(node);
+        builtNode(node, depth == incompleteLevel);
+        return node;
+    }
+
+    /**
+     * Returns an immutable copy of this tree laid out for fast lookups (see
+     * {@link FrozenMap}), which needs two array slots per entry instead of a
+     * node. For
+     * <tt>Long</tt> keys in their natural order, {@link FrozenLongMap#of}
+     * gives a copy that looks keys up without boxing.
+     */
+    public FrozenMap<K, V> freeze() {
+        return new FrozenMap<>(comparator, entrySet().iterator(), size);
+    }
+
+    /**
+     * Writes every mapping of this tree to <tt>path</tt> in key order, in the
+     * compact checksummed format read back by {@link #readSnapshot}.
+     * Any existing file at <tt>path</tt> is replaced atomically, and kept as
+     * it was if writing fails.
+     *
+     * @throws IllegalArgumentException if a key or value does not fit its codec
+     */
+    public void writeSnapshot(Path path, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+        TreeSnapshot.write(path, entrySet().iterator(), size, keyCodec, valueCodec);
+    }
+
+    /**
+     * Replaces the contents of this tree with a snapshot written by
+     * {@link #writeSnapshot}. The file is memory-mapped, its checksums are
+     * verified, and the tree is rebuilt balanced without comparing keys,
+     * so loading costs little more than reading the file. The snapshot must
+     * have been written by a tree with the same ordering; this is not
+     * checked. If loading fails the tree is left unchanged.
+     *
+     * @throws IOException if the file cannot be read or is not an intact snapshot
+     */
+    public void readSnapshot(Path path, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+        TreeSnapshot.read(path, this, keyCodec, valueCodec);
+    }
+
+    /**
+     * Called for each node {@link #buildFromSorted} creates, once its
+     * subtree is complete. <tt>incompleteLevel</tt> is true for nodes on the
+     * bottom level when that level is not full.
+     */
+    protected void builtNode(Node node, boolean incompleteLevel) {}
+
+    /**
+     * Creates the node that {@link #put} links in for a new key.
+     * Subclasses that keep extra per-node state (colors, sizes, ...) override
+     * this to return their own subclass of {@link Node}, and override
+     * {@link #createThreadedNode} or {@link #supportsThreading} with it.
+     */
+    protected Node createNode(K key, V value) {
+        return new Node(key, value);
+    }
+
+    /**
+     * Creates a node like {@link #createNode} that also keeps the in-order
+     * links of a threaded tree.
+     */
+    protected Node createThreadedNode(K key, V value) {
+        return new ThreadedNode(key, value);
+    }
+
+    /**
+     * Whether {@link #createThreadedNode} returns the same kind of node as
+     * {@link #createNode}, so that the tree can be threaded.
+     */
+    protected boolean supportsThreading() {
+        return true;
+    }
+
+    private Node newNode(K key, V value) {
+        return threaded ? createThreadedNode(key, value) : createNode(key, value);
+    }
+
+    /**
+     * Rotates the subtree rooted at <tt>node</tt> to the left, so that its
+     * right child takes its place.
+     */
+    protected void rotateLeft(Node node) {
+        if(metrics != null) {
+            metrics.rotations++;
+        }
+        Node pivot = node.right;
+        node.right = pivot.left;
+        if(pivot.left != null) {
+            pivot.left.parent = node;
+        }
+        replaceChild(node, pivot);
+        pivot.left = node;
+        node.parent = pivot;
+        updateNode(node);
+        updateNode(pivot);
+    }
+
+    /**
+     * Rotates the subtree rooted at <tt>node</tt> to the right, so that its
+     * left child takes its place.
+     */
+    protected void rotateRight(Node node) {
+        if(metrics != null) {
+            metrics.rotations++;
+        }
+        Node pivot = node.left;
+        node.left = pivot.right;
+        if(pivot.right != null) {
+            pivot.right.parent = node;
+        }
+        replaceChild(node, pivot);
+        pivot.right = node;
+        node.parent = pivot;
+        updateNode(node);
+        updateNode(pivot);
+    }
+
+    /**
+     * Links <tt>replacement</tt> into the position <tt>node</tt> occupies
+     * under its parent (or the root). The children of both nodes are left
+     * untouched.
+     */
+    protected void replaceChild(Node node, Node replacement) {
+        if(node.parent == null) {
+            // the root, or the root of a subtree detached while splitting or joining
+            if(node == root) {
+                root = replacement;
+            }
+        }
+        else if(node.isLeftChild()) {
+            node.parent.left = replacement;
+        }
+        else {
+            node.parent.right = replacement;
+        }
+        if(replacement != null) {
+            replacement.parent = node.parent;
+        }
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present
+     * (optional operation).   More formally, if this map contains a mapping
+     * from key <tt>k</tt> to value <tt>v</tt> such that
+     * <code>(key==null ?  k==null : key.equals(k))</code>, that mapping
+     * is removed.  (The map can contain at most one such mapping.)
+     * <p/>
+     * <p>Returns the value to which this map previously associated the key,
+     * or <tt>null</tt> if the map contained no mapping for the key.
+     * <p/>
+     * <p>If this map permits null values, then a return value of
+     * <tt>null</tt> does not <i>necessarily</i> indicate that the map
+     * contained no mapping for the key; it's also possible that the map
+     * explicitly mapped the key to <tt>null</tt>.
+     * <p/>
+     * <p>The map will not contain a mapping for the specified key once the
+     * call returns.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     * <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     * @throws UnsupportedOperationException if the <tt>remove</tt> operation
      *                                       is not supported by this map
+     * @throws ClassCastException            if the key is of an inappropriate type for
+     *                                       this map
+     *                                       (<a href="Collection.html#optional-restrictions">optional</a>)
+     * @throws NullPointerException          if the specified key is null and this
+     *                                       map does not permit null keys
+     *                                       (<a href="Collection.html#optional-restrictions">optional</a>)
      */
     @Override
-    public void clear() {
+    public V remove(Object key) {
+        Node node = getNode(key);
+        if(node == null) {
+            return null;
+        }
+        V value = node.getValue();
+        deleteNode(node);
+        return value;
+    }
+
+    protected abstract void removeNode(Node node);
+
+    /**
+     * Removes <tt>node</tt> from the tree and updates the size and
+     * modification count. Every removal path goes through here.
+     */
+    protected void deleteNode(Node node) {
+        modCount++;
+        size--;
+        if(metrics != null) {
+            metrics.removes++;
+        }
+        if(threaded) {
+            Node prev = node.prev(), next = node.next();
+            if(prev != null) {
+                prev.setNext(next);
+            }
+            if(next != null) {
+                next.setPrev(prev);
+            }
+            node.setPrev(null);
+            node.setNext(null);
+        }
+        removeNode(node);
+    }
+
+    /**
+     * Exchanges the positions of <tt>node</tt> and its in-order
+     * <tt>successor</tt>, which must be the leftmost node of
+     * <tt>node</tt>'s right subtree. Afterwards <tt>node</tt> has no left
+     * child and can be unlinked directly. Swapping nodes rather than copying
+     * the successor's key and value keeps every other node, and any iterator
+     * positioned on it, valid.
+     */
+    protected void swapWithSuccessor(Node node, Node successor) {
+        Node left = node.left;
+        Node right = node.right;
+        Node successorParent = successor.parent;
+        Node successorRight = successor.right;
+
+        replaceChild(node, successor);
+        successor.left = left;
+        left.parent = successor;
+        if(right == successor) {
+            successor.right = node;
+            node.parent = successor;
+        }
+        else {
+            successor.right = right;
+            right.parent = successor;
+            successorParent.left = node;
+            node.parent = successorParent;
+        }
+        node.left = null;
+        node.right = successorRight;
+        if(successorRight != null) {
+            successorRight.parent = node;
+        }
+
+        int size = node.size, height = node.height;
+        node.size = successor.size;
+        node.height = successor.height;
+        successor.size = size;
+        successor.height = height;
+    }
+
+    /**
+     * Removes every mapping whose key is greater than or equal to
+     * <tt>key</tt> and returns them in a new tree of the same kind. For the
+     * balanced trees this takes time proportional to the height of the tree.
+     *
+     * @throws NullPointerException if <tt>key</tt> is null
+     */
+    public BinarySearchTree<K, V> split(K key) {
+        compare(key, key); // type (and possibly null) check before the tree is taken apart
+        Split split = split(detachRoot(), key);
+        Node high = split.match == null ? split.right : join(null, split.match, split.right);
+        setRoot(split.left);
+        BinarySearchTree<K, V> other = newTree();
+        other.threaded = threaded;
+        other.setRoot(high);
+        if(threaded) {
+            // both halves keep their links; only the one across the split goes
+            Node last = lastNode();
+            if(last != null && last.next() != null) {
+                last.next().setPrev(null);
+                last.setNext(null);
+            }
+        }
+        return other;
+    }
+
+    /**
+     * Appends a mapping from <tt>key</tt> to <tt>value</tt> and every
+     * mapping of <tt>right</tt> to this tree, leaving <tt>right</tt> empty.
+     * Every key in this tree must be less than <tt>key</tt>, which must be
+     * less than every key in <tt>right</tt>. For the balanced trees this
+     * takes time proportional to the difference in their heights.
+     *
+     * @throws IllegalArgumentException if the keys are out of order, or if
+     *                                  <tt>right</tt> is this tree, a different kind of tree or
+     *                                  ordered by a different comparator
+     */
+    public void join(K key, V value, BinarySearchTree<K, V> right) {
+        if(right == this || right.getClass() != getClass() || !Objects.equals(comparator, right.comparator)) {
+            throw new IllegalArgumentException("Can only join a separate tree of the same kind and ordering");
+        }
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        if((root != null && compare(lastNode().getKey(), key) >= 0) ||
+                (right.root != null && compare(key, right.firstNode().getKey()) >= 0)) {
+            throw new IllegalArgumentException("Keys are not in order");
+        }
+        // the nodes of both trees must be of the same kind
+        right.setThreaded(threaded);
+        Node pivot = newNode(key, value);
+        if(threaded) {
+            Node prev = lastNode(), next = right.firstNode();
+            pivot.setPrev(prev);
+            pivot.setNext(next);
+            if(prev != null) {
+                prev.setNext(pivot);
+            }
+            if(next != null) {
+                next.setPrev(pivot);
+            }
+        }
+        Node high = right.detachRoot();
+        setRoot(join(detachRoot(), pivot, high));
+    }
+
+    /**
+     * Creates an empty tree of the same kind and with the same comparator,
+     * to hold the upper half of a {@link #split}.
+     */
+    protected abstract BinarySearchTree<K, V> newTree();
+
+    /**
+     * Makes the detached subtree rooted at <tt>node</tt> the whole tree.
+     * Subclasses that constrain the root, such as its color, override this
+     * to fix it up.
+     */
+    protected void setRoot(Node node) {
+        root = node;
+        if(node != null) {
+            node.parent = null;
+            chooseKeyOrder(node.key);
+        }
+        size = sizeOf(node);
+        modCount++;
+    }
+
+    private Node detachRoot() {
+        Node node = root;
         root = null;
         size = 0;
+        modCount++;
+        return node;
+    }
+
+    private static <N extends BinarySearchTree<?, ?>.Node> N detach(N node) {
+        if(node != null) {
+            node.parent = null;
+        }
+        return node;
+    }
+
+    /**
+     * Returns a tree holding <tt>left</tt>, then <tt>pivot</tt>, then
+     * <tt>right</tt>, which are detached and in key order. This version hangs
+     * both subtrees off <tt>pivot</tt>; balanced trees override it to keep
+     * their balance, which is all that {@link #split} and the set operations
+     * need to stay logarithmic.
+     */
+    protected Node join(Node left, Node pivot, Node right) {
+        pivot.parent = null;
+        pivot.left = left;
+        if(left != null) {
+            left.parent = pivot;
+        }
+        pivot.right = right;
+        if(right != null) {
+            right.parent = pivot;
+        }
+        updateNode(pivot);
+        return pivot;
+    }
+
+    /**
+     * Joins two detached subtrees without a pivot, by splitting the largest
+     * node off <tt>left</tt> to use as one.
+     */
+    private Node join(Node left, Node right) {
+        if(left == null) {
+            return right;
+        }
+        if(right == null) {
+            return left;
+        }
+        Node last = left;
+        while(last.right != null) {
+            last = last.right;
+        }
+        Split split = split(left, last.getKey());
+        return join(split.left, split.match, right);
+    }
+
+    private class Split {
+        Node left, match, right;
+    }
+
+    /**
+     * Splits the detached subtree rooted at <tt>node</tt> into the keys below
+     * <tt>key</tt>, the node holding <tt>key</tt> if there is one, and the
+     * keys above it. The search path is walked down, then the subtrees hanging
+     * off it are joined back together from the bottom up.
+     */
+    private Split split(Node node, K key) {
+        List<Node> path = new ArrayList<>();
+        Split split = new Split();
+        while(node != null) {
+            int compare = compare(key, node.getKey());
+            if(compare == 0) {
+                split.left = detach(node.left);
+                split.match = node;
+                split.right = detach(node.right);
+                node.left = node.right = null;
+                break;
+            }
+            path.add(node);
+            node = compare < 0 ? node.left : node.right;
+        }
+        for(int i = path.size() - 1; i >= 0; i--) {
+            node = path.get(i);
+            if(compare(key, node.getKey()) < 0) {
+                split.right = join(split.right, node, detach(node.right));
+            }
+            else {
+                split.left = join(detach(node.left), node, split.left);
+            }
+        }
+        return split;
+    }
+
+    enum SetOperation {
+        UNION, INTERSECTION, DIFFERENCE, SYMMETRIC_DIFFERENCE
+    }
+
+    // combined size above which the two halves of a set operation run in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Replaces this tree with the union, intersection, difference or
+     * symmetric difference of its entries and <tt>size</tt> entries read
+     * from <tt>entries</tt>, which must be in ascending key order. Where both
+     * have a key, the union takes the value from <tt>entries</tt> and the
+     * intersection keeps this tree's.
+     * <p/>
+     * The entries are built into a tree of the same kind, and the two are
+     * combined by splitting one around the root of the other and recursing
+     * on both halves. For balanced trees of sizes <tt>m &lt;= n</tt> that
+     * does <tt>O(m log(n/m + 1))</tt> work, so combining with a small set is
+     * cheap. Trees too unbalanced to recurse on safely are merged in linear
+     * time instead.
+     * <p/>
+     * Large inputs recurse on the two halves in parallel in the common
+     * fork-join pool, so the comparator, and an {@link AggregateBST}'s
+     * function, may be called from several threads at once. While metrics
+     * are enabled everything runs on the calling thread, since the counters
+     * are plain fields.
+     */
+    void combine(SetOperation operation, Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        int depth = 32 - Integer.numberOfLeadingZeros(this.size);
+        if(getHeight() > 4 * depth) {
+            mergeSorted(operation, entries);
+            return;
+        }
+        BinarySearchTree<K, V> other = newTree();
+        other.threaded = threaded;
+        other.buildFromSorted(entries, size);
+        setRoot(combine(operation, detachRoot(), other.detachRoot()));
+        if(threaded) {
+            rethread();
+        }
+    }
+
+    private Node combine(final SetOperation operation, Node a, Node b) {
+        if(a == null) {
+            return operation == SetOperation.UNION || operation == SetOperation.SYMMETRIC_DIFFERENCE ? b : null;
+        }
+        if(b == null) {
+            return operation == SetOperation.INTERSECTION ? null : a;
+        }
+        boolean parallel = metrics == null && a.size + b.size >= PARALLEL_THRESHOLD;
+        final Node aLeft = detach(a.left);
+        Node aRight = detach(a.right);
+        final Split split = split(b, a.getKey());
+        Node left, right;
+        if(parallel) {
+            ForkJoinTask<Node> task = ForkJoinTask.adapt(() -> combine(operation, aLeft, split.left)).fork();
+            right = combine(operation, aRight, split.right);
+            left = task.join();
+        }
+        else {
+            left = combine(operation, aLeft, split.left);
+            right = combine(operation, aRight, split.right);
+        }
+        boolean matched = split.match != null;
+        if(operation == SetOperation.UNION) {
+            if(matched) {
+                // set directly: a is detached, and join recomputes it anyway
+                a.value = split.match.value;
+            }
+            return join(left, a, right);
+        }
+        return (operation == SetOperation.INTERSECTION) == matched ? join(left, a, right) : join(left, right);
+    }
+
+    /**
+     * Removes all of the mappings from this map (optional operation).
+     * The map will be empty after this call returns.
+     *
+     * @throws UnsupportedOperationException if the <tt>clear</tt> operation
+     *                                       is not supported by this map
+     */
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    protected Node firstNode() {
+        Node current = root;
+        while(current != null && current.left != null) {
+            current = current.left;
+        }
+        return current;
+    }
+
+    protected Node lastNode() {
+        Node current = root;
+        while(current != null && current.right != null) {
+            current = current.right;
+        }
+        return current;
+    }
+
+    protected Node successor(Node node) {
+        return threaded ? node.next() : walkSuccessor(node);
+    }
+
+    protected Node predecessor(Node node) {
+        return threaded ? node.prev() : walkPredecessor(node);
+    }
+
+    private Node walkSuccessor(Node node) {
+        if(node.right == null) {
+            while(node.isRightChild()) {
+                node = node.parent;
+            }
+            return node.parent;
+        }
+        node = node.right;
+        while(node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private Node walkPredecessor(Node node) {
+        if(node.left == null) {
+            while(node.isLeftChild()) {
+                node = node.parent;
+            }
+            return node.parent;
+        }
+        node = node.left;
+        while(node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the node with the least key greater than (or equal to, if
+     * <tt>inclusive</tt>) <tt>key</tt>, or <tt>null</tt> if there is none.
+     */
+    protected Node ceilingNode(K key, boolean inclusive) {
+        Node current = root;
+        Node best = null;
+        while(current != null) {
+            int compare = compare(key, current.key);
+            if(compare < 0) {
+                best = current;
+                current = current.left;
+            }
+            else if(compare > 0 || !inclusive) {
+                current = current.right;
+            }
+            else {
+                return current;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the node with the greatest key less than (or equal to, if
+     * <tt>inclusive</tt>) <tt>key</tt>, or <tt>null</tt> if there is none.
+     */
+    protected Node floorNode(K key, boolean inclusive) {
+        Node current = root;
+        Node best = null;
+        while(current != null) {
+            int compare = compare(key, current.key);
+            if(compare > 0) {
+                best = current;
+                current = current.right;
+            }
+            else if(compare < 0 || !inclusive) {
+                current = current.left;
+            }
+            else {
+                return current;
+            }
+        }
+        return best;
+    }
+
+    private static <K, V> Entry<K, V> exportEntry(Entry<K, V> node) {
+        return node == null ? null : new SimpleImmutableEntry<>(node);
+    }
+
+    private static <K> K keyOrNull(Entry<K, ?> node) {
+        return node == null ? null : node.getKey();
+    }
+
+    private static <K> K key(Entry<K, ?> node) {
+        if(node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.getKey();
+    }
+
+    private Entry<K, V> pollNode(Node node) {
+        if(node == null) {
+            return null;
+        }
+        Entry<K, V> entry = exportEntry(node);
+        deleteNode(node);
+        return entry;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return key(firstNode());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(lastNode());
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return exportEntry(firstNode());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return exportEntry(lastNode());
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return pollNode(firstNode());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return pollNode(lastNode());
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return exportEntry(floorNode(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(floorNode(key, false));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return exportEntry(floorNode(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorNode(key, true));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(ceilingNode(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return exportEntry(ceilingNode(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        if(keySet == null) {
+            keySet = new KeySet<>(this);
+        }
+        return keySet;
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        if(descendingMap == null) {
+            descendingMap = new SubMap(true, null, true, true, null, true, true);
+        }
+        return descendingMap;
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(true, null, true, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(false, fromKey, inclusive, true, null, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * Returns a {@link java.util.Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  If the map is modified
+     * while an iteration over the set is in progress (except through
+     * the iterator's own <tt>remove</tt> operation, or through the
+     * <tt>setValue</tt> operation on a map entry returned by the
+     * iterator) the results of the iteration are undefined.  The set
+     * supports element removal, which removes the corresponding
+     * mapping from the map, via the <tt>Iterator.remove</tt>,
+     * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
+     * <tt>clear</tt> operations.  It does not support the
+     * <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Collection<V> values() {
+        if(values == null) {
+            values = new Values(null);
+        }
+        return values;
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        /**
+         * Returns an iterator over the elements contained in this collection.
+         *
+         * @return an iterator over the elements contained in this collection
+         */
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new BinarySearchTreeIterator(firstNode(), true, null);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return findEntry(o, null) != null;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return entrySpliterator(null);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            Node node = findEntry(o, null);
+            if(node == null) {
+                return false;
+            }
+            deleteNode(node);
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return BinarySearchTree.this.size();
+        }
+    }
+
+    /**
+     * Returns the node matching entry <tt>o</tt>'s key and value, provided
+     * the key lies in <tt>range</tt> (if given).
+     */
+    private Node findEntry(Object o, SubMap range) {
+        if(!(o instanceof Entry)) {
+            return null;
+        }
+        Entry<?, ?> entry = (Entry<?, ?>) o;
+        if(range != null && !range.inRange(entry.getKey())) {
+            return null;
+        }
+        Node node = getNode(entry.getKey());
+        return node != null && nullSafeEquals(node.getValue(), entry.getValue()) ? node : null;
+    }
+
+    /**
+     * A view of the entries with keys between optional low and high bounds,
+     * in ascending or descending order. Lookups descend the whole tree once
+     * and then reject keys that fall outside the bounds; iteration starts at
+     * the first node in range and stops at the first one past it.
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+        private final boolean fromStart, loInclusive, toEnd, hiInclusive, descending;
+        private final K lo, hi;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+            if((!fromStart && lo == null) || (!toEnd && hi == null)) {
+                throw new NullPointerException();
+            }
+            if(!fromStart && !toEnd && compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        boolean tooLow(Object key) {
+            if(fromStart) {
+                return false;
+            }
+            int compare = compare((K) key, lo);
+            return compare < 0 || (compare == 0 && !loInclusive);
+        }
+
+        boolean tooHigh(Object key) {
+            if(toEnd) {
+                return false;
+            }
+            int compare = compare((K) key, hi);
+            return compare > 0 || (compare == 0 && !hiInclusive);
+        }
+
+        boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        /**
+         * Checks a bound for a nested view: an exclusive bound may sit on
+         * this view's own exclusive bound.
+         */
+        private boolean inRange(K key, boolean inclusive) {
+            if(inclusive) {
+                return inRange(key);
+            }
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+        }
+
+        private Node absLowest() {
+            Node node = fromStart ? firstNode() : ceilingNode(lo, loInclusive);
+            return node == null || tooHigh(node.key) ? null : node;
+        }
+
+        private Node absHighest() {
+            Node node = toEnd ? lastNode() : floorNode(hi, hiInclusive);
+            return node == null || tooLow(node.key) ? null : node;
+        }
+
+        private Node absCeiling(K key, boolean inclusive) {
+            if(tooLow(key)) {
+                return absLowest();
+            }
+            Node node = ceilingNode(key, inclusive);
+            return node == null || tooHigh(node.key) ? null : node;
+        }
+
+        private Node absFloor(K key, boolean inclusive) {
+            if(tooHigh(key)) {
+                return absHighest();
+            }
+            Node node = floorNode(key, inclusive);
+            return node == null || tooLow(node.key) ? null : node;
+        }
+
+        private Node lowest() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Node highest() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        private Node ceiling(K key, boolean inclusive) {
+            return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        private Node floor(K key, boolean inclusive) {
+            return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && BinarySearchTree.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? BinarySearchTree.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if(!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return BinarySearchTree.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? BinarySearchTree.this.remove(key) : null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public int size() {
+            int from = fromStart ? 0 : rank(lo, !loInclusive);
+            int to = toEnd ? BinarySearchTree.this.size() : rank(hi, hiInclusive);
+            return Math.max(0, to - from);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new BinarySearchTreeIterator(lowest(), !descending, SubMap.this);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return findEntry(o, SubMap.this) != null;
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    Node node = findEntry(o, SubMap.this);
+                    if(node == null) {
+                        return false;
+                    }
+                    deleteNode(node);
+                    return true;
+                }
+
+                @Override
+                public Spliterator<Entry<K, V>> spliterator() {
+                    if(descending) {
+                        return Spliterators.spliterator(this, Spliterator.DISTINCT | Spliterator.ORDERED);
+                    }
+                    return entrySpliterator(SubMap.this);
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Collection<V> values() {
+            return new Values(this);
+        }
+
+        Spliterator<K> keySpliterator() {
+            return descending ? null : BinarySearchTree.this.keySpliterator(this);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> comparator = BinarySearchTree.this.comparator();
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            return key(lowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(highest());
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return exportEntry(lowest());
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return exportEntry(highest());
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            return pollNode(lowest());
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            return pollNode(highest());
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return exportEntry(floor(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(floor(key, false));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return exportEntry(floor(key, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floor(key, true));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(ceiling(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceiling(key, true));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return exportEntry(ceiling(key, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(ceiling(key, false));
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if(!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+            }
+            return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if(!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+            }
+            return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if(!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(descending) {
+                return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+            }
+            return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
     }
 
     /**
-     * Returns a {@link java.util.Set} view of the mappings contained in this map.
-     * The set is backed by the map, so changes to the map are
-     * reflected in the set, and vice-versa.  If the map is modified
-     * while an iteration over the set is in progress (except through
-     * the iterator's own <tt>remove</tt> operation, or through the
-     * <tt>setValue</tt> operation on a map entry returned by the
-     * iterator) the results of the iteration are undefined.  The set
-     * supports element removal, which removes the corresponding
-     * mapping from the map, via the <tt>Iterator.remove</tt>,
-     * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
-     * <tt>clear</tt> operations.  It does not support the
-     * <tt>add</tt> or <tt>addAll</tt> operations.
-     *
-     * @return a set view of the mappings contained in this map
+     * A navigable view of the keys of a {@link BinarySearchTree}, one of its
+     * sub-maps, or any other navigable map.
      */
-    @Override
-    public Set<Entry<K, V>> entrySet() {
-        return new EntrySet();
-    }
+    static class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
 
-    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        private final NavigableMap<E, ?> map;
+
+        KeySet(NavigableMap<E, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            final Iterator<? extends Entry<E, ?>> it = map.entrySet().iterator();
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
 
         /**
-         * Returns an iterator over the elements contained in this collection.
-         *
-         * @return an iterator over the elements contained in this collection
+         * Splits at subtree boundaries when backed by a tree or one of its
+         * ascending sub-maps.
          */
         @Override
-        public Iterator<Map.Entry<K, V>> iterator() {
-            return new BinarySearchTreeIterator();
+        public Spliterator<E> spliterator() {
+            Spliterator<E> spliterator = null;
+            if(map instanceof BinarySearchTree) {
+                spliterator = ((BinarySearchTree<E, ?>) map).keySpliterator(null);
+            }
+            else if(map instanceof BinarySearchTree.SubMap) {
+                spliterator = ((BinarySearchTree<E, ?>.SubMap) map).keySpliterator();
+            }
+            return spliterator != null ? spliterator : NavigableSet.super.spliterator();
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
         }
 
         @Override
         public int size() {
-            return BinarySearchTree.this.size();
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean containsAll(Collection<?> c) {
+            if(map instanceof BinarySearchTree) {
+                return ((BinarySearchTree<E, ?>) map).containsAllKeys(c);
+            }
+            return super.containsAll(c);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(!map.containsKey(o)) {
+                return false;
+            }
+            map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public E lower(E e) {
+            return map.lowerKey(e);
+        }
+
+        @Override
+        public E floor(E e) {
+            return map.floorKey(e);
+        }
+
+        @Override
+        public E ceiling(E e) {
+            return map.ceilingKey(e);
+        }
+
+        @Override
+        public E higher(E e) {
+            return map.higherKey(e);
+        }
+
+        @Override
+        public E pollFirst() {
+            return keyOrNull(map.pollFirstEntry());
+        }
+
+        @Override
+        public E pollLast() {
+            return keyOrNull(map.pollLastEntry());
+        }
+
+        @Override
+        public Comparator<? super E> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public E first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public E last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(map.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+            return new KeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    /**
+     * The values of the whole tree or of an ascending or descending range.
+     */
+    private class Values extends AbstractCollection<V> {
+
+        private final SubMap range;
+
+        Values(SubMap range) {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            final Iterator<Entry<K, V>> it = range == null ? entrySet().iterator() : range.entrySet().iterator();
+            return new Iterator<V>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return it.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return range == null ? BinarySearchTree.this.size() : range.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return range == null ? BinarySearchTree.this.isEmpty() : range.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            if(range == null) {
+                BinarySearchTree.this.clear();
+            }
+            else {
+                range.clear();
+            }
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            if(range != null && range.descending) {
+                return Spliterators.spliterator(this, Spliterator.ORDERED);
+            }
+            return new TreeSpliterator<>(range, Node::getValue, Spliterator.ORDERED, null);
+        }
+    }
+
+    private Spliterator<Entry<K, V>> entrySpliterator(SubMap range) {
+        return new TreeSpliterator<Entry<K, V>>(range, node -> node,
+                Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.SORTED,
+                (a, b) -> compare(a.getKey(), b.getKey()));
+    }
+
+    private Spliterator<K> keySpliterator(SubMap range) {
+        return new TreeSpliterator<>(range, Node::getKey,
+                Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.SORTED, comparator);
+    }
+
+    /**
+     * Returns the in-order index of <tt>node</tt>, found by walking up to the
+     * root and counting what lies to its left.
+     */
+    private int rankOf(Node node) {
+        int rank = sizeOf(node.left);
+        for(; node.parent != null; node = node.parent) {
+            if(node.isRightChild()) {
+                rank += sizeOf(node.parent.left) + 1;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * A spliterator over a run of consecutive nodes, of the whole tree or an
+     * ascending range, given by its first node and length. Splitting looks
+     * up the middle node of the run by rank, so the halves follow the
+     * tree's own subtrees and both know their exact sizes.
+     */
+    private class TreeSpliterator<T> implements Spliterator<T> {
+
+        private final Function<Node, T> extract;
+        private final int characteristics;
+        private final Comparator<? super T> comparator;
+        private final int expectedModCount;
+        private Node next;
+        private int remaining;
+
+        TreeSpliterator(SubMap range, Function<Node, T> extract, int characteristics, Comparator<? super T> comparator) {
+            this(range == null ? firstNode() : range.lowest(), range == null ? size() : range.size(),
+                    extract, characteristics, comparator);
+        }
+
+        private TreeSpliterator(Node first, int remaining, Function<Node, T> extract, int characteristics,
+                                Comparator<? super T> comparator) {
+            this.next = first;
+            this.remaining = remaining;
+            this.extract = extract;
+            this.characteristics = characteristics | Spliterator.SIZED | Spliterator.SUBSIZED;
+            this.comparator = comparator;
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(action == null) {
+                throw new NullPointerException();
+            }
+            if(remaining <= 0) {
+                return false;
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            Node node = next;
+            next = --remaining > 0 ? successor(node) : null;
+            action.accept(extract.apply(node));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            while(tryAdvance(action)) {
+                // advance until the run is exhausted
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if(remaining < 2) {
+                return null;
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            int half = remaining >>> 1;
+            Node middle = selectNode(rankOf(next) + half);
+            Spliterator<T> prefix = new TreeSpliterator<>(next, half, extract, characteristics, comparator);
+            next = middle;
+            remaining -= half;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            if((characteristics & Spliterator.SORTED) == 0) {
+                throw new IllegalStateException();
+            }
+            return comparator;
         }
     }
 
+    /**
+     * Walks the tree in order from <tt>first</tt>, forwards or backwards,
+     * stopping at the first node outside <tt>range</tt> if one is given.
+     */
     private class BinarySearchTreeIterator implements Iterator<Map.Entry<K, V>> {
 
         private Node next, prev;
         private int expectedModCount;
+        private final boolean ascending;
+        private final SubMap range;
 
-        public BinarySearchTreeIterator() {
+        public BinarySearchTreeIterator(Node first, boolean ascending, SubMap range) {
             expectedModCount = modCount;
-            next = root;
-            while(next != null && next.left != null) {
-                next = next.left;
-            }
+            next = first;
+            this.ascending = ascending;
+            this.range = range;
         }
 
         /**
@@ -428,17 +2633,9 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
                 throw new ConcurrentModificationException();
             }
             prev = next;
-            if(next.right == null) {
-                while(next.isRightChild()) {
-                    next = next.parent;
-                }
-                next = next.parent;
-            }
-            else {
-                next = next.right;
-                while(next.left != null) {
-                    next = next.left;
-                }
+            next = ascending ? successor(next) : predecessor(next);
+            if(next != null && range != null && (ascending ? range.tooHigh(next.key) : range.tooLow(next.key))) {
+                next = null;
             }
             return prev;
         }
@@ -463,8 +2660,11 @@ public abstract class BinarySearchTree<K, V> extends AbstractMap<K, V> {
             if(prev == null) {
                 throw new IllegalStateException();
             }
-            removeNode(prev);
-            size--;
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            deleteNode(prev);
+            expectedModCount = modCount;
             prev = null;
         }
     }
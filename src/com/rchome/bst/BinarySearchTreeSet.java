@@ -5,16 +5,31 @@ import java.util.*;
 /**
  * Created by Raymond on 12/9/2014.
  */
-public abstract class BinarySearchTreeSet<E> extends AbstractSet<E> {
+public abstract class BinarySearchTreeSet<E> extends AbstractSet<E> implements NavigableSet<E> {
 
     private static final Object VALUE = new Object();
 
-    private BinarySearchTree<E, Object> tree;
+    private NavigableMap<E, Object> tree;
 
     public BinarySearchTreeSet(BinarySearchTree<E, Object> tree) {
         this.tree = tree;
     }
 
+    private BinarySearchTreeSet(NavigableMap<E, Object> view) {
+        this.tree = view;
+    }
+
+    /**
+     * A set backed by a range or descending view of another set's tree.
+     * Like {@link TreeSet}'s views, it supports adding elements that fall
+     * inside its range.
+     */
+    private static class SubSet<E> extends BinarySearchTreeSet<E> {
+        SubSet(NavigableMap<E, Object> view) {
+            super(view);
+        }
+    }
+
     /**
      * Returns an iterator over the elements contained in this collection.
      *
@@ -104,17 +119,12 @@ public abstract class BinarySearchTreeSet<E> extends AbstractSet<E> {
      *                              (<a href="Collection.html#optional-restrictions">optional</a>),
      *                              or if the specified collection is null
      * @see #contains(Object)
+     * @see BinarySearchTree#containsAllKeys(Collection)
      */
     @Override
     public boolean containsAll(Collection<?> c) {
-        if(c instanceof BinarySearchTreeSet || c instanceof SortedSet) {
-            Iterator<E> it = iterator();
-            for(Object o : c) {
-                if(!it.hasNext() || !it.next().equals(o)) {
-                    return false;
-                }
-            }
-            return true;
+        if(tree instanceof BinarySearchTree) {
+            return ((BinarySearchTree<E, Object>) tree).containsAllKeys(c);
         }
         return super.containsAll(c);
     }
@@ -131,6 +141,129 @@ public abstract class BinarySearchTreeSet<E> extends AbstractSet<E> {
         tree.clear();
     }
 
+    /**
+     * Adds every element of <tt>c</tt> to this set. A {@link SortedSet}
+     * ordered the same way is merged in with {@link #union}.
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if(c instanceof SortedSet) {
+            return union((SortedSet<? extends E>) c);
+        }
+        return super.addAll(c);
+    }
+
+    /**
+     * Keeps only the elements of this set that are also in <tt>c</tt>. A
+     * {@link SortedSet} ordered the same way is merged in with
+     * {@link #intersection}.
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if(c instanceof SortedSet) {
+            return intersection((SortedSet<?>) c);
+        }
+        return super.retainAll(c);
+    }
+
+    /**
+     * Removes every element of <tt>c</tt> from this set. A {@link SortedSet}
+     * ordered the same way is merged in with {@link #difference}.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if(c instanceof SortedSet) {
+            return difference((SortedSet<?>) c);
+        }
+        return super.removeAll(c);
+    }
+
+    /**
+     * Adds every element of <tt>other</tt> to this set.
+     * <p/>
+     * When this set is backed by a whole tree and <tt>other</tt> uses the
+     * same comparator, this and the three methods below copy <tt>other</tt>
+     * into a tree of the same kind in linear time and combine the two by
+     * recursively splitting and joining them, which for sizes
+     * <tt>m &lt;= n</tt> takes <tt>O(m log(n/m + 1))</tt> work on the
+     * balanced trees and splits large inputs across the common fork-join
+     * pool, calling the comparator from its threads, unless the tree has
+     * metrics enabled. Otherwise they fall back to element-by-element
+     * updates.
+     *
+     * @return <tt>true</tt> if this set changed
+     */
+    public boolean union(SortedSet<? extends E> other) {
+        return combine(BinarySearchTree.SetOperation.UNION, other);
+    }
+
+    /**
+     * Removes every element of this set that is not in <tt>other</tt>.
+     *
+     * @return <tt>true</tt> if this set changed
+     */
+    public boolean intersection(SortedSet<?> other) {
+        return combine(BinarySearchTree.SetOperation.INTERSECTION, other);
+    }
+
+    /**
+     * Removes every element of <tt>other</tt> from this set.
+     *
+     * @return <tt>true</tt> if this set changed
+     */
+    public boolean difference(SortedSet<?> other) {
+        return combine(BinarySearchTree.SetOperation.DIFFERENCE, other);
+    }
+
+    /**
+     * Removes the elements this set shares with <tt>other</tt> and adds the
+     * ones only <tt>other</tt> has.
+     *
+     * @return <tt>true</tt> if this set changed
+     */
+    public boolean symmetricDifference(SortedSet<? extends E> other) {
+        return combine(BinarySearchTree.SetOperation.SYMMETRIC_DIFFERENCE, other);
+    }
+
+    private boolean combine(BinarySearchTree.SetOperation operation, SortedSet<?> other) {
+        int size = size();
+        boolean otherEmpty = other.isEmpty();
+        if(tree instanceof BinarySearchTree && Objects.equals(comparator(), other.comparator())) {
+            ((BinarySearchTree<E, Object>) tree).combine(operation, entries((Iterator<E>) other.iterator()), other.size());
+        }
+        else {
+            switch(operation) {
+                case UNION:
+                    return super.addAll((Collection<? extends E>) other);
+                case INTERSECTION:
+                    return super.retainAll(other);
+                case DIFFERENCE:
+                    return super.removeAll(other);
+                default:
+                    for(Object o : new ArrayList<>(other)) {
+                        if(!remove(o)) {
+                            add((E) o);
+                        }
+                    }
+            }
+        }
+        return operation == BinarySearchTree.SetOperation.SYMMETRIC_DIFFERENCE ? !otherEmpty : size() != size;
+    }
+
+    private static <E> Iterator<Map.Entry<E, Object>> entries(final Iterator<E> elements) {
+        return new Iterator<Map.Entry<E, Object>>() {
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public Map.Entry<E, Object> next() {
+                return new AbstractMap.SimpleImmutableEntry<>(elements.next(), VALUE);
+            }
+        };
+    }
+
     @Override
     public int size() {
         return tree.size();
@@ -165,4 +298,91 @@ public abstract class BinarySearchTreeSet<E> extends AbstractSet<E> {
     public boolean contains(Object o) {
         return tree.containsKey(o);
     }
+
+    @Override
+    public E lower(E e) {
+        return tree.lowerKey(e);
+    }
+
+    @Override
+    public E floor(E e) {
+        return tree.floorKey(e);
+    }
+
+    @Override
+    public E ceiling(E e) {
+        return tree.ceilingKey(e);
+    }
+
+    @Override
+    public E higher(E e) {
+        return tree.higherKey(e);
+    }
+
+    @Override
+    public E pollFirst() {
+        Map.Entry<E, ?> entry = tree.pollFirstEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public E pollLast() {
+        Map.Entry<E, ?> entry = tree.pollLastEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return tree.comparator();
+    }
+
+    @Override
+    public E first() {
+        return tree.firstKey();
+    }
+
+    @Override
+    public E last() {
+        return tree.lastKey();
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return tree.descendingKeySet().iterator();
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet() {
+        return new SubSet<>(tree.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        return new SubSet<>(tree.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+        return new SubSet<>(tree.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+        return new SubSet<>(tree.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
 }
@@ -0,0 +1,453 @@
+package com.rchome.bst;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A splay tree that holds at most a fixed total weight of entries, evicting
+ * entries chosen by an {@link EvictionPolicy} whenever a <tt>put</tt> (or
+ * <tt>merge</tt>, <tt>compute</tt> and the like) takes it over the limit. By default every entry weighs 1, so the limit is a
+ * maximum size. The entries that remain behave exactly as in any other
+ * {@link BinarySearchTree}, views and navigation included.
+ * <p/>
+ * Only {@link #get} and storing a value for an existing key count as
+ * accesses for the recency and frequency policies, and only {@link #get} counts towards the hit and miss
+ * totals. Evictions are reported to the listeners added with
+ * {@link #addEvictionListener} after the entry has left the tree; explicit
+ * removals are not reported. {@link #split} and {@link #join} are not
+ * supported.
+ */
+public class BoundedBST<K, V> extends SplayBST<K, V> {
+
+    public enum EvictionPolicy {
+        /** Evicts the entry that was accessed least recently. */
+        LRU,
+        /**
+         * Evicts the entry that was accessed least often, the least recently
+         * accessed among equals.
+         */
+        LFU,
+        LOWEST_KEY,
+        HIGHEST_KEY,
+        /**
+         * Evicts the deepest entry of the splay tree. Every access splays its
+         * node to the root, so entries sink while others are used and the
+         * deepest one has gone longest without being touched, much like LRU
+         * but without keeping a list.
+         */
+        SPLAY_DEPTH
+    }
+
+    private final long maxWeight;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final EvictionPolicy policy;
+    private final List<BiConsumer<? super K, ? super V>> listeners = new ArrayList<>();
+    // sentinel of the circular list of frequency buckets, lowest first;
+    // LRU keeps everything in a single bucket
+    private final Bucket buckets = new Bucket(0);
+    private long weight;
+    private long hits, misses, evictions;
+
+    public BoundedBST(int maxSize, EvictionPolicy policy) {
+        this(maxSize, (key, value) -> 1, policy, null);
+    }
+
+    public BoundedBST(int maxSize, EvictionPolicy policy, Comparator<? super K> comparator) {
+        this(maxSize, (key, value) -> 1, policy, comparator);
+    }
+
+    /**
+     * Creates a cache holding entries whose weights, as given by
+     * <tt>weigher</tt>, add up to at most <tt>maxWeight</tt>. An entry
+     * heavier than that on its own is evicted as soon as it is put.
+     */
+    public BoundedBST(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher, EvictionPolicy policy) {
+        this(maxWeight, weigher, policy, null);
+    }
+
+    public BoundedBST(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher, EvictionPolicy policy,
+                      Comparator<? super K> comparator) {
+        super(comparator);
+        if(maxWeight < 0) {
+            throw new IllegalArgumentException("Negative maximum weight: " + maxWeight);
+        }
+        if(weigher == null || policy == null) {
+            throw new NullPointerException();
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.policy = policy;
+        // SPLAY_DEPTH evicts the deepest entry, which is only the stalest one
+        // if every access splays
+        setSplayEveryAccess(true);
+        if(policy == EvictionPolicy.LRU) {
+            linkBucket(new Bucket(0), buckets);
+        }
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        BoundedBST<K, V> tree = new BoundedBST<>(maxWeight, weigher, policy, comparator());
+        tree.listeners.addAll(listeners);
+        return tree;
+    }
+
+    /**
+     * Registers <tt>listener</tt> to be called with the key and value of
+     * every evicted entry.
+     */
+    public void addEvictionListener(BiConsumer<? super K, ? super V> listener) {
+        if(listener == null) {
+            throw new NullPointerException();
+        }
+        listeners.add(listener);
+    }
+
+    public void removeEvictionListener(BiConsumer<? super K, ? super V> listener) {
+        listeners.remove(listener);
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the total weight of the entries in the cache.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    public void resetCounts() {
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node node = getNode(key);
+        if(node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        touch((CacheNode) node);
+        return node.getValue();
+    }
+
+    @Override
+    protected Node createNode(K key, V value) {
+        return new CacheNode(key, value);
+    }
+
+    @Override
+    protected boolean supportsThreading() {
+        return false;
+    }
+
+    @Override
+    protected void insertNode(Node node) {
+        super.insertNode(node);
+        CacheNode added = (CacheNode) node;
+        weight += added.weight;
+        // make room among the entries already cached before the new one
+        // joins the order, or LFU would always pick it as least used
+        evict();
+        if(policy == EvictionPolicy.LRU) {
+            append(buckets.next, added);
+        }
+        else if(policy == EvictionPolicy.LFU) {
+            Bucket lowest = buckets.next;
+            if(lowest == buckets || lowest.frequency != 1) {
+                lowest = linkBucket(new Bucket(1), buckets);
+            }
+            append(lowest, added);
+        }
+        evict();
+    }
+
+    /**
+     * Counts replacing a value as an access, then evicts if the new value
+     * weighs more.
+     */
+    @Override
+    protected void replaceValue(Node node, V value) {
+        super.replaceValue(node, value);
+        touch((CacheNode) node);
+        evict();
+    }
+
+    @Override
+    protected void deleteNode(Node node) {
+        super.deleteNode(node);
+        CacheNode removed = (CacheNode) node;
+        weight -= removed.weight;
+        if(removed.bucket != null) {
+            Bucket bucket = removed.bucket;
+            unlink(removed);
+            if(policy == EvictionPolicy.LFU && bucket.isEmpty()) {
+                unlinkBucket(bucket);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        weight = 0;
+        if(policy == EvictionPolicy.LRU) {
+            Bucket bucket = buckets.next;
+            bucket.head.before = bucket.head.after = bucket.head;
+        }
+        else {
+            buckets.prev = buckets.next = buckets;
+        }
+    }
+
+    /**
+     * Puts the entries one by one, whatever kind of map <tt>m</tt> is. The
+     * sorted-map path of the superclass rebuilds the whole tree, which would
+     * reset the recency and frequency of the entries already cached.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for(Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Puts the entries one by one instead of building the tree directly, so
+     * that each is weighed, enters the eviction order and may evict.
+     */
+    @Override
+    protected void buildFromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        clear();
+        while(entries.hasNext()) {
+            Entry<? extends K, ? extends V> entry = entries.next();
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Applies the set operation through <tt>put</tt> and <tt>remove</tt>,
+     * since combining whole subtrees would bypass the eviction order.
+     */
+    @Override
+    void combine(SetOperation operation, Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        TreeMap<K, V> other = new TreeMap<>(comparator());
+        while(entries.hasNext()) {
+            Entry<? extends K, ? extends V> entry = entries.next();
+            other.put(entry.getKey(), entry.getValue());
+        }
+        switch(operation) {
+            case UNION:
+                for(Entry<K, V> entry : other.entrySet()) {
+                    put(entry.getKey(), entry.getValue());
+                }
+                break;
+            case INTERSECTION:
+                keySet().removeIf(key -> !other.containsKey(key));
+                break;
+            case DIFFERENCE:
+                for(K key : other.keySet()) {
+                    remove(key);
+                }
+                break;
+            default:
+                for(Entry<K, V> entry : other.entrySet()) {
+                    if(containsKey(entry.getKey())) {
+                        remove(entry.getKey());
+                    }
+                    else {
+                        put(entry.getKey(), entry.getValue());
+                    }
+                }
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public BinarySearchTree<K, V> split(K key) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void join(K key, V value, BinarySearchTree<K, V> right) {
+        throw new UnsupportedOperationException();
+    }
+
+    private void evict() {
+        while(weight > maxWeight && root != null) {
+            Node victim = victim();
+            if(victim == null) {
+                return;
+            }
+            K key = victim.getKey();
+            V value = victim.getValue();
+            deleteNode(victim);
+            evictions++;
+            for(BiConsumer<? super K, ? super V> listener : listeners) {
+                listener.accept(key, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the entry to evict next, or null when only an entry not yet
+     * in the recency or frequency order is left.
+     */
+    private Node victim() {
+        switch(policy) {
+            case LRU:
+            case LFU:
+                Bucket lowest = buckets.next;
+                return lowest == buckets || lowest.isEmpty() ? null : lowest.head.after;
+            case LOWEST_KEY:
+                return firstNode();
+            case HIGHEST_KEY:
+                return lastNode();
+            default:
+                // follow the taller subtree down to the deepest leaf
+                Node node = root;
+                while(node.left != null || node.right != null) {
+                    if(node.right == null || (node.left != null && node.left.height >= node.right.height)) {
+                        node = node.left;
+                    }
+                    else {
+                        node = node.right;
+                    }
+                }
+                return node;
+        }
+    }
+
+    /**
+     * Records an access to <tt>node</tt>: it becomes the most recently used
+     * entry of its bucket, after moving up to the next frequency for LFU.
+     */
+    private void touch(CacheNode node) {
+        Bucket bucket = node.bucket;
+        if(bucket == null) {
+            return;
+        }
+        unlink(node);
+        if(policy == EvictionPolicy.LFU) {
+            Bucket next = bucket.next;
+            if(next == buckets || next.frequency != bucket.frequency + 1) {
+                next = linkBucket(new Bucket(bucket.frequency + 1), bucket);
+            }
+            if(bucket.isEmpty()) {
+                unlinkBucket(bucket);
+            }
+            bucket = next;
+        }
+        append(bucket, node);
+    }
+
+    private void append(Bucket bucket, CacheNode node) {
+        node.bucket = bucket;
+        node.after = bucket.head;
+        node.before = bucket.head.before;
+        node.before.after = node;
+        bucket.head.before = node;
+    }
+
+    private void unlink(CacheNode node) {
+        node.before.after = node.after;
+        node.after.before = node.before;
+        node.before = node.after = null;
+        node.bucket = null;
+    }
+
+    private Bucket linkBucket(Bucket bucket, Bucket previous) {
+        bucket.prev = previous;
+        bucket.next = previous.next;
+        previous.next.prev = bucket;
+        previous.next = bucket;
+        return bucket;
+    }
+
+    private void unlinkBucket(Bucket bucket) {
+        bucket.prev.next = bucket.next;
+        bucket.next.prev = bucket.prev;
+    }
+
+    private class CacheNode extends Node {
+        // neighbours in the bucket's list, least recently used first
+        CacheNode before, after;
+        Bucket bucket;
+        long weight;
+
+        CacheNode(K key, V value) {
+            super(key, value);
+            weight = weigh(key, value);
+        }
+
+        // a bucket's list sentinel
+        CacheNode() {
+            before = after = this;
+        }
+
+        /**
+         * Reweighs the entry. The cache may be left over its limit until the
+         * next <tt>put</tt>, since evicting here would break the iterator
+         * this is likely called through.
+         */
+        @Override
+        public V setValue(V value) {
+            long newWeight = weigh(getKey(), value);
+            BoundedBST.this.weight += newWeight - weight;
+            weight = newWeight;
+            return super.setValue(value);
+        }
+    }
+
+    private long weigh(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        if(weight < 0) {
+            throw new IllegalArgumentException("Negative weight for " + key + ": " + weight);
+        }
+        return weight;
+    }
+
+    private class Bucket {
+        final long frequency;
+        final CacheNode head = new CacheNode();
+        Bucket prev = this, next = this;
+
+        Bucket(long frequency) {
+            this.frequency = frequency;
+        }
+
+        boolean isEmpty() {
+            return head.after == head;
+        }
+    }
+}
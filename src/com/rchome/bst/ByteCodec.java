@@ -0,0 +1,108 @@
+package com.rchome.bst;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts keys or values to and from a bounded run of bytes, so that trees
+ * can store them outside the Java heap. Codecs used for keys must be
+ * order-preserving: comparing two encodings as unsigned bytes, left to right,
+ * must order them the same way as the keys themselves.
+ */
+public interface ByteCodec<T> {
+
+    /**
+     * Returns the largest number of bytes {@link #encode} ever writes.
+     */
+    int maxSize();
+
+    /**
+     * Writes <tt>value</tt> into <tt>buffer</tt> starting at absolute index
+     * <tt>offset</tt> and returns the number of bytes written.
+     *
+     * @throws IllegalArgumentException if the encoding would exceed {@link #maxSize()}
+     */
+    int encode(T value, ByteBuffer buffer, int offset);
+
+    /**
+     * Reads back a value written by {@link #encode}.
+     */
+    T decode(ByteBuffer buffer, int offset, int length);
+
+    /**
+     * Big-endian with the sign bit flipped, so negative numbers sort first.
+     */
+    ByteCodec<Long> LONG = new ByteCodec<Long>() {
+        @Override
+        public int maxSize() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public int encode(Long value, ByteBuffer buffer, int offset) {
+            buffer.putLong(offset, value ^ Long.MIN_VALUE);
+            return Long.BYTES;
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getLong(offset) ^ Long.MIN_VALUE;
+        }
+    };
+
+    /**
+     * Big-endian with the sign bit flipped, so negative numbers sort first.
+     */
+    ByteCodec<Integer> INTEGER = new ByteCodec<Integer>() {
+        @Override
+        public int maxSize() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public int encode(Integer value, ByteBuffer buffer, int offset) {
+            buffer.putInt(offset, value ^ Integer.MIN_VALUE);
+            return Integer.BYTES;
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer, int offset, int length) {
+            return buffer.getInt(offset) ^ Integer.MIN_VALUE;
+        }
+    };
+
+    /**
+     * Encodes strings as UTF-8 of at most <tt>maxBytes</tt> bytes. Keys using
+     * this codec are ordered by code point, which matches
+     * {@link String#compareTo} except around supplementary characters.
+     */
+    static ByteCodec<String> utf8(final int maxBytes) {
+        return new ByteCodec<String>() {
+            @Override
+            public int maxSize() {
+                return maxBytes;
+            }
+
+            @Override
+            public int encode(String value, ByteBuffer buffer, int offset) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if(bytes.length > maxBytes) {
+                    throw new IllegalArgumentException("Encoded length " + bytes.length + " exceeds " + maxBytes);
+                }
+                for(int i = 0; i < bytes.length; i++) {
+                    buffer.put(offset + i, bytes[i]);
+                }
+                return bytes.length;
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer, int offset, int length) {
+                byte[] bytes = new byte[length];
+                for(int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(offset + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,766 @@
+package com.rchome.bst;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A left-leaning red-black tree laid out to use as little memory per entry
+ * as a linked tree can. A node holds only its key, value, two children and
+ * a color, with no parent pointer, subtree size or in-order links, which
+ * makes it 32 bytes with compressed references against 40 for a
+ * <tt>TreeMap</tt> entry and more for {@link BinarySearchTree}'s nodes.
+ * <p/>
+ * Without parent pointers every operation works top-down: insertion and
+ * removal recurse down the search path and rebalance on the way back, and
+ * iterators keep the path from the root in an explicit stack, which is
+ * allocated once per iterator and sized for the tree's worst-case height.
+ * Removing through an iterator searches again from the root for the next
+ * key. Ranks, splits and the other operations that need sizes or parents
+ * are not available; use {@link RedBlackBST} for those.
+ */
+public class CompactBST<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private Node<K, V> root;
+    private int size;
+    private int modCount;
+    private transient Set<Entry<K, V>> entrySet;
+    // the stack forEach walks with, kept between calls
+    private Node<K, V>[] forEachStack;
+
+    private static final class Node<K, V> implements Entry<K, V> {
+        final K key;
+        V value;
+        Node<K, V> left, right;
+        boolean red = true;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return (key == null ? e.getKey() == null : key.equals(e.getKey())) &&
+                    (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    public CompactBST() {
+        this(null);
+    }
+
+    public CompactBST(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    private int compare(Object key1, Object key2) {
+        if(comparator == null) {
+            return ((Comparable<Object>) key1).compareTo(key2);
+        }
+        return comparator.compare((K) key1, (K) key2);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the height of the tree in edges, or 0 if it is empty.
+     */
+    public int getHeight() {
+        return Math.max(0, height(root));
+    }
+
+    private int height(Node<K, V> node) {
+        return node == null ? -1 : Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    /**
+     * Returns the greatest height a tree of <tt>size</tt> entries can reach,
+     * counted in nodes: twice the black height, which is at most
+     * <tt>log2(size + 1)</tt>.
+     */
+    private static int maxDepth(int size) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(size)) + 1;
+    }
+
+    // generic arrays cannot be created, and this one never leaves the class
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Node<K, V>[] newStack() {
+        return (Node<K, V>[]) new Node[maxDepth(size)];
+    }
+
+    private Node<K, V> getNode(Object key) {
+        Node<K, V> current = root;
+        while(current != null) {
+            int compare = compare(key, current.key);
+            if(compare < 0) {
+                current = current.left;
+            }
+            else if(compare > 0) {
+                current = current.right;
+            }
+            else {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = getNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Maps <tt>key</tt> to <tt>value</tt>. An existing key keeps its node and
+     * only has its value replaced.
+     *
+     * @throws NullPointerException if <tt>key</tt> is null
+     */
+    @Override
+    public V put(K key, V value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        if(root == null) {
+            compare(key, key); // type check
+        }
+        Node<K, V> existing = getNode(key);
+        if(existing != null) {
+            return existing.setValue(value);
+        }
+        root = insert(root, key, value);
+        root.red = false;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if(node == null) {
+            return new Node<>(key, value);
+        }
+        if(compare(key, node.key) < 0) {
+            node.left = insert(node.left, key, value);
+        }
+        else {
+            node.right = insert(node.right, key, value);
+        }
+        return balance(node);
+    }
+
+    /**
+     * Removes <tt>key</tt> in a single pass down the tree, pushing a red
+     * link ahead of the search so that the node finally unlinked is red and
+     * its removal leaves every path with the same number of black nodes.
+     */
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = getNode(key);
+        if(node == null) {
+            return null;
+        }
+        V value = node.value;
+        if(!isRed(root.left) && !isRed(root.right)) {
+            root.red = true;
+        }
+        root = delete(root, key);
+        if(root != null) {
+            root.red = false;
+        }
+        size--;
+        modCount++;
+        return value;
+    }
+
+    private Node<K, V> delete(Node<K, V> node, Object key) {
+        if(compare(key, node.key) < 0) {
+            if(!isRed(node.left) && !isRed(node.left.left)) {
+                node = moveRedLeft(node);
+            }
+            node.left = delete(node.left, key);
+        }
+        else {
+            if(isRed(node.left)) {
+                node = rotateRight(node);
+            }
+            if(node.right == null && compare(key, node.key) == 0) {
+                return null;
+            }
+            if(!isRed(node.right) && !isRed(node.right.left)) {
+                node = moveRedRight(node);
+            }
+            if(compare(key, node.key) == 0) {
+                // the successor takes the node's place, rather than its key
+                // and value, so entries handed out earlier stay valid
+                Node<K, V> successor = node.right;
+                while(successor.left != null) {
+                    successor = successor.left;
+                }
+                successor.right = deleteMin(node.right);
+                successor.left = node.left;
+                successor.red = node.red;
+                node.left = node.right = null;
+                node = successor;
+            }
+            else {
+                node.right = delete(node.right, key);
+            }
+        }
+        return balance(node);
+    }
+
+    private Node<K, V> deleteMin(Node<K, V> node) {
+        if(node.left == null) {
+            return null;
+        }
+        if(!isRed(node.left) && !isRed(node.left.left)) {
+            node = moveRedLeft(node);
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static boolean isRed(Node<?, ?> node) {
+        return node != null && node.red;
+    }
+
+    private Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        pivot.red = node.red;
+        node.red = true;
+        return pivot;
+    }
+
+    private Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        pivot.red = node.red;
+        node.red = true;
+        return pivot;
+    }
+
+    private void flipColors(Node<K, V> node) {
+        node.red = !node.red;
+        node.left.red = !node.left.red;
+        node.right.red = !node.right.red;
+    }
+
+    private Node<K, V> moveRedLeft(Node<K, V> node) {
+        flipColors(node);
+        if(isRed(node.right.left)) {
+            node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    private Node<K, V> moveRedRight(Node<K, V> node) {
+        flipColors(node);
+        if(isRed(node.left.left)) {
+            node = rotateRight(node);
+            flipColors(node);
+        }
+        return node;
+    }
+
+    /**
+     * Restores the left-leaning invariants at <tt>node</tt> on the way back
+     * up: no right-leaning red link, no two red links in a row.
+     */
+    private Node<K, V> balance(Node<K, V> node) {
+        if(isRed(node.right) && !isRed(node.left)) {
+            node = rotateLeft(node);
+        }
+        if(isRed(node.left) && isRed(node.left.left)) {
+            node = rotateRight(node);
+        }
+        if(isRed(node.left) && isRed(node.right)) {
+            flipColors(node);
+        }
+        return node;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return key(firstNode());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(lastNode());
+    }
+
+    private Node<K, V> firstNode() {
+        Node<K, V> current = root;
+        while(current != null && current.left != null) {
+            current = current.left;
+        }
+        return current;
+    }
+
+    private Node<K, V> lastNode() {
+        Node<K, V> current = root;
+        while(current != null && current.right != null) {
+            current = current.right;
+        }
+        return current;
+    }
+
+    private K key(Node<K, V> node) {
+        if(node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    public K higherKey(K key) {
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    public K floorKey(K key) {
+        return keyOrNull(floorNode(key, true));
+    }
+
+    public K lowerKey(K key) {
+        return keyOrNull(floorNode(key, false));
+    }
+
+    private K keyOrNull(Node<K, V> node) {
+        return node == null ? null : node.key;
+    }
+
+    /**
+     * Returns the node with the least key above <tt>key</tt>, or equal to it
+     * if <tt>inclusive</tt>.
+     */
+    private Node<K, V> ceilingNode(Object key, boolean inclusive) {
+        Node<K, V> current = root, ceiling = null;
+        while(current != null) {
+            int compare = compare(current.key, key);
+            if(compare > 0 || (compare == 0 && inclusive)) {
+                ceiling = current;
+                if(compare == 0) {
+                    break;
+                }
+                current = current.left;
+            }
+            else {
+                current = current.right;
+            }
+        }
+        return ceiling;
+    }
+
+    /**
+     * Returns the node with the greatest key below <tt>key</tt>, or equal to
+     * it if <tt>inclusive</tt>.
+     */
+    private Node<K, V> floorNode(Object key, boolean inclusive) {
+        Node<K, V> current = root, floor = null;
+        while(current != null) {
+            int compare = compare(current.key, key);
+            if(compare < 0 || (compare == 0 && inclusive)) {
+                floor = current;
+                if(compare == 0) {
+                    break;
+                }
+                current = current.right;
+            }
+            else {
+                current = current.left;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Walks the tree in order with a stack kept from one call to the next,
+     * so repeated traversals do not allocate.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Node<K, V>[] stack = forEachStack;
+        forEachStack = null; // a nested forEach gets its own
+        if(stack == null || stack.length < maxDepth(size)) {
+            stack = newStack();
+        }
+        int expectedModCount = modCount;
+        int depth = 0;
+        Node<K, V> node = root;
+        try {
+            while(node != null || depth > 0) {
+                while(node != null) {
+                    stack[depth++] = node;
+                    node = node.left;
+                }
+                node = stack[--depth];
+                action.accept(node.key, node.value);
+                if(expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                node = node.right;
+            }
+        } finally {
+            Arrays.fill(stack, null);
+            forEachStack = stack;
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new EntrySet(null);
+        }
+        return entrySet;
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if(compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new Range(fromKey, toKey, false, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        compare(toKey, toKey); // type (and possibly null) check
+        return new Range(null, toKey, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        compare(fromKey, fromKey);
+        return new Range(fromKey, null, false, true);
+    }
+
+    /**
+     * The entries of the whole tree, or of <tt>range</tt> if it is not null.
+     */
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        private final Range range;
+
+        EntrySet(Range range) {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator(range);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if(!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            if(range != null && !range.inRange(entry.getKey())) {
+                return false;
+            }
+            Node<K, V> node = getNode(entry.getKey());
+            return node != null && node.equals(entry);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(!contains(o)) {
+                return false;
+            }
+            CompactBST.this.remove(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public int size() {
+            if(range == null) {
+                return size;
+            }
+            int count = 0;
+            for(Iterator<Entry<K, V>> it = iterator(); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public void clear() {
+            if(range == null) {
+                CompactBST.this.clear();
+            }
+            else {
+                super.clear();
+            }
+        }
+    }
+
+    /**
+     * Iterates in order over the entries of <tt>range</tt>, or of the whole
+     * tree. The stack holds the nodes still to be visited whose left
+     * subtrees are done: the next node on top, then its ancestors that come
+     * after it.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Range range;
+        private final Node<K, V>[] stack = newStack();
+        private int depth;
+        private Node<K, V> last;
+        private int expectedModCount = modCount;
+
+        EntryIterator(Range range) {
+            this.range = range;
+            if(range == null || range.fromStart) {
+                pushLeft(root);
+            }
+            else {
+                seek(range.lo, true);
+            }
+        }
+
+        private void pushLeft(Node<K, V> node) {
+            while(node != null) {
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        /**
+         * Fills the stack for an iteration starting at the least key above
+         * <tt>key</tt>, or equal to it if <tt>inclusive</tt>.
+         */
+        private void seek(Object key, boolean inclusive) {
+            depth = 0;
+            Node<K, V> node = root;
+            while(node != null) {
+                int compare = compare(node.key, key);
+                if(compare > 0 || (compare == 0 && inclusive)) {
+                    stack[depth++] = node;
+                    node = compare == 0 ? null : node.left;
+                }
+                else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && (range == null || !range.tooHigh(stack[depth - 1].key));
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            Node<K, V> node = stack[--depth];
+            stack[depth] = null;
+            pushLeft(node.right);
+            last = node;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            if(last == null) {
+                throw new IllegalStateException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            K key = last.key;
+            CompactBST.this.remove(key);
+            // the removal rotated the path the stack holds
+            seek(key, false);
+            expectedModCount = modCount;
+            last = null;
+        }
+    }
+
+    /**
+     * A view of the keys from <tt>lo</tt> (inclusive) to <tt>hi</tt>
+     * (exclusive), either of which may be unbounded.
+     */
+    private class Range extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final K lo, hi;
+        private final boolean fromStart, toEnd;
+        private final EntrySet entries = new EntrySet(this);
+
+        Range(K lo, K hi, boolean fromStart, boolean toEnd) {
+            this.lo = lo;
+            this.hi = hi;
+            this.fromStart = fromStart;
+            this.toEnd = toEnd;
+        }
+
+        boolean tooHigh(Object key) {
+            return !toEnd && compare(key, hi) >= 0;
+        }
+
+        boolean inRange(Object key) {
+            return (fromStart || compare(key, lo) >= 0) && !tooHigh(key);
+        }
+
+        /**
+         * Returns whether <tt>key</tt> can bound a view of this range: it
+         * must lie inside, or be the exclusive upper bound itself.
+         */
+        private boolean inClosedRange(K key) {
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && CompactBST.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? CompactBST.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if(!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return CompactBST.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? CompactBST.this.remove(key) : null;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            Node<K, V> first = fromStart ? firstNode() : ceilingNode(lo, true);
+            if(first == null || tooHigh(first.key)) {
+                throw new NoSuchElementException();
+            }
+            return first.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Node<K, V> last = toEnd ? lastNode() : floorNode(hi, false);
+            if(last == null || !inRange(last.key)) {
+                throw new NoSuchElementException();
+            }
+            return last.key;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if(compare(fromKey, toKey) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            if(!inClosedRange(fromKey)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(!inClosedRange(toKey)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new Range(fromKey, toKey, false, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            if(!inClosedRange(toKey)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new Range(lo, toKey, fromStart, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if(!inClosedRange(fromKey)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return new Range(fromKey, hi, false, toEnd);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,947 @@
+package com.rchome.bst;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe sorted map laid out like {@link DefaultBST}: an unbalanced
+ * tree without rotations, so a node never moves once it is linked.
+ * <p/>
+ * Reads take no locks and never retry. They follow volatile child links down
+ * from the root, and a node that is unlinked while a reader stands on it
+ * still points into the subtree that took its place. Writers lock only the
+ * nodes they change, a parent always before its child. A removal clears the
+ * node's value, which is the moment the key disappears, and then unlinks the
+ * node if it has at most one child; a node with two children stays behind to
+ * route searches until one of them goes, or is revived by a later put.
+ * <p/>
+ * Iterators walk the live tree and are weakly consistent: they never throw
+ * {@link ConcurrentModificationException}, return keys in order and at most
+ * once, and may or may not reflect changes made after they were created. The
+ * entries they return are snapshots that do not support <tt>setValue</tt>.
+ * {@link #size()} is exact only while no updates are in flight.
+ * <p/>
+ * Null keys and values are not permitted. As with {@link DefaultBST}, keys
+ * inserted in sorted order degrade the tree to a list.
+ */
+public class ConcurrentBST<K, V> extends AbstractMap<K, V> implements ConcurrentNavigableMap<K, V> {
+
+    private static final class Node<K, V> {
+        final K key;
+        // null once the mapping is removed; the node then only routes searches
+        volatile V value;
+        volatile Node<K, V> left, right, parent;
+        // guarded by this node's lock; once set the node is unreachable for good
+        boolean unlinked;
+
+        Node(K key, V value, Node<K, V> parent) {
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+        }
+    }
+
+    // sentinel whose right child is the root, so every node has a parent to lock
+    private final Node<K, V> head = new Node<>(null, null, null);
+    private final Comparator<? super K> comparator;
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentBST() {
+        this(null);
+    }
+
+    public ConcurrentBST(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    private int compare(K key1, K key2) {
+        if(comparator == null) {
+            return ((Comparable<? super K>) key1).compareTo(key2);
+        }
+        return comparator.compare(key1, key2);
+    }
+
+    private Node<K, V> findNode(Object key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = head.right;
+        while(node != null) {
+            int compare = compare((K) key, node.key);
+            if(compare == 0) {
+                return node;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        long size = this.size.sum();
+        return size < 0 ? 0 : size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ceiling(null, true) == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    /**
+     * Stores <tt>value</tt> in the node for <tt>key</tt> under that node's
+     * lock, or links a new leaf under the lock of its parent. Either step
+     * starts over if the node it locked was unlinked, or the slot it meant to
+     * fill was taken, after the lock-free search found it.
+     */
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if(key == null || value == null) {
+            throw new NullPointerException();
+        }
+        retry:
+        while(true) {
+            Node<K, V> parent = head, node = head.right;
+            int compare = 1;
+            while(node != null) {
+                compare = compare(key, node.key);
+                if(compare == 0) {
+                    break;
+                }
+                parent = node;
+                node = compare < 0 ? node.left : node.right;
+            }
+            if(node != null) {
+                synchronized(node) {
+                    if(node.unlinked) {
+                        continue retry;
+                    }
+                    V old = node.value;
+                    if(old == null) {
+                        node.value = value;
+                        size.increment();
+                    }
+                    else if(!onlyIfAbsent) {
+                        node.value = value;
+                    }
+                    return old;
+                }
+            }
+            synchronized(parent) {
+                if(parent.unlinked || (compare < 0 ? parent.left : parent.right) != null) {
+                    continue retry;
+                }
+                Node<K, V> leaf = new Node<>(key, value, parent);
+                if(compare < 0) {
+                    parent.left = leaf;
+                }
+                else {
+                    parent.right = leaf;
+                }
+            }
+            size.increment();
+            return null;
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        return doRemove(key, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * Clears the value of the node for <tt>key</tt>, if it is present and
+     * equal to <tt>expected</tt> (when given), then unlinks what it can.
+     */
+    private V doRemove(Object key, Object expected) {
+        Node<K, V> node = findNode(key);
+        if(node == null) {
+            return null;
+        }
+        V old;
+        synchronized(node) {
+            old = node.value;
+            if(old == null || (expected != null && !expected.equals(old))) {
+                return null;
+            }
+            node.value = null;
+        }
+        size.decrement();
+        unlink(node);
+        return old;
+    }
+
+    /**
+     * Unlinks <tt>node</tt> if it holds no value and has at most one child,
+     * splicing that child into its place, then does the same for the parent,
+     * which may have been a routing node waiting to lose a child.
+     */
+    private void unlink(Node<K, V> node) {
+        while(node != head && node.value == null) {
+            Node<K, V> parent = node.parent;
+            synchronized(parent) {
+                synchronized(node) {
+                    if(node.unlinked || node.value != null) {
+                        return;
+                    }
+                    if(parent.unlinked || node.parent != parent) {
+                        continue;
+                    }
+                    Node<K, V> left = node.left, right = node.right;
+                    if(left != null && right != null) {
+                        return;
+                    }
+                    Node<K, V> child = left != null ? left : right;
+                    if(child != null) {
+                        child.parent = parent;
+                    }
+                    if(parent.left == node) {
+                        parent.left = child;
+                    }
+                    else {
+                        parent.right = child;
+                    }
+                    node.unlinked = true;
+                }
+            }
+            node = parent;
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if(oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = findNode(key);
+        if(node == null) {
+            return false;
+        }
+        synchronized(node) {
+            if(!oldValue.equals(node.value)) {
+                return false;
+            }
+            node.value = newValue;
+            return true;
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if(value == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = findNode(key);
+        if(node == null) {
+            return null;
+        }
+        synchronized(node) {
+            V old = node.value;
+            if(old != null) {
+                node.value = value;
+            }
+            return old;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the mapping with the least key above
+     * <tt>key</tt>, or at it if <tt>inclusive</tt>. A null <tt>key</tt>
+     * stands below every key. Nodes left behind by removals are skipped by
+     * searching again past them.
+     */
+    private Entry<K, V> ceiling(K key, boolean inclusive) {
+        while(true) {
+            Node<K, V> best = null, node = head.right;
+            while(node != null) {
+                int compare = key == null ? -1 : compare(key, node.key);
+                if(compare < 0 || (compare == 0 && inclusive)) {
+                    best = node;
+                    if(compare == 0) {
+                        break;
+                    }
+                    node = node.left;
+                }
+                else {
+                    node = node.right;
+                }
+            }
+            if(best == null) {
+                return null;
+            }
+            V value = best.value;
+            if(value != null) {
+                return new SimpleImmutableEntry<>(best.key, value);
+            }
+            key = best.key;
+            inclusive = false;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the mapping with the greatest key below
+     * <tt>key</tt>, or at it if <tt>inclusive</tt>. A null <tt>key</tt>
+     * stands above every key.
+     */
+    private Entry<K, V> floor(K key, boolean inclusive) {
+        while(true) {
+            Node<K, V> best = null, node = head.right;
+            while(node != null) {
+                int compare = key == null ? 1 : compare(key, node.key);
+                if(compare > 0 || (compare == 0 && inclusive)) {
+                    best = node;
+                    if(compare == 0) {
+                        break;
+                    }
+                    node = node.right;
+                }
+                else {
+                    node = node.left;
+                }
+            }
+            if(best == null) {
+                return null;
+            }
+            V value = best.value;
+            if(value != null) {
+                return new SimpleImmutableEntry<>(best.key, value);
+            }
+            key = best.key;
+            inclusive = false;
+        }
+    }
+
+    private static <K> K keyOrNull(Entry<K, ?> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    private static <K> K key(Entry<K, ?> entry) {
+        if(entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return key(firstEntry());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(lastEntry());
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return ceiling(null, true);
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return floor(null, true);
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        Entry<K, V> entry;
+        while((entry = firstEntry()) != null && !remove(entry.getKey(), entry.getValue())) {
+            // lost a race for it; try the new first entry
+        }
+        return entry;
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        Entry<K, V> entry;
+        while((entry = lastEntry()) != null && !remove(entry.getKey(), entry.getValue())) {
+            // lost a race for it; try the new last entry
+        }
+        return entry;
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return floor(checkKey(key), false);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return floor(checkKey(key), true);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return ceiling(checkKey(key), true);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return ceiling(checkKey(key), false);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    private static <K> K checkKey(K key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        return key;
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new BinarySearchTree.KeySet<>(this);
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> descendingMap() {
+        return new SubMap(null, false, null, false, true);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return new SubMap(checkKey(fromKey), fromInclusive, checkKey(toKey), toInclusive, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(null, false, checkKey(toKey), inclusive, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(checkKey(fromKey), inclusive, null, false, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet(null);
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        private final SubMap range;
+
+        EntrySet(SubMap range) {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator(range);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if(!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            if(range != null && !range.inRange(entry.getKey())) {
+                return false;
+            }
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            if(range != null && !range.inRange(entry.getKey())) {
+                return false;
+            }
+            return ConcurrentBST.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return range == null ? ConcurrentBST.this.isEmpty() : range.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return range == null ? ConcurrentBST.this.size() : range.size();
+        }
+    }
+
+    /**
+     * Walks the tree in order with an explicit stack, optionally within the
+     * bounds and direction of a sub-map. Since nodes never move, the keys it
+     * meets only ever increase (or decrease) whatever writers do meanwhile.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final SubMap range;
+        private final boolean descending;
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private Entry<K, V> next, lastReturned;
+
+        EntryIterator(SubMap range) {
+            this.range = range;
+            this.descending = range != null && range.descending;
+            push(head.right);
+            advance();
+        }
+
+        private boolean beforeStart(K key) {
+            return range != null && (descending ? range.tooHigh(key) : range.tooLow(key));
+        }
+
+        private boolean pastEnd(K key) {
+            return range != null && (descending ? range.tooLow(key) : range.tooHigh(key));
+        }
+
+        /**
+         * Pushes the path from <tt>node</tt> towards the first key in
+         * iteration order, skipping over subtrees before the start.
+         */
+        private void push(Node<K, V> node) {
+            while(node != null) {
+                if(beforeStart(node.key)) {
+                    node = descending ? node.left : node.right;
+                }
+                else {
+                    stack.push(node);
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        private void advance() {
+            next = null;
+            while(!stack.isEmpty()) {
+                Node<K, V> node = stack.pop();
+                if(pastEnd(node.key)) {
+                    stack.clear();
+                    return;
+                }
+                push(descending ? node.left : node.right);
+                V value = node.value;
+                if(value != null) {
+                    next = new SimpleImmutableEntry<>(node.key, value);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            advance();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if(lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentBST.this.remove(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * A view of the entries with keys between optional low and high bounds,
+     * in ascending or descending order. A null bound is open. Like
+     * {@link java.util.concurrent.ConcurrentSkipListMap}'s views, its size is
+     * counted by walking it.
+     */
+    private class SubMap extends AbstractMap<K, V> implements ConcurrentNavigableMap<K, V> {
+
+        private final K lo, hi;
+        private final boolean loInclusive, hiInclusive, descending;
+
+        SubMap(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            if(lo != null && hi != null && compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        boolean tooLow(Object key) {
+            if(lo == null) {
+                return false;
+            }
+            int compare = compare((K) key, lo);
+            return compare < 0 || (compare == 0 && !loInclusive);
+        }
+
+        boolean tooHigh(Object key) {
+            if(hi == null) {
+                return false;
+            }
+            int compare = compare((K) key, hi);
+            return compare > 0 || (compare == 0 && !hiInclusive);
+        }
+
+        boolean inRange(Object key) {
+            return !tooLow(checkKey(key)) && !tooHigh(key);
+        }
+
+        /**
+         * Checks a bound for a nested view: an exclusive bound may sit on
+         * this view's own exclusive bound.
+         */
+        private boolean inRange(K key, boolean inclusive) {
+            if(inclusive) {
+                return inRange(key);
+            }
+            return (lo == null || compare(key, lo) >= 0) && (hi == null || compare(key, hi) <= 0);
+        }
+
+        private K checkRange(K key) {
+            if(!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return key;
+        }
+
+        private Entry<K, V> absLowest() {
+            Entry<K, V> entry = ConcurrentBST.this.ceiling(lo, lo == null || loInclusive);
+            return entry == null || tooHigh(entry.getKey()) ? null : entry;
+        }
+
+        private Entry<K, V> absHighest() {
+            Entry<K, V> entry = ConcurrentBST.this.floor(hi, hi == null || hiInclusive);
+            return entry == null || tooLow(entry.getKey()) ? null : entry;
+        }
+
+        private Entry<K, V> absCeiling(K key, boolean inclusive) {
+            if(tooLow(checkKey(key))) {
+                return absLowest();
+            }
+            Entry<K, V> entry = ConcurrentBST.this.ceiling(key, inclusive);
+            return entry == null || tooHigh(entry.getKey()) ? null : entry;
+        }
+
+        private Entry<K, V> absFloor(K key, boolean inclusive) {
+            if(tooHigh(checkKey(key))) {
+                return absHighest();
+            }
+            Entry<K, V> entry = ConcurrentBST.this.floor(key, inclusive);
+            return entry == null || tooLow(entry.getKey()) ? null : entry;
+        }
+
+        private Entry<K, V> lowest() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Entry<K, V> highest() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        private Entry<K, V> ceiling(K key, boolean inclusive) {
+            return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        private Entry<K, V> floor(K key, boolean inclusive) {
+            return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && ConcurrentBST.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? ConcurrentBST.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return ConcurrentBST.this.put(checkRange(key), value);
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            return ConcurrentBST.this.putIfAbsent(checkRange(key), value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? ConcurrentBST.this.remove(key) : null;
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return inRange(key) && ConcurrentBST.this.remove(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            return inRange(key) && ConcurrentBST.this.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            return inRange(key) ? ConcurrentBST.this.replace(key, value) : null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public int size() {
+            int count = 0;
+            for(Iterator<Entry<K, V>> it = new EntryIterator(this); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new EntrySet(this);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            return key(lowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(highest());
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return lowest();
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return highest();
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            Entry<K, V> entry;
+            while((entry = lowest()) != null && !ConcurrentBST.this.remove(entry.getKey(), entry.getValue())) {
+                // lost a race for it; try the new first entry
+            }
+            return entry;
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            Entry<K, V> entry;
+            while((entry = highest()) != null && !ConcurrentBST.this.remove(entry.getKey(), entry.getValue())) {
+                // lost a race for it; try the new last entry
+            }
+            return entry;
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return floor(key, false);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(floor(key, false));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return floor(key, true);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floor(key, true));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return ceiling(key, true);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceiling(key, true));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return ceiling(key, false);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(ceiling(key, false));
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new BinarySearchTree.KeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> descendingMap() {
+            return new SubMap(lo, loInclusive, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if(!inRange(checkKey(fromKey), fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(!inRange(checkKey(toKey), toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(toKey, toInclusive, fromKey, fromInclusive, true);
+            }
+            return new SubMap(fromKey, fromInclusive, toKey, toInclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if(!inRange(checkKey(toKey), inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(toKey, inclusive, hi, hiInclusive, true);
+            }
+            return new SubMap(lo, loInclusive, toKey, inclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if(!inRange(checkKey(fromKey), inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(descending) {
+                return new SubMap(lo, loInclusive, fromKey, inclusive, true);
+            }
+            return new SubMap(fromKey, inclusive, hi, hiInclusive, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.rchome.bst;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Comparator;
+import java.util.Iterator;
 
 /**
  * Created by Raymond on 12/9/2014.
@@ -13,64 +16,44 @@ public class DefaultBST<K, V> extends BinarySearchTree<K, V> {
         super(comparator);
     }
 
-    @Override
-    protected void findOperation(Node current) {
-        // no-op
+    /**
+     * Builds a balanced tree from <tt>size</tt> entries in ascending key
+     * order without comparing keys.
+     */
+    public static <K, V> DefaultBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        return fromSorted(entries, size, null);
     }
 
-    @Override
-    protected Node insertNode(Node node) {
-        if(root == null) {
-            root = node;
-            return null;
-        }
-        Node current = root;
-        K key = node.getKey();
-        while(true) {
-            int compare = compare(key, current.getKey());
-            if(compare < 0) {
-                if(current.left == null) {
-                    current.left = node;
-                    node.parent = current;
-                    break;
-                }
+    public static <K, V> DefaultBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size,
+                                                     Comparator<? super K> comparator) {
+        DefaultBST<K, V> tree = new DefaultBST<>(comparator);
+        tree.buildFromSorted(entries, size);
+        return tree;
+    }
 
-                current = current.left;
-            }
-            else if(compare > 0) {
-                if(current.right == null) {
-                    current.right = node;
-                    node.parent = current;
-                    break;
-                }
+    /**
+     * Loads a tree written by {@link #writeSnapshot}.
+     */
+    public static <K, V> DefaultBST<K, V> fromSnapshot(Path path, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                                       Comparator<? super K> comparator) throws IOException {
+        DefaultBST<K, V> tree = new DefaultBST<>(comparator);
+        tree.readSnapshot(path, keyCodec, valueCodec);
+        return tree;
+    }
 
-                current = current.right;
-            }
-            else {
-                if(current == root) {
-                    root = node;
-                }
-                else if(current.isLeftChild()) {
-                    current.parent.left = node;
-                }
-                else {
-                    current.parent.right = node;
-                }
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        return new DefaultBST<>(comparator());
+    }
 
-                node.parent = current.parent;
-                if(current.left != null) {
-                    node.left = current.left;
-                    current.left.parent = node;
-                }
-                if(current.right != null) {
-                    node.right = current.right;
-                    current.right.parent = node;
-                }
+    @Override
+    protected void findOperation(Node current) {
+        // no-op
+    }
 
-                return current;
-            }
-        }
-        return null;
+    @Override
+    protected void insertNode(Node node) {
+        updatePath(node.parent);
     }
 
     @Override
@@ -80,25 +63,11 @@ public class DefaultBST<K, V> extends BinarySearchTree<K, V> {
             while(current.left != null) {
                 current = current.left;
             }
-            node.setKey(current.getKey());
-            node.setValue(current.getValue());
-            removeNode(current);
+            swapWithSuccessor(node, current);
         }
-        else {
-            Node newChild = node.left == null ? node.right == null ? null : node.right : node.left;
-            if(node == root) {
-                root = newChild;
-            }
-            else if(node.isLeftChild()) {
-                node.parent.left = newChild;
-            }
-            else {
-                node.parent.right = newChild;
-            }
 
-            if(newChild != null) {
-                newChild.parent = node.parent;
-            }
-        }
+        Node newChild = node.left == null ? node.right : node.left;
+        replaceChild(node, newChild);
+        updatePath(node.parent);
     }
 }
@@ -0,0 +1,105 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The <tt>double</tt> counterpart of {@link LongSumBST}. Each node's sum is
+ * recomputed from its children rather than adjusted by differences, so
+ * rounding errors do not build up as the tree changes, though a range sum
+ * may differ in its last bits from adding the same values one by one.
+ */
+public class DoubleSumBST<K, V> extends AggregatingBST<K, V> {
+
+    private final ToDoubleFunction<? super V> measure;
+
+    private class SumNode extends AggregateNode {
+        double sum;
+
+        SumNode(K key, V value) {
+            super(key, value);
+            sum = measure.applyAsDouble(value);
+        }
+    }
+
+    /**
+     * Creates a tree that sums <tt>measure</tt> applied to each value.
+     */
+    public DoubleSumBST(ToDoubleFunction<? super V> measure) {
+        this(measure, null);
+    }
+
+    public DoubleSumBST(ToDoubleFunction<? super V> measure, Comparator<? super K> comparator) {
+        super(comparator);
+        if(measure == null) {
+            throw new NullPointerException();
+        }
+        this.measure = measure;
+    }
+
+    /**
+     * Creates a tree that sums its values, which must not be null.
+     */
+    public static <K> DoubleSumBST<K, Double> ofDoubles() {
+        return new DoubleSumBST<>(Double::doubleValue);
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        return new DoubleSumBST<>(measure, comparator());
+    }
+
+    @Override
+    protected Node createNode(K key, V value) {
+        return new SumNode(key, value);
+    }
+
+    @Override
+    protected void updateNode(Node node) {
+        super.updateNode(node);
+        ((SumNode) node).sum = sumOf(node.left) + measure.applyAsDouble(node.getValue()) + sumOf(node.right);
+    }
+
+    private double sumOf(Node node) {
+        return node == null ? 0 : ((SumNode) node).sum;
+    }
+
+    /**
+     * Returns the sum over every value in the tree.
+     */
+    public double sum() {
+        return sumOf(root);
+    }
+
+    /**
+     * Returns the sum over the values of the keys <tt>k</tt> with
+     * <tt>lo &lt;= k &lt; hi</tt>.
+     */
+    public double sum(K lo, K hi) {
+        return sum(lo, true, hi, false);
+    }
+
+    /**
+     * Returns the sum over the values of the keys between <tt>lo</tt> and
+     * <tt>hi</tt>, each end included or excluded as requested.
+     */
+    public double sum(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        SumAccumulator accumulator = new SumAccumulator();
+        addRange(accumulator, lo, loInclusive, hi, hiInclusive);
+        return accumulator.sum;
+    }
+
+    private class SumAccumulator extends Accumulator {
+        double sum;
+
+        @Override
+        void addNode(Node node) {
+            sum += measure.applyAsDouble(node.getValue());
+        }
+
+        @Override
+        void addSubtree(Node node) {
+            sum += ((SumNode) node).sum;
+        }
+    }
+}
@@ -0,0 +1,657 @@
+package com.rchome.bst;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link BinarySearchTree} whose contents survive a crash. Every
+ * <tt>put</tt>, <tt>remove</tt> and <tt>clear</tt> is appended to a
+ * write-ahead log in the tree's directory before it is applied, and once the
+ * log outgrows a threshold the whole tree is written as a checkpoint in the
+ * {@link BinarySearchTree#writeSnapshot snapshot} format and the log is
+ * emptied. {@link #open} rebuilds the tree from the checkpoint and replays
+ * the log written since, stopping at the first record a crash left
+ * incomplete.
+ * <p/>
+ * The log is a header
+ * <pre>
+ *   0  magic    int   "BSTL"
+ *   4  version  int
+ * </pre>
+ * followed by records, each a payload length (int), the payload's CRC32
+ * (int) and the payload: an operation byte, then for puts and removes the
+ * key and for puts the value, length-prefixed as in a snapshot.
+ * <p/>
+ * How soon a change is on disk depends on the {@link SyncPolicy}. Under
+ * {@link SyncPolicy#ALWAYS} a writer returns only once its record has been
+ * forced, but writers share the fsyncs: while one forces the log, the
+ * records appended by the others queue up behind it and all go in the next
+ * one. Replaying a log over a checkpoint that already contains it gives the
+ * same tree, so a crash at any point of a compaction loses nothing.
+ * <p/>
+ * All methods are thread-safe; the tree itself must not be used directly
+ * once it has been handed to {@link #open}. Compound operations such as
+ * <tt>merge</tt> are a <tt>get</tt> followed by a <tt>put</tt> and are not
+ * atomic. The entry set is read-only and must not be iterated while other
+ * threads write. Compaction holds up writers while the checkpoint is written.
+ */
+public class DurableBST<K, V> extends AbstractMap<K, V> implements Closeable {
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum SyncPolicy {
+        /**
+         * Before every update returns, with concurrent writers sharing
+         * fsyncs. Nothing acknowledged is lost.
+         */
+        ALWAYS,
+        /**
+         * By a background thread at a fixed interval. A crash loses at most
+         * the updates of the last interval. If a background sync fails, every
+         * later update, flush and close throws instead.
+         */
+        PERIODIC,
+        /**
+         * Only when the tree is compacted, flushed or closed. Records are
+         * handed to the operating system whenever the append buffer fills,
+         * so a crash loses what was still buffered as well as whatever the
+         * operating system had not yet written back.
+         */
+        NEVER
+    }
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64 << 20;
+
+    private static final int MAGIC = 0x4253544C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte PUT = 1, REMOVE = 2, CLEAR = 3;
+
+    private final BinarySearchTree<K, V> tree;
+    private final ByteCodec<K> keyCodec;
+    private final ByteCodec<V> valueCodec;
+    private final SyncPolicy policy;
+    private final long compactionThreshold;
+    private final Path directory, checkpointPath;
+    private final FileChannel log;
+    private final int maxRecord;
+    private final Set<Entry<K, V>> entrySet;
+    private ScheduledExecutorService syncer;
+
+    // guards the tree, the append buffer and the counters below it
+    private final Object lock = new Object();
+    // held while forcing or compacting, always taken before lock
+    private final Object syncLock = new Object();
+    private final ByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    // bytes of records ever appended, and the count when last compacted
+    private long appended;
+    private volatile long compacted;
+    // where the last record starts in the buffer
+    private int recordStart;
+    // bytes of records known to be on disk
+    private volatile long synced;
+    private long syncs;
+    private boolean closed;
+    // set by the syncer, whose records may not have reached the disk
+    private volatile IOException syncFailure;
+
+    private DurableBST(Path directory, BinarySearchTree<K, V> tree, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                       SyncPolicy policy, long compactionThreshold, FileChannel log) {
+        this.directory = directory;
+        this.tree = tree;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.policy = policy;
+        this.compactionThreshold = compactionThreshold;
+        this.log = log;
+        checkpointPath = directory.resolve("checkpoint");
+        maxRecord = maxRecord(keyCodec, valueCodec);
+        buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, maxRecord));
+        entrySet = Collections.unmodifiableMap(tree).entrySet();
+    }
+
+    /**
+     * Opens the durable tree kept in <tt>directory</tt>, creating it if
+     * necessary, with the default sync interval and compaction threshold.
+     */
+    public static <K, V> DurableBST<K, V> open(Path directory, BinarySearchTree<K, V> tree,
+                                               ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                               SyncPolicy policy) throws IOException {
+        return open(directory, tree, keyCodec, valueCodec, policy,
+                    DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens the durable tree kept in <tt>directory</tt>, creating it if
+     * necessary. The contents of <tt>tree</tt>, which must be ordered as it
+     * was when the directory was written, are replaced by the recovered
+     * ones. A torn record at the end of the log is cut off.
+     *
+     * @param syncIntervalMillis  how often {@link SyncPolicy#PERIODIC} forces the log
+     * @param compactionThreshold the size in bytes of the log records that
+     *                            triggers a checkpoint
+     * @throws IOException if the checkpoint or log cannot be read, or is corrupt
+     */
+    public static <K, V> DurableBST<K, V> open(Path directory, BinarySearchTree<K, V> tree,
+                                               ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                               SyncPolicy policy, long syncIntervalMillis,
+                                               long compactionThreshold) throws IOException {
+        if(policy == null) {
+            throw new NullPointerException();
+        }
+        if(syncIntervalMillis <= 0 || compactionThreshold <= 0) {
+            throw new IllegalArgumentException();
+        }
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve("checkpoint");
+        if(Files.exists(checkpoint)) {
+            tree.readSnapshot(checkpoint, keyCodec, valueCodec);
+        }
+        else {
+            tree.clear();
+        }
+        Path logPath = directory.resolve("log");
+        FileChannel log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+        try {
+            long end = replay(log, logPath, tree, keyCodec, valueCodec, maxRecord(keyCodec, valueCodec));
+            if(end < log.size()) {
+                log.truncate(end);
+            }
+            log.position(end);
+            log.force(true);
+        } catch(IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        DurableBST<K, V> durable = new DurableBST<>(directory, tree, keyCodec, valueCodec, policy,
+                                                     compactionThreshold, log);
+        if(policy == SyncPolicy.PERIODIC) {
+            durable.startSyncer(syncIntervalMillis);
+        }
+        return durable;
+    }
+
+    private static int maxRecord(ByteCodec<?> keyCodec, ByteCodec<?> valueCodec) {
+        return RECORD_HEADER_SIZE + 1 + 2 * TreeSnapshot.MAX_VARINT + keyCodec.maxSize() + valueCodec.maxSize();
+    }
+
+    /**
+     * Applies the records of the log to <tt>tree</tt>, writing a header
+     * first if the log is new, and returns the offset just past the last
+     * intact record.
+     */
+    private static <K, V> long replay(FileChannel log, Path path, BinarySearchTree<K, V> tree,
+                                      ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                      int maxRecord) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(log.size() < HEADER_SIZE) {
+            // new, or torn while writing the header
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            log.truncate(0);
+            while(header.hasRemaining()) {
+                log.write(header, header.position());
+            }
+            return HEADER_SIZE;
+        }
+        while(header.hasRemaining() && log.read(header, header.position()) >= 0) {
+            // keep reading
+        }
+        header.flip();
+        if(header.getInt() != MAGIC) {
+            throw new IOException("Not a tree log: " + path);
+        }
+        int version = header.getInt();
+        if(version != VERSION) {
+            throw new IOException("Unsupported log version " + version + ": " + path);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, maxRecord));
+        buffer.limit(0);
+        CRC32 crc = new CRC32();
+        long end = HEADER_SIZE;
+        long read = HEADER_SIZE;
+        while(true) {
+            if(buffer.remaining() < maxRecord) {
+                buffer.compact();
+                int count;
+                while(buffer.hasRemaining() && (count = log.read(buffer, read)) > 0) {
+                    read += count;
+                }
+                buffer.flip();
+            }
+            int start = buffer.position();
+            if(buffer.remaining() < RECORD_HEADER_SIZE) {
+                return end;
+            }
+            int length = buffer.getInt(start);
+            int checksum = buffer.getInt(start + 4);
+            if(length <= 0 || length > maxRecord - RECORD_HEADER_SIZE
+                    || buffer.remaining() < RECORD_HEADER_SIZE + length) {
+                return end;
+            }
+            int payload = start + RECORD_HEADER_SIZE;
+            ByteBuffer record = buffer.duplicate();
+            record.position(payload).limit(payload + length);
+            crc.reset();
+            crc.update(record);
+            if((int) crc.getValue() != checksum) {
+                return end;
+            }
+            try {
+                apply(buffer, payload, payload + length, tree, keyCodec, valueCodec);
+            } catch(IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Corrupt log record at " + end + ": " + path, e);
+            }
+            buffer.position(payload + length);
+            end += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    private static <K, V> void apply(ByteBuffer buffer, int offset, int end, BinarySearchTree<K, V> tree,
+                                     ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) {
+        byte operation = buffer.get(offset++);
+        if(operation == CLEAR) {
+            tree.clear();
+            return;
+        }
+        if(operation != PUT && operation != REMOVE) {
+            throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+        int keyLength = getVarint(buffer, offset);
+        offset += varintSize(keyLength);
+        K key = keyCodec.decode(buffer, offset, keyLength);
+        offset += keyLength;
+        if(operation == REMOVE) {
+            tree.remove(key);
+            return;
+        }
+        int valueLength = getVarint(buffer, offset) - 1;
+        offset += varintSize(valueLength + 1);
+        V value = null;
+        if(valueLength >= 0) {
+            value = valueCodec.decode(buffer, offset, valueLength);
+            offset += valueLength;
+        }
+        if(offset > end) {
+            throw new IndexOutOfBoundsException();
+        }
+        tree.put(key, value);
+    }
+
+    private static int getVarint(ByteBuffer buffer, int offset) {
+        int value = 0;
+        for(int shift = 0; ; shift += 7) {
+            byte b = buffer.get(offset++);
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+            if(shift >= 28) {
+                throw new IllegalArgumentException("Malformed length");
+            }
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void startSyncer(long intervalMillis) {
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DurableBST syncer " + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch(IOException e) {
+                syncFailure = e;
+            } catch(IllegalStateException e) {
+                // closed meanwhile
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int size() {
+        synchronized(lock) {
+            return tree.size();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        synchronized(lock) {
+            return tree.containsKey(key);
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        synchronized(lock) {
+            return tree.get(key);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V old;
+        long position;
+        synchronized(lock) {
+            position = append(PUT, key, value);
+            try {
+                old = tree.put(key, value);
+            } catch(RuntimeException e) {
+                discardRecord();
+                throw e;
+            }
+        }
+        afterAppend(position);
+        return old;
+    }
+
+    /**
+     * Removes the mapping for <tt>key</tt>. Nothing is logged if there is
+     * none.
+     */
+    @Override
+    public V remove(Object key) {
+        V old;
+        long position;
+        synchronized(lock) {
+            if(!tree.containsKey(key)) {
+                return null;
+            }
+            position = append(REMOVE, (K) key, null);
+            try {
+                old = tree.remove(key);
+            } catch(RuntimeException e) {
+                discardRecord();
+                throw e;
+            }
+        }
+        afterAppend(position);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        long position;
+        synchronized(lock) {
+            position = append(CLEAR, null, null);
+            tree.clear();
+        }
+        afterAppend(position);
+    }
+
+    /**
+     * Returns a read-only view of the entries in key order. It must not be
+     * iterated while other threads are writing.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * Encodes a record into the append buffer, flushing the buffer to the
+     * log first if the record might not fit, and returns the number of bytes
+     * appended up to the end of it. The buffer is untouched if encoding
+     * fails, so the tree is only updated once its record is in place.
+     */
+    private long append(byte operation, K key, V value) {
+        if(closed) {
+            throw new IllegalStateException("Closed");
+        }
+        try {
+            checkSyncFailure();
+            if(buffer.remaining() < maxRecord) {
+                flushBuffer();
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int start = buffer.position();
+        int position = start + RECORD_HEADER_SIZE;
+        buffer.put(position++, operation);
+        if(operation != CLEAR) {
+            int keyLength = keyCodec.encode(key, buffer, position + TreeSnapshot.MAX_VARINT);
+            int keyStart = TreeSnapshot.putVarint(buffer, position, keyLength);
+            TreeSnapshot.move(buffer, position + TreeSnapshot.MAX_VARINT, keyStart, keyLength);
+            position = keyStart + keyLength;
+        }
+        if(operation == PUT) {
+            if(value == null) {
+                position = TreeSnapshot.putVarint(buffer, position, 0);
+            }
+            else {
+                int valueLength = valueCodec.encode(value, buffer, position + TreeSnapshot.MAX_VARINT);
+                int valueStart = TreeSnapshot.putVarint(buffer, position, valueLength + 1);
+                TreeSnapshot.move(buffer, position + TreeSnapshot.MAX_VARINT, valueStart, valueLength);
+                position = valueStart + valueLength;
+            }
+        }
+        int length = position - start - RECORD_HEADER_SIZE;
+        ByteBuffer record = buffer.duplicate();
+        record.position(start + RECORD_HEADER_SIZE).limit(position);
+        crc.reset();
+        crc.update(record);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.position(position);
+        recordStart = start;
+        appended += position - start;
+        return appended;
+    }
+
+    /**
+     * Takes back the record just appended, for an update the tree refused.
+     */
+    private void discardRecord() {
+        appended -= buffer.position() - recordStart;
+        buffer.position(recordStart);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Waits for the record ending at <tt>position</tt> to be forced if the
+     * policy asks for it, and compacts if the log has outgrown the
+     * threshold.
+     */
+    private void afterAppend(long position) {
+        try {
+            if(policy == SyncPolicy.ALWAYS) {
+                sync(position);
+            }
+            if(position - compacted > compactionThreshold) {
+                compact(false);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the log up to at least <tt>position</tt>. Only one thread
+     * forces at a time; each takes everything appended before it started,
+     * so the threads that waited for it usually find their records already
+     * on disk.
+     */
+    private void sync(long position) throws IOException {
+        if(synced >= position) {
+            return;
+        }
+        synchronized(syncLock) {
+            if(synced >= position) {
+                return;
+            }
+            long target;
+            synchronized(lock) {
+                if(closed) {
+                    throw new IllegalStateException("Closed");
+                }
+                flushBuffer();
+                target = appended;
+            }
+            // writers keep appending to the buffer meanwhile
+            log.force(false);
+            synced = target;
+            syncs++;
+        }
+    }
+
+    /**
+     * Throws if a background sync has failed, since the records it was
+     * forcing may be lost.
+     */
+    private void checkSyncFailure() throws IOException {
+        IOException failure = syncFailure;
+        if(failure != null) {
+            throw new IOException("Background sync failed", failure);
+        }
+    }
+
+    /**
+     * Forces every update made so far to disk, whatever the policy.
+     */
+    public void flush() throws IOException {
+        checkSyncFailure();
+        long position;
+        synchronized(lock) {
+            position = appended;
+        }
+        sync(position);
+    }
+
+    /**
+     * Writes a checkpoint of the whole tree and empties the log. This
+     * happens by itself whenever the log grows past the compaction
+     * threshold.
+     */
+    public void checkpoint() throws IOException {
+        compact(true);
+    }
+
+    private void compact(boolean always) throws IOException {
+        synchronized(syncLock) {
+            synchronized(lock) {
+                if(closed) {
+                    throw new IllegalStateException("Closed");
+                }
+                if(!always && appended - compacted <= compactionThreshold) {
+                    // another writer got here first
+                    return;
+                }
+                // written aside and renamed over the old checkpoint
+                tree.writeSnapshot(checkpointPath, keyCodec, valueCodec);
+                syncDirectory();
+                // the checkpoint holds everything logged, buffered or not
+                buffer.clear();
+                log.truncate(HEADER_SIZE);
+                log.position(HEADER_SIZE);
+                log.force(true);
+                compacted = appended;
+                synced = appended;
+            }
+        }
+    }
+
+    /**
+     * Makes the rename of the checkpoint durable, where the platform allows
+     * a directory to be forced.
+     */
+    private void syncDirectory() {
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch(IOException e) {
+            // not supported here; the rename is as durable as the platform makes it
+        }
+    }
+
+    /**
+     * Returns the number of times the log has been forced on behalf of
+     * writers, which under {@link SyncPolicy#ALWAYS} is at most the number of
+     * updates and usually far fewer when many threads write.
+     */
+    public long getSyncCount() {
+        synchronized(syncLock) {
+            return syncs;
+        }
+    }
+
+    /**
+     * Returns the bytes of records in the log since the last checkpoint.
+     */
+    public long getLogSize() {
+        synchronized(lock) {
+            return appended - compacted;
+        }
+    }
+
+    /**
+     * Forces any outstanding records and closes the log. The checkpoint is
+     * left as it is, so the next {@link #open} replays the log.
+     *
+     * @throws IOException if the log cannot be forced, or a background sync
+     *                     failed earlier
+     */
+    @Override
+    public void close() throws IOException {
+        if(syncer != null) {
+            // not interrupted, which would close the log under a running force
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized(syncLock) {
+            synchronized(lock) {
+                if(closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    flushBuffer();
+                    log.force(false);
+                } finally {
+                    log.close();
+                }
+                checkSyncFailure();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.rchome.bst;
+
+import java.util.*;
+
+/**
+ * A {@link FrozenMap} for <tt>long</tt> keys, held in a primitive array so
+ * that {@link #get(long)} and {@link #containsKey(long)} neither box nor
+ * call a comparator. The {@link Map} methods work too, boxing as they go.
+ */
+public final class FrozenLongMap<V> extends AbstractMap<Long, V> {
+
+    // Eytzinger order, index 0 unused
+    private final long[] keys;
+    private final Object[] values;
+    private final int size;
+
+    private FrozenLongMap(Iterator<? extends Entry<Long, ? extends V>> entries, int size) {
+        if(size >= 1 << 30) {
+            throw new IllegalArgumentException("Too many entries to freeze: " + size);
+        }
+        this.size = size;
+        keys = new long[size + 1];
+        values = new Object[size + 1];
+        fill(entries, 1);
+    }
+
+    /**
+     * Copies <tt>map</tt>, which must use the natural ordering of its keys.
+     */
+    public static <V> FrozenLongMap<V> of(SortedMap<Long, ? extends V> map) {
+        if(map.comparator() != null) {
+            throw new IllegalArgumentException("Keys must be in their natural order");
+        }
+        return new FrozenLongMap<>(map.entrySet().iterator(), map.size());
+    }
+
+    private void fill(Iterator<? extends Entry<Long, ? extends V>> entries, int index) {
+        if(index <= size) {
+            fill(entries, 2 * index);
+            Entry<Long, ? extends V> entry = entries.next();
+            keys[index] = entry.getKey();
+            values[index] = entry.getValue();
+            fill(entries, 2 * index + 1);
+        }
+    }
+
+    /**
+     * Returns the index of <tt>key</tt>, or 0 if it is absent. See
+     * {@link FrozenMap} for how the search works.
+     */
+    private int indexOf(long key) {
+        int index = 1;
+        while(index <= size) {
+            index = (index << 1) | (keys[index] < key ? 1 : 0);
+        }
+        index >>>= Integer.numberOfTrailingZeros(~index) + 1;
+        return index != 0 && keys[index] == key ? index : 0;
+    }
+
+    public V get(long key) {
+        return (V) values[indexOf(key)];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) != 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long ? get((long) (Long) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey((long) (Long) key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return new AbstractSet<Entry<Long, V>>() {
+            @Override
+            public Iterator<Entry<Long, V>> iterator() {
+                return new Iterator<Entry<Long, V>>() {
+                    private int next = first();
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != 0;
+                    }
+
+                    @Override
+                    public Entry<Long, V> next() {
+                        if(next == 0) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next;
+                        next = successor(index);
+                        return new SimpleImmutableEntry<>(keys[index], (V) values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int first() {
+        if(size == 0) {
+            return 0;
+        }
+        int index = 1;
+        while(2 * index <= size) {
+            index *= 2;
+        }
+        return index;
+    }
+
+    private int successor(int index) {
+        if(2 * index + 1 <= size) {
+            index = 2 * index + 1;
+            while(2 * index <= size) {
+                index *= 2;
+            }
+            return index;
+        }
+        while((index & 1) == 1) {
+            index >>>= 1;
+        }
+        return index >>> 1;
+    }
+}
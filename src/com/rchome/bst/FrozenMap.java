@@ -0,0 +1,342 @@
+package com.rchome.bst;
+
+import java.util.*;
+
+/**
+ * An immutable sorted map made by {@link BinarySearchTree#freeze()}. The
+ * entries sit in two arrays in Eytzinger order: the root of a perfectly
+ * balanced tree at index 1 and the children of index <tt>i</tt> at
+ * <tt>2i</tt> and <tt>2i + 1</tt>, so a search walks down the array
+ * without pointers. The top levels of every search share the first few
+ * cache lines, and the loop picks the next index arithmetically instead of
+ * branching on the comparison.
+ * <p/>
+ * Views returned by {@link #subMap}, {@link #headMap} and {@link #tailMap}
+ * are immutable too. Every mutator throws {@link UnsupportedOperationException}.
+ */
+public final class FrozenMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    // index 0 is unused
+    private final Object[] keys;
+    private final Object[] values;
+    private final int size;
+    private transient Set<Entry<K, V>> entrySet;
+
+    FrozenMap(Comparator<? super K> comparator, Iterator<? extends Entry<K, V>> entries, int size) {
+        if(size >= 1 << 30) {
+            // indices are doubled while searching and must not overflow
+            throw new IllegalArgumentException("Too many entries to freeze: " + size);
+        }
+        this.comparator = comparator;
+        this.size = size;
+        keys = new Object[size + 1];
+        values = new Object[size + 1];
+        fill(entries, 1);
+    }
+
+    /**
+     * Stores entries from <tt>entries</tt> in the subtree rooted at
+     * <tt>index</tt>, in order: left subtree, <tt>index</tt>, right subtree.
+     */
+    private void fill(Iterator<? extends Entry<K, V>> entries, int index) {
+        if(index <= size) {
+            fill(entries, 2 * index);
+            Entry<K, V> entry = entries.next();
+            keys[index] = entry.getKey();
+            values[index] = entry.getValue();
+            fill(entries, 2 * index + 1);
+        }
+    }
+
+    private int compare(Object key1, Object key2) {
+        if(comparator == null) {
+            return ((Comparable<Object>) key1).compareTo(key2);
+        }
+        return comparator.compare((K) key1, (K) key2);
+    }
+
+    /**
+     * Returns the index of the least key greater than or equal to
+     * <tt>key</tt>, or 0 if there is none. The search always runs to the
+     * bottom of the tree, appending one bit per level to the index, and then
+     * strips the trailing right turns and the final left turn to recover the
+     * last node it went left at.
+     */
+    private int ceiling(Object key) {
+        int index = 1;
+        while(index <= size) {
+            index = (index << 1) | (compare(keys[index], key) < 0 ? 1 : 0);
+        }
+        return index >>> (Integer.numberOfTrailingZeros(~index) + 1);
+    }
+
+    private int first() {
+        if(size == 0) {
+            return 0;
+        }
+        int index = 1;
+        while(2 * index <= size) {
+            index *= 2;
+        }
+        return index;
+    }
+
+    private int last() {
+        if(size == 0) {
+            return 0;
+        }
+        int index = 1;
+        while(2 * index + 1 <= size) {
+            index = 2 * index + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index following <tt>index</tt> in key order, or 0.
+     */
+    private int successor(int index) {
+        if(2 * index + 1 <= size) {
+            index = 2 * index + 1;
+            while(2 * index <= size) {
+                index *= 2;
+            }
+            return index;
+        }
+        while((index & 1) == 1) {
+            index >>>= 1;
+        }
+        return index >>> 1;
+    }
+
+    /**
+     * Returns the index preceding <tt>index</tt> in key order, or 0.
+     */
+    private int predecessor(int index) {
+        if(2 * index <= size) {
+            index *= 2;
+            while(2 * index + 1 <= size) {
+                index = 2 * index + 1;
+            }
+            return index;
+        }
+        while((index & 1) == 0) {
+            index >>>= 1;
+        }
+        return index >>> 1;
+    }
+
+    private int indexOf(Object key) {
+        int index = ceiling(key);
+        return index != 0 && compare(keys[index], key) == 0 ? index : 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        return (V) values[indexOf(key)];
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return key(first());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(last());
+    }
+
+    private K key(int index) {
+        if(index == 0) {
+            throw new NoSuchElementException();
+        }
+        return (K) keys[index];
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if(compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new Range(fromKey, toKey, false, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        compare(toKey, toKey); // type (and possibly null) check
+        return new Range(null, toKey, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        compare(fromKey, fromKey);
+        return new Range(fromKey, null, false, true);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new EntrySet(first(), 0);
+        }
+        return entrySet;
+    }
+
+    /**
+     * The entries from index <tt>from</tt> up to, but excluding, index
+     * <tt>to</tt> in key order, where 0 stands for the end of the map.
+     */
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        private final int from, to;
+
+        EntrySet(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new Iterator<Entry<K, V>>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next != to;
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    if(next == to) {
+                        throw new NoSuchElementException();
+                    }
+                    int index = next;
+                    next = successor(index);
+                    return new SimpleImmutableEntry<>((K) keys[index], (V) values[index]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if(from == first() && to == 0) {
+                return size;
+            }
+            int count = 0;
+            for(int index = from; index != to; index = successor(index)) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A view of the keys from <tt>lo</tt> (inclusive) to <tt>hi</tt>
+     * (exclusive), either of which may be unbounded.
+     */
+    private class Range extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final K lo, hi;
+        private final boolean fromStart, toEnd;
+        private final EntrySet entries;
+
+        Range(K lo, K hi, boolean fromStart, boolean toEnd) {
+            this.lo = lo;
+            this.hi = hi;
+            this.fromStart = fromStart;
+            this.toEnd = toEnd;
+            entries = new EntrySet(fromStart ? first() : ceiling(lo), toEnd ? 0 : ceiling(hi));
+        }
+
+        private boolean inRange(Object key) {
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) < 0);
+        }
+
+        /**
+         * Returns whether <tt>key</tt> can bound a view of this range: it
+         * must lie inside, or be the exclusive upper bound itself.
+         */
+        private boolean inClosedRange(K key) {
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && FrozenMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? FrozenMap.this.get(key) : null;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            if(entries.from == entries.to) {
+                throw new NoSuchElementException();
+            }
+            return (K) keys[entries.from];
+        }
+
+        @Override
+        public K lastKey() {
+            if(entries.from == entries.to) {
+                throw new NoSuchElementException();
+            }
+            return (K) keys[entries.to == 0 ? last() : predecessor(entries.to)];
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if(compare(fromKey, toKey) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            if(!inClosedRange(fromKey)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(!inClosedRange(toKey)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new Range(fromKey, toKey, false, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            if(!inClosedRange(toKey)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new Range(lo, toKey, fromStart, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if(!inClosedRange(fromKey)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return new Range(fromKey, hi, false, toEnd);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return entries;
+        }
+    }
+}
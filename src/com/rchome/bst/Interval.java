@@ -0,0 +1,67 @@
+package com.rchome.bst;
+
+/**
+ * A closed interval <tt>[lo, hi]</tt>, the key type of {@link IntervalBST}.
+ * Intervals are ordered by their lower endpoint, then by their upper one,
+ * so several intervals can start at the same point.
+ */
+public final class Interval<T extends Comparable<? super T>> implements Comparable<Interval<T>> {
+    private final T lo, hi;
+
+    /**
+     * @throws IllegalArgumentException if <tt>lo</tt> is greater than <tt>hi</tt>
+     * @throws NullPointerException     if either endpoint is null
+     */
+    public Interval(T lo, T hi) {
+        if(lo.compareTo(hi) > 0) {
+            throw new IllegalArgumentException("Empty interval: [" + lo + ", " + hi + "]");
+        }
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    public T getLo() {
+        return lo;
+    }
+
+    public T getHi() {
+        return hi;
+    }
+
+    /**
+     * Returns whether this interval shares at least one point with
+     * <tt>[lo, hi]</tt>.
+     */
+    public boolean overlaps(T lo, T hi) {
+        return this.lo.compareTo(hi) <= 0 && this.hi.compareTo(lo) >= 0;
+    }
+
+    public boolean contains(T point) {
+        return overlaps(point, point);
+    }
+
+    @Override
+    public int compareTo(Interval<T> other) {
+        int compare = lo.compareTo(other.lo);
+        return compare != 0 ? compare : hi.compareTo(other.hi);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof Interval)) {
+            return false;
+        }
+        Interval<?> other = (Interval<?>) o;
+        return lo.equals(other.lo) && hi.equals(other.hi);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * lo.hashCode() + hi.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + lo + ", " + hi + "]";
+    }
+}
@@ -0,0 +1,195 @@
+package com.rchome.bst;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A red-black tree keyed by {@link Interval}s that can find every interval
+ * overlapping a query range without looking at the rest. Each node also
+ * records the greatest upper endpoint in its subtree, kept up to date by
+ * {@link #updateNode} wherever sizes are, so a search can skip any subtree
+ * whose intervals all end before the query starts.
+ */
+public class IntervalBST<T extends Comparable<? super T>, V> extends RedBlackBST<Interval<T>, V> {
+
+    private class IntervalNode extends RedBlackNode {
+        // the greatest upper endpoint in this subtree
+        T max;
+
+        IntervalNode(Interval<T> key, V value) {
+            super(key, value);
+            max = key.getHi();
+        }
+    }
+
+    public IntervalBST() {}
+
+    @Override
+    protected BinarySearchTree<Interval<T>, V> newTree() {
+        return new IntervalBST<>();
+    }
+
+    @Override
+    protected Node createNode(Interval<T> key, V value) {
+        return new IntervalNode(key, value);
+    }
+
+    @Override
+    protected boolean supportsThreading() {
+        return false;
+    }
+
+    /**
+     * Maps the interval <tt>[lo, hi]</tt> to <tt>value</tt>.
+     */
+    public V put(T lo, T hi, V value) {
+        return put(new Interval<>(lo, hi), value);
+    }
+
+    @Override
+    protected void updateNode(Node node) {
+        super.updateNode(node);
+        T max = node.getKey().getHi();
+        if(node.left != null && max(node.left).compareTo(max) > 0) {
+            max = max(node.left);
+        }
+        if(node.right != null && max(node.right).compareTo(max) > 0) {
+            max = max(node.right);
+        }
+        ((IntervalNode) node).max = max;
+    }
+
+    /**
+     * Swaps the maxima with the positions, as the sizes are: each position
+     * still holds the same intervals until <tt>node</tt> is unlinked.
+     */
+    @Override
+    protected void swapWithSuccessor(Node node, Node successor) {
+        super.swapWithSuccessor(node, successor);
+        IntervalNode a = (IntervalNode) node, b = (IntervalNode) successor;
+        T max = a.max;
+        a.max = b.max;
+        b.max = max;
+    }
+
+    private T max(Node node) {
+        return ((IntervalNode) node).max;
+    }
+
+    /**
+     * Returns the entries whose intervals share at least one point with
+     * <tt>[lo, hi]</tt>, in key order. The iterator finds each result as it
+     * is asked for, in time proportional to the height of the tree, so
+     * reporting <tt>k</tt> of them takes <tt>O((k + 1) log n)</tt> however
+     * many intervals do not overlap. It supports <tt>remove</tt> and fails
+     * fast if the tree is otherwise modified.
+     *
+     * @throws IllegalArgumentException if <tt>lo</tt> is greater than <tt>hi</tt>
+     * @throws NullPointerException     if either bound is null
+     */
+    public Iterator<Entry<Interval<T>, V>> overlapping(T lo, T hi) {
+        if(lo.compareTo(hi) > 0) {
+            throw new IllegalArgumentException("lo > hi");
+        }
+        return new OverlapIterator(lo, hi);
+    }
+
+    /**
+     * Returns the entries whose intervals contain <tt>point</tt>, in key
+     * order. See {@link #overlapping}.
+     */
+    public Iterator<Entry<Interval<T>, V>> stabbing(T point) {
+        return overlapping(point, point);
+    }
+
+    private class OverlapIterator implements Iterator<Entry<Interval<T>, V>> {
+        private final T lo, hi;
+        private Node next, last;
+        private int expectedModCount = modCount;
+
+        OverlapIterator(T lo, T hi) {
+            this.lo = lo;
+            this.hi = hi;
+            next = first(root);
+        }
+
+        /**
+         * Returns the least node in the subtree rooted at <tt>node</tt> that
+         * overlaps the query, or null. When the left subtree reaches the
+         * query it must hold the answer if there is one: an interval there
+         * that ends late enough but starts past <tt>hi</tt> means every
+         * later key starts past <tt>hi</tt> too.
+         */
+        private Node first(Node node) {
+            while(node != null && max(node).compareTo(lo) >= 0) {
+                Interval<T> key = node.getKey();
+                if(node.left != null && max(node.left).compareTo(lo) >= 0) {
+                    node = node.left;
+                }
+                else if(key.getLo().compareTo(hi) > 0) {
+                    return null;
+                }
+                else if(key.getHi().compareTo(lo) >= 0) {
+                    return node;
+                }
+                else {
+                    node = node.right;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the next node after <tt>node</tt> in key order that
+         * overlaps the query, or null: the first one in its right subtree,
+         * or else the nearest ancestor it is a left descendant of, or the
+         * first one in that ancestor's right subtree, and so on upwards.
+         */
+        private Node after(Node node) {
+            Node found = first(node.right);
+            while(found == null) {
+                while(node.isRightChild()) {
+                    node = node.parent;
+                }
+                node = node.parent;
+                if(node == null || node.getKey().getLo().compareTo(hi) > 0) {
+                    return null;
+                }
+                found = node.getKey().getHi().compareTo(lo) >= 0 ? node : first(node.right);
+            }
+            return found;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<Interval<T>, V> next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            last = next;
+            next = after(next);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if(last == null) {
+                throw new IllegalStateException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            deleteNode(last);
+            expectedModCount = modCount;
+            last = null;
+        }
+    }
+}
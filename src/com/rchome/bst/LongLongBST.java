@@ -0,0 +1,432 @@
+package com.rchome.bst;
+
+import java.util.*;
+
+/**
+ * A binary search tree from <tt>long</tt> to <tt>long</tt> that follows the
+ * same insertion and removal rules as {@link DefaultBST}, but keeps its nodes
+ * in parallel primitive arrays instead of {@link BinarySearchTree.Node}
+ * objects. A node is an index into those arrays, and slots freed by removals
+ * are chained through <tt>left</tt> into a free list and reused by later
+ * insertions, so sustained inserts and removes do not allocate once the
+ * arrays have grown.
+ * <p/>
+ * The primitive <tt>get</tt>, <tt>put</tt> and <tt>remove</tt> methods return
+ * {@link #getNoEntryValue()} when the key is absent. The {@link Map} methods
+ * remain available for code that needs the boxed view.
+ */
+public class LongLongBST extends AbstractMap<Long, Long> {
+
+    private static final int NIL = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int[] left, right, parent;
+    private int root = NIL;
+    private int freeList = NIL;
+    private int used;
+    private int size;
+    private int modCount;
+    private final long noEntryValue;
+
+    public LongLongBST() {
+        this(DEFAULT_CAPACITY, 0);
+    }
+
+    public LongLongBST(int initialCapacity) {
+        this(initialCapacity, 0);
+    }
+
+    public LongLongBST(int initialCapacity, long noEntryValue) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        }
+        this.noEntryValue = noEntryValue;
+        keys = new long[initialCapacity];
+        values = new long[initialCapacity];
+        left = new int[initialCapacity];
+        right = new int[initialCapacity];
+        parent = new int[initialCapacity];
+    }
+
+    /**
+     * Returns the value the primitive accessors return for absent keys.
+     */
+    public long getNoEntryValue() {
+        return noEntryValue;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    public int getHeight() {
+        if(root == NIL) {
+            return 0;
+        }
+        int[] frontier = new int[size];
+        int[] heights = new int[size];
+        int head = 0, tail = 0;
+        frontier[tail] = root;
+        heights[tail++] = 0;
+        int maxHeight = 0;
+        while(head < tail) {
+            int current = frontier[head];
+            int height = heights[head++];
+            if(height > maxHeight) {
+                maxHeight = height;
+            }
+            if(left[current] != NIL) {
+                frontier[tail] = left[current];
+                heights[tail++] = height + 1;
+            }
+            if(right[current] != NIL) {
+                frontier[tail] = right[current];
+                heights[tail++] = height + 1;
+            }
+        }
+        return maxHeight;
+    }
+
+    private int getNode(long key) {
+        int current = root;
+        while(current != NIL) {
+            long currentKey = keys[current];
+            if(key < currentKey) {
+                current = left[current];
+            }
+            else if(key > currentKey) {
+                current = right[current];
+            }
+            else {
+                return current;
+            }
+        }
+        return NIL;
+    }
+
+    public boolean containsKey(long key) {
+        return getNode(key) != NIL;
+    }
+
+    public long get(long key) {
+        int node = getNode(key);
+        return node == NIL ? noEntryValue : values[node];
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        int node = getNode(key);
+        return node == NIL ? defaultValue : values[node];
+    }
+
+    /**
+     * Associates <tt>value</tt> with <tt>key</tt>, returning the previous
+     * value or {@link #getNoEntryValue()} if there was none. An existing
+     * mapping is updated in place.
+     */
+    public long put(long key, long value) {
+        if(root == NIL) {
+            root = allocate(key, value, NIL);
+            size++;
+            modCount++;
+            return noEntryValue;
+        }
+        int current = root;
+        while(true) {
+            long currentKey = keys[current];
+            if(key < currentKey) {
+                if(left[current] == NIL) {
+                    int node = allocate(key, value, current);
+                    left[current] = node;
+                    break;
+                }
+
+                current = left[current];
+            }
+            else if(key > currentKey) {
+                if(right[current] == NIL) {
+                    int node = allocate(key, value, current);
+                    right[current] = node;
+                    break;
+                }
+
+                current = right[current];
+            }
+            else {
+                long old = values[current];
+                values[current] = value;
+                return old;
+            }
+        }
+        size++;
+        modCount++;
+        return noEntryValue;
+    }
+
+    /**
+     * Removes the mapping for <tt>key</tt>, returning its value or
+     * {@link #getNoEntryValue()} if there was none.
+     */
+    public long remove(long key) {
+        int node = getNode(key);
+        if(node == NIL) {
+            return noEntryValue;
+        }
+        long value = values[node];
+        removeNode(node);
+        return value;
+    }
+
+    /**
+     * Removes <tt>node</tt> and returns the slot whose contents now live in
+     * <tt>node</tt>'s slot, i.e. <tt>node</tt> itself when it had two
+     * children and its successor was moved into it, or {@link #NIL}.
+     */
+    private int removeNode(int node) {
+        modCount++;
+        size--;
+        int moved = NIL;
+        if(left[node] != NIL && right[node] != NIL) {
+            int successor = right[node];
+            while(left[successor] != NIL) {
+                successor = left[successor];
+            }
+            keys[node] = keys[successor];
+            values[node] = values[successor];
+            moved = node;
+            node = successor;
+        }
+        int child = left[node] != NIL ? left[node] : right[node];
+        int nodeParent = parent[node];
+        if(nodeParent == NIL) {
+            root = child;
+        }
+        else if(left[nodeParent] == node) {
+            left[nodeParent] = child;
+        }
+        else {
+            right[nodeParent] = child;
+        }
+        if(child != NIL) {
+            parent[child] = nodeParent;
+        }
+        release(node);
+        return moved;
+    }
+
+    @Override
+    public void clear() {
+        root = NIL;
+        freeList = NIL;
+        used = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Calls <tt>action</tt> on every mapping in ascending key order without
+     * allocating.
+     */
+    public void forEachEntry(LongLongConsumer action) {
+        int expectedModCount = modCount;
+        for(int node = first(); node != NIL; node = successor(node)) {
+            action.accept(keys[node], values[node]);
+        }
+        if(expectedModCount != modCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    private int first() {
+        int node = root;
+        while(node != NIL && left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    private int successor(int node) {
+        if(right[node] == NIL) {
+            int up = parent[node];
+            while(up != NIL && right[up] == node) {
+                node = up;
+                up = parent[up];
+            }
+            return up;
+        }
+        node = right[node];
+        while(left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    private int allocate(long key, long value, int nodeParent) {
+        int node;
+        if(freeList != NIL) {
+            node = freeList;
+            freeList = left[node];
+        }
+        else {
+            if(used == keys.length) {
+                grow();
+            }
+            node = used++;
+        }
+        keys[node] = key;
+        values[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        parent[node] = nodeParent;
+        return node;
+    }
+
+    private void release(int node) {
+        left[node] = freeList;
+        right[node] = NIL;
+        parent[node] = NIL;
+        freeList = node;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, keys.length + (keys.length >> 1));
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey(((Long) key).longValue());
+    }
+
+    @Override
+    public Long get(Object key) {
+        if(!(key instanceof Long)) {
+            return null;
+        }
+        int node = getNode((Long) key);
+        return node == NIL ? null : values[node];
+    }
+
+    @Override
+    public Long put(Long key, Long value) {
+        if(key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int node = getNode(key);
+        if(node != NIL) {
+            long old = values[node];
+            values[node] = value;
+            return old;
+        }
+        put(key.longValue(), value.longValue());
+        return null;
+    }
+
+    @Override
+    public Long remove(Object key) {
+        if(!(key instanceof Long)) {
+            return null;
+        }
+        int node = getNode((Long) key);
+        if(node == NIL) {
+            return null;
+        }
+        long value = values[node];
+        removeNode(node);
+        return value;
+    }
+
+    @Override
+    public Set<Entry<Long, Long>> entrySet() {
+        return new EntrySet();
+    }
+
+    private class EntrySet extends AbstractSet<Entry<Long, Long>> {
+
+        @Override
+        public Iterator<Entry<Long, Long>> iterator() {
+            return new LongLongIterator();
+        }
+
+        @Override
+        public int size() {
+            return LongLongBST.this.size();
+        }
+    }
+
+    private class LongLongEntry extends SimpleEntry<Long, Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+
+        LongLongEntry(int node) {
+            super(keys[node], values[node]);
+            this.node = node;
+        }
+
+        @Override
+        public Long setValue(Long value) {
+            if(value == null) {
+                throw new NullPointerException();
+            }
+            values[node] = value;
+            return super.setValue(value);
+        }
+    }
+
+    private class LongLongIterator implements Iterator<Entry<Long, Long>> {
+
+        private int next, prev = NIL;
+        private int expectedModCount;
+
+        public LongLongIterator() {
+            expectedModCount = modCount;
+            next = first();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != NIL;
+        }
+
+        @Override
+        public Entry<Long, Long> next() {
+            if(next == NIL) {
+                throw new NoSuchElementException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            prev = next;
+            next = successor(next);
+            return new LongLongEntry(prev);
+        }
+
+        @Override
+        public void remove() {
+            if(prev == NIL) {
+                throw new IllegalStateException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            int moved = removeNode(prev);
+            if(moved != NIL) {
+                next = moved;
+            }
+            expectedModCount = modCount;
+            prev = NIL;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.rchome.bst;
+
+/**
+ * An operation that accepts a primitive <tt>long</tt> key and value, used to
+ * walk a {@link LongLongBST} without boxing.
+ */
+public interface LongLongConsumer {
+    void accept(long key, long value);
+}
@@ -0,0 +1,106 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
+
+/**
+ * A red-black tree that sums a <tt>long</tt> measure of its values over any
+ * range of keys in <tt>O(log n)</tt> time. Like {@link AggregateBST} with
+ * addition, but every node caches its subtree's sum as a primitive, so
+ * neither queries nor updates box. Sums wrap around on overflow, as
+ * <tt>long</tt> arithmetic does.
+ */
+public class LongSumBST<K, V> extends AggregatingBST<K, V> {
+
+    private final ToLongFunction<? super V> measure;
+
+    private class SumNode extends AggregateNode {
+        long sum;
+
+        SumNode(K key, V value) {
+            super(key, value);
+            sum = measure.applyAsLong(value);
+        }
+    }
+
+    /**
+     * Creates a tree that sums <tt>measure</tt> applied to each value.
+     */
+    public LongSumBST(ToLongFunction<? super V> measure) {
+        this(measure, null);
+    }
+
+    public LongSumBST(ToLongFunction<? super V> measure, Comparator<? super K> comparator) {
+        super(comparator);
+        if(measure == null) {
+            throw new NullPointerException();
+        }
+        this.measure = measure;
+    }
+
+    /**
+     * Creates a tree that sums its values, which must not be null.
+     */
+    public static <K> LongSumBST<K, Long> ofLongs() {
+        return new LongSumBST<>(Long::longValue);
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        return new LongSumBST<>(measure, comparator());
+    }
+
+    @Override
+    protected Node createNode(K key, V value) {
+        return new SumNode(key, value);
+    }
+
+    @Override
+    protected void updateNode(Node node) {
+        super.updateNode(node);
+        ((SumNode) node).sum = sumOf(node.left) + measure.applyAsLong(node.getValue()) + sumOf(node.right);
+    }
+
+    private long sumOf(Node node) {
+        return node == null ? 0 : ((SumNode) node).sum;
+    }
+
+    /**
+     * Returns the sum over every value in the tree.
+     */
+    public long sum() {
+        return sumOf(root);
+    }
+
+    /**
+     * Returns the sum over the values of the keys <tt>k</tt> with
+     * <tt>lo &lt;= k &lt; hi</tt>.
+     */
+    public long sum(K lo, K hi) {
+        return sum(lo, true, hi, false);
+    }
+
+    /**
+     * Returns the sum over the values of the keys between <tt>lo</tt> and
+     * <tt>hi</tt>, each end included or excluded as requested.
+     */
+    public long sum(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        SumAccumulator accumulator = new SumAccumulator();
+        addRange(accumulator, lo, loInclusive, hi, hiInclusive);
+        return accumulator.sum;
+    }
+
+    private class SumAccumulator extends Accumulator {
+        long sum;
+
+        @Override
+        void addNode(Node node) {
+            sum += measure.applyAsLong(node.getValue());
+        }
+
+        @Override
+        void addSubtree(Node node) {
+            sum += ((SumNode) node).sum;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package com.rchome.bst;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A binary search tree that follows the same insertion and removal rules as
+ * {@link DefaultBST}, but stores its nodes outside the Java heap. Every node
+ * is a fixed-size slot in a direct {@link ByteBuffer}:
+ * <pre>
+ *   0  left      int
+ *   4  right     int
+ *   8  parent    int
+ *  12  keyLength   int
+ *  16  valueLength int  (-1 for a null value)
+ *  20  key bytes   keyCodec.maxSize()
+ *  ..  value bytes valueCodec.maxSize()
+ * </pre>
+ * Slots are addressed by index and grouped into chunks of up to 256MB, so the
+ * garbage collector only ever sees the chunk buffers and this object however
+ * many entries the tree holds. Freed slots are chained through <tt>left</tt>
+ * into a free list and reused.
+ * <p/>
+ * Keys are ordered by their encoded bytes, compared unsigned from left to
+ * right, so the key codec must be order-preserving (see {@link ByteCodec}).
+ * Keys and values are decoded into fresh objects whenever they are read back.
+ * <p/>
+ * As with {@link TreeMap}, any number of threads may read a tree that is not
+ * being modified; writes must be synchronized externally.
+ */
+public class OffHeapBST<K, V> extends AbstractMap<K, V> {
+
+    private static final int NIL = -1;
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int PARENT = 8;
+    private static final int KEY_LENGTH = 12;
+    private static final int VALUE_LENGTH = 16;
+    private static final int KEY = 20;
+    private static final int INITIAL_SLOTS = 16;
+    private static final int MAX_CHUNK_SHIFT = 20;
+    private static final int MAX_CHUNK_BYTES = 1 << 28;
+
+    private final ByteCodec<K> keyCodec;
+    private final ByteCodec<V> valueCodec;
+    private final int valueOffset;
+    private final int slotSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    // the encoded key being searched for, per thread so that concurrent
+    // readers do not overwrite each other's
+    private final ThreadLocal<SearchKey> searchKeys;
+
+    private ByteBuffer[] chunks;
+    private int chunkCount;
+    private int capacity;
+    private int root = NIL;
+    private int freeList = NIL;
+    private int used;
+    private int size;
+    private int modCount;
+
+    public OffHeapBST(ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) {
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        valueOffset = KEY + keyCodec.maxSize();
+        slotSize = valueOffset + valueCodec.maxSize();
+        int shift = 31 - Integer.numberOfLeadingZeros(Math.max(1, MAX_CHUNK_BYTES / slotSize));
+        chunkShift = Math.min(MAX_CHUNK_SHIFT, shift);
+        chunkMask = (1 << chunkShift) - 1;
+        searchKeys = ThreadLocal.withInitial(() -> new SearchKey(keyCodec.maxSize()));
+        reset();
+    }
+
+    private void reset() {
+        chunks = new ByteBuffer[1];
+        capacity = Math.min(INITIAL_SLOTS, 1 << chunkShift);
+        chunks[0] = ByteBuffer.allocateDirect(capacity * slotSize);
+        chunkCount = 1;
+        root = NIL;
+        freeList = NIL;
+        used = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    public int getHeight() {
+        if(root == NIL) {
+            return 0;
+        }
+        int[] frontier = new int[size];
+        int[] heights = new int[size];
+        int head = 0, tail = 0;
+        frontier[tail] = root;
+        heights[tail++] = 0;
+        int maxHeight = 0;
+        while(head < tail) {
+            int current = frontier[head];
+            int height = heights[head++];
+            if(height > maxHeight) {
+                maxHeight = height;
+            }
+            if(getLink(current, LEFT) != NIL) {
+                frontier[tail] = getLink(current, LEFT);
+                heights[tail++] = height + 1;
+            }
+            if(getLink(current, RIGHT) != NIL) {
+                frontier[tail] = getLink(current, RIGHT);
+                heights[tail++] = height + 1;
+            }
+        }
+        return maxHeight;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(key) != NIL;
+    }
+
+    @Override
+    public V get(Object key) {
+        int node = getNode(key);
+        if(node == NIL) {
+            return null;
+        }
+        return readValue(node);
+    }
+
+    private int getNode(Object key) {
+        SearchKey search = searchKey((K) key);
+        int current = root;
+        while(current != NIL) {
+            int compare = compareSearchKey(search, current);
+            if(compare < 0) {
+                current = getLink(current, LEFT);
+            }
+            else if(compare > 0) {
+                current = getLink(current, RIGHT);
+            }
+            else {
+                return current;
+            }
+        }
+        return NIL;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        SearchKey search = searchKey(key);
+        if(root == NIL) {
+            root = allocate(search, value, NIL);
+            size++;
+            modCount++;
+            return null;
+        }
+        int current = root;
+        while(true) {
+            int compare = compareSearchKey(search, current);
+            if(compare < 0) {
+                if(getLink(current, LEFT) == NIL) {
+                    setLink(current, LEFT, allocate(search, value, current));
+                    break;
+                }
+
+                current = getLink(current, LEFT);
+            }
+            else if(compare > 0) {
+                if(getLink(current, RIGHT) == NIL) {
+                    setLink(current, RIGHT, allocate(search, value, current));
+                    break;
+                }
+
+                current = getLink(current, RIGHT);
+            }
+            else {
+                V old = readValue(current);
+                writeValue(current, value);
+                return old;
+            }
+        }
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int node = getNode(key);
+        if(node == NIL) {
+            return null;
+        }
+        V value = readValue(node);
+        removeNode(node);
+        return value;
+    }
+
+    /**
+     * Removes <tt>node</tt> and returns the slot whose contents now live in
+     * <tt>node</tt>'s slot, i.e. <tt>node</tt> itself when it had two
+     * children and its successor was moved into it, or {@link #NIL}.
+     */
+    private int removeNode(int node) {
+        modCount++;
+        size--;
+        int moved = NIL;
+        if(getLink(node, LEFT) != NIL && getLink(node, RIGHT) != NIL) {
+            int successor = getLink(node, RIGHT);
+            while(getLink(successor, LEFT) != NIL) {
+                successor = getLink(successor, LEFT);
+            }
+            copyContents(successor, node);
+            moved = node;
+            node = successor;
+        }
+        int child = getLink(node, LEFT) != NIL ? getLink(node, LEFT) : getLink(node, RIGHT);
+        int parent = getLink(node, PARENT);
+        if(parent == NIL) {
+            root = child;
+        }
+        else if(getLink(parent, LEFT) == node) {
+            setLink(parent, LEFT, child);
+        }
+        else {
+            setLink(parent, RIGHT, child);
+        }
+        if(child != NIL) {
+            setLink(child, PARENT, parent);
+        }
+        setLink(node, LEFT, freeList);
+        freeList = node;
+        return moved;
+    }
+
+    /**
+     * Drops every entry and releases all but a small first chunk.
+     */
+    @Override
+    public void clear() {
+        reset();
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private static final class SearchKey {
+        final ByteBuffer bytes;
+        int length;
+
+        SearchKey(int maxSize) {
+            bytes = ByteBuffer.allocateDirect(maxSize);
+        }
+    }
+
+    /**
+     * Encodes <tt>key</tt> into the calling thread's search key.
+     */
+    private SearchKey searchKey(K key) {
+        SearchKey search = searchKeys.get();
+        search.length = keyCodec.encode(key, search.bytes, 0);
+        return search;
+    }
+
+    /**
+     * Compares the encoded search key with the key stored in <tt>node</tt>,
+     * eight bytes at a time while both have that many left.
+     */
+    private int compareSearchKey(SearchKey search, int node) {
+        ByteBuffer searchKey = search.bytes;
+        int searchKeyLength = search.length;
+        ByteBuffer chunk = chunk(node);
+        int base = offset(node);
+        int length = chunk.getInt(base + KEY_LENGTH);
+        int common = Math.min(searchKeyLength, length);
+        base += KEY;
+        int i = 0;
+        for(; i + Long.BYTES <= common; i += Long.BYTES) {
+            long a = searchKey.getLong(i);
+            long b = chunk.getLong(base + i);
+            if(a != b) {
+                return Long.compareUnsigned(a, b);
+            }
+        }
+        for(; i < common; i++) {
+            int a = searchKey.get(i) & 0xff;
+            int b = chunk.get(base + i) & 0xff;
+            if(a != b) {
+                return a - b;
+            }
+        }
+        return searchKeyLength - length;
+    }
+
+    private K readKey(int node) {
+        ByteBuffer chunk = chunk(node);
+        int base = offset(node);
+        return keyCodec.decode(chunk, base + KEY, chunk.getInt(base + KEY_LENGTH));
+    }
+
+    private V readValue(int node) {
+        ByteBuffer chunk = chunk(node);
+        int base = offset(node);
+        int length = chunk.getInt(base + VALUE_LENGTH);
+        return length < 0 ? null : valueCodec.decode(chunk, base + valueOffset, length);
+    }
+
+    private void writeValue(int node, V value) {
+        ByteBuffer chunk = chunk(node);
+        int base = offset(node);
+        int length = value == null ? -1 : valueCodec.encode(value, chunk, base + valueOffset);
+        chunk.putInt(base + VALUE_LENGTH, length);
+    }
+
+    /**
+     * Copies the key and value of slot <tt>from</tt> into slot <tt>to</tt>.
+     */
+    private void copyContents(int from, int to) {
+        ByteBuffer source = chunk(from);
+        ByteBuffer target = chunk(to);
+        int sourceBase = offset(from);
+        int targetBase = offset(to);
+        for(int i = KEY_LENGTH; i < slotSize; i++) {
+            target.put(targetBase + i, source.get(sourceBase + i));
+        }
+    }
+
+    private int getLink(int node, int field) {
+        return chunk(node).getInt(offset(node) + field);
+    }
+
+    private void setLink(int node, int field, int link) {
+        chunk(node).putInt(offset(node) + field, link);
+    }
+
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> chunkShift];
+    }
+
+    private int offset(int node) {
+        return (node & chunkMask) * slotSize;
+    }
+
+    /**
+     * Takes a slot from the free list, or the next unused one, and fills it
+     * with the search key, <tt>value</tt> and <tt>parent</tt>. The slot goes
+     * back to the free list if the value cannot be encoded.
+     */
+    private int allocate(SearchKey search, V value, int parent) {
+        int node;
+        if(freeList != NIL) {
+            node = freeList;
+            freeList = getLink(node, LEFT);
+        }
+        else {
+            if(used == capacity) {
+                grow();
+            }
+            node = used++;
+        }
+        ByteBuffer chunk = chunk(node);
+        int base = offset(node);
+        chunk.putInt(base + LEFT, NIL);
+        chunk.putInt(base + RIGHT, NIL);
+        chunk.putInt(base + PARENT, parent);
+        chunk.putInt(base + KEY_LENGTH, search.length);
+        for(int i = 0; i < search.length; i++) {
+            chunk.put(base + KEY + i, search.bytes.get(i));
+        }
+        try {
+            writeValue(node, value);
+        } catch(RuntimeException e) {
+            setLink(node, LEFT, freeList);
+            freeList = node;
+            throw e;
+        }
+        return node;
+    }
+
+    /**
+     * Doubles the first chunk until it reaches full size, then appends
+     * full-size chunks.
+     */
+    private void grow() {
+        int slotsPerChunk = 1 << chunkShift;
+        if(capacity < slotsPerChunk) {
+            int slots = Math.min(slotsPerChunk, capacity * 2);
+            ByteBuffer old = chunks[0].duplicate();
+            old.clear();
+            ByteBuffer chunk = ByteBuffer.allocateDirect(slots * slotSize);
+            chunk.put(old);
+            chunks[0] = chunk;
+            capacity = slots;
+            return;
+        }
+        if(chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(slotsPerChunk * slotSize);
+        capacity += slotsPerChunk;
+    }
+
+    private int first() {
+        int node = root;
+        while(node != NIL && getLink(node, LEFT) != NIL) {
+            node = getLink(node, LEFT);
+        }
+        return node;
+    }
+
+    private int successor(int node) {
+        if(getLink(node, RIGHT) == NIL) {
+            int up = getLink(node, PARENT);
+            while(up != NIL && getLink(up, RIGHT) == node) {
+                node = up;
+                up = getLink(up, PARENT);
+            }
+            return up;
+        }
+        node = getLink(node, RIGHT);
+        while(getLink(node, LEFT) != NIL) {
+            node = getLink(node, LEFT);
+        }
+        return node;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new OffHeapIterator();
+        }
+
+        @Override
+        public int size() {
+            return OffHeapBST.this.size();
+        }
+    }
+
+    private class OffHeapEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+
+        OffHeapEntry(int node) {
+            super(readKey(node), readValue(node));
+            this.node = node;
+        }
+
+        @Override
+        public V setValue(V value) {
+            writeValue(node, value);
+            return super.setValue(value);
+        }
+    }
+
+    private class OffHeapIterator implements Iterator<Entry<K, V>> {
+
+        private int next, prev = NIL;
+        private int expectedModCount;
+
+        public OffHeapIterator() {
+            expectedModCount = modCount;
+            next = first();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != NIL;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if(next == NIL) {
+                throw new NoSuchElementException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            prev = next;
+            next = successor(next);
+            return new OffHeapEntry(prev);
+        }
+
+        @Override
+        public void remove() {
+            if(prev == NIL) {
+                throw new IllegalStateException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            int moved = removeNode(prev);
+            if(moved != NIL) {
+                next = moved;
+            }
+            expectedModCount = modCount;
+            prev = NIL;
+        }
+    }
+}
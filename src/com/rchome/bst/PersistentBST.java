@@ -0,0 +1,565 @@
+package com.rchome.bst;
+
+import java.util.*;
+
+/**
+ * A sorted map whose tree is never changed in place. Every {@link #put} or
+ * {@link #remove} copies just the nodes on the search path, rebalancing them
+ * AVL-style on the way back up, and shares the rest of the tree with the
+ * previous version, so an update costs <tt>O(log n)</tt> time and space.
+ * <p/>
+ * {@link #snapshot()} hands out the current version in constant time as an
+ * immutable {@link SortedMap}. Snapshots can be read and iterated from any
+ * thread while this map keeps changing, without locking and without
+ * {@link ConcurrentModificationException}, and a version is garbage-collected
+ * once no snapshot refers to it any more. Updates to the map itself must
+ * come from one thread at a time. Its own iterators also walk the version
+ * that was current when they were created.
+ */
+public class PersistentBST<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private static final class Node<K, V> implements Entry<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left, right;
+        // number of nodes and height (in nodes) of the subtree rooted here
+        final int size, height;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+            this.height = Math.max(heightOf(left), heightOf(right)) + 1;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private final Comparator<? super K> comparator;
+    // the current version; volatile so that snapshot() may be called from any thread
+    private volatile Node<K, V> root;
+
+    public PersistentBST() {
+        this(null);
+    }
+
+    public PersistentBST(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the current contents as an immutable sorted map, in constant
+     * time. Later updates to this map do not show through it.
+     */
+    public SortedMap<K, V> snapshot() {
+        return new View(root, false, true, null, true, null);
+    }
+
+    private static int sizeOf(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int heightOf(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private int compare(K key1, K key2) {
+        if(comparator == null) {
+            return ((Comparable<? super K>) key1).compareTo(key2);
+        }
+        return comparator.compare(key1, key2);
+    }
+
+    private Node<K, V> getNode(Node<K, V> node, Object key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        while(node != null) {
+            int compare = compare((K) key, node.key);
+            if(compare == 0) {
+                return node;
+            }
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(root, key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = getNode(root, key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> current = root;
+        Node<K, V> old = getNode(current, key);
+        root = insert(current, key, value);
+        return old == null ? null : old.value;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> current = root;
+        Node<K, V> old = getNode(current, key);
+        if(old == null) {
+            return null;
+        }
+        root = delete(current, old.key);
+        return old.value;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if(node == null) {
+            return new Node<>(key, value, null, null);
+        }
+        int compare = compare(key, node.key);
+        if(compare < 0) {
+            return balance(node.key, node.value, insert(node.left, key, value), node.right);
+        }
+        if(compare > 0) {
+            return balance(node.key, node.value, node.left, insert(node.right, key, value));
+        }
+        return new Node<>(key, value, node.left, node.right);
+    }
+
+    private Node<K, V> delete(Node<K, V> node, K key) {
+        int compare = compare(key, node.key);
+        if(compare < 0) {
+            return balance(node.key, node.value, delete(node.left, key), node.right);
+        }
+        if(compare > 0) {
+            return balance(node.key, node.value, node.left, delete(node.right, key));
+        }
+        if(node.left == null) {
+            return node.right;
+        }
+        if(node.right == null) {
+            return node.left;
+        }
+        Node<K, V> successor = node.right;
+        while(successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, deleteFirst(node.right));
+    }
+
+    private Node<K, V> deleteFirst(Node<K, V> node) {
+        if(node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, deleteFirst(node.left), node.right);
+    }
+
+    /**
+     * Builds a node from subtrees whose heights differ by at most two,
+     * rotating once or twice if they differ by two.
+     */
+    private Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = heightOf(left), rightHeight = heightOf(right);
+        if(leftHeight > rightHeight + 1) {
+            if(heightOf(left.left) >= heightOf(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            Node<K, V> middle = left.right;
+            return new Node<>(middle.key, middle.value,
+                    new Node<>(left.key, left.value, left.left, middle.left),
+                    new Node<>(key, value, middle.right, right));
+        }
+        if(rightHeight > leftHeight + 1) {
+            if(heightOf(right.right) >= heightOf(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> middle = right.left;
+            return new Node<>(middle.key, middle.value,
+                    new Node<>(key, value, left, middle.left),
+                    new Node<>(right.key, right.value, middle.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    /**
+     * Returns the node with the least key at or above <tt>key</tt>.
+     */
+    private Node<K, V> ceiling(Node<K, V> node, K key) {
+        Node<K, V> best = null;
+        while(node != null) {
+            int compare = compare(key, node.key);
+            if(compare == 0) {
+                return node;
+            }
+            if(compare < 0) {
+                best = node;
+                node = node.left;
+            }
+            else {
+                node = node.right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the node with the greatest key below <tt>key</tt>.
+     */
+    private Node<K, V> lower(Node<K, V> node, K key) {
+        Node<K, V> best = null;
+        while(node != null) {
+            if(compare(key, node.key) > 0) {
+                best = node;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the number of keys below <tt>key</tt>.
+     */
+    private int rank(Node<K, V> node, K key) {
+        int rank = 0;
+        while(node != null) {
+            int compare = compare(key, node.key);
+            if(compare <= 0) {
+                node = node.left;
+            }
+            else {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new View(null, true, true, null, true, null).entrySet();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return new View(root, false, true, null, true, null).firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return new View(root, false, true, null, true, null).lastKey();
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return new View(null, true, false, fromKey, false, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new View(null, true, true, null, false, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new View(null, true, false, fromKey, true, null);
+    }
+
+    /**
+     * The keys from <tt>lo</tt> (inclusive) to <tt>hi</tt> (exclusive) of
+     * either a fixed version, for snapshots, or of whatever version is
+     * current, for the views of this map, which also write through to it.
+     */
+    private class View extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+        private final Node<K, V> version;
+        private final boolean live, fromStart, toEnd;
+        private final K lo, hi;
+
+        View(Node<K, V> version, boolean live, boolean fromStart, K lo, boolean toEnd, K hi) {
+            if((!fromStart && lo == null) || (!toEnd && hi == null)) {
+                throw new NullPointerException();
+            }
+            if(!fromStart && !toEnd && compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.version = version;
+            this.live = live;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.toEnd = toEnd;
+            this.hi = hi;
+        }
+
+        private Node<K, V> root() {
+            return live ? root : version;
+        }
+
+        private boolean inRange(Object key) {
+            return (fromStart || compare((K) key, lo) >= 0) && (toEnd || compare((K) key, hi) < 0);
+        }
+
+        private Node<K, V> lowest(Node<K, V> root) {
+            Node<K, V> node = root;
+            if(fromStart) {
+                while(node != null && node.left != null) {
+                    node = node.left;
+                }
+            }
+            else {
+                node = ceiling(root, lo);
+            }
+            return node == null || !inRange(node.key) ? null : node;
+        }
+
+        private Node<K, V> highest(Node<K, V> root) {
+            Node<K, V> node = root;
+            if(toEnd) {
+                while(node != null && node.right != null) {
+                    node = node.right;
+                }
+            }
+            else {
+                node = lower(root, hi);
+            }
+            return node == null || !inRange(node.key) ? null : node;
+        }
+
+        @Override
+        public int size() {
+            Node<K, V> root = root();
+            int from = fromStart ? 0 : rank(root, lo);
+            int to = toEnd ? sizeOf(root) : rank(root, hi);
+            return Math.max(0, to - from);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest(root()) == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && getNode(root(), key) != null;
+        }
+
+        @Override
+        public V get(Object key) {
+            Node<K, V> node = inRange(key) ? getNode(root(), key) : null;
+            return node == null ? null : node.value;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if(!live) {
+                throw new UnsupportedOperationException();
+            }
+            if(!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return PersistentBST.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            if(!live) {
+                throw new UnsupportedOperationException();
+            }
+            return inRange(key) ? PersistentBST.this.remove(key) : null;
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator(root(), View.this);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if(!(o instanceof Entry)) {
+                        return false;
+                    }
+                    Entry<?, ?> entry = (Entry<?, ?>) o;
+                    return containsKey(entry.getKey()) && Objects.equals(get(entry.getKey()), entry.getValue());
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            Node<K, V> node = lowest(root());
+            if(node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Node<K, V> node = highest(root());
+            if(node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.key;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if(!inRange(fromKey) || (!toEnd && compare(toKey, hi) > 0)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return new View(version, live, false, fromKey, false, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            if((!fromStart && compare(toKey, lo) < 0) || (!toEnd && compare(toKey, hi) > 0)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new View(version, live, fromStart, lo, false, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if(!inRange(fromKey)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            return new View(version, live, false, fromKey, toEnd, hi);
+        }
+    }
+
+    /**
+     * Walks one version in order with an explicit stack. Since the version
+     * never changes, neither do the iterator's results; <tt>remove</tt>, on
+     * the views of this map, updates the current version instead.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final View range;
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private Node<K, V> next, lastReturned;
+
+        EntryIterator(Node<K, V> root, View range) {
+            this.range = range;
+            push(root);
+            advance();
+        }
+
+        private void push(Node<K, V> node) {
+            while(node != null) {
+                if(!range.fromStart && compare(node.key, range.lo) < 0) {
+                    node = node.right;
+                }
+                else {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+        }
+
+        private void advance() {
+            next = stack.poll();
+            if(next == null) {
+                return;
+            }
+            if(!range.toEnd && compare(next.key, range.hi) >= 0) {
+                next = null;
+                stack.clear();
+                return;
+            }
+            push(next.right);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            advance();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if(lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            range.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+}
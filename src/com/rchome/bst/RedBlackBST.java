@@ -0,0 +1,372 @@
+package com.rchome.bst;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * A red-black tree. Every node is colored red or black so that no red node has
+ * a red child and every root-to-leaf path passes through the same number of
+ * black nodes, which keeps the height below <tt>2 * log2(n + 1)</tt> whatever
+ * order the keys are inserted in.
+ */
+public class RedBlackBST<K, V> extends BinarySearchTree<K, V> {
+
+    /**
+     * The node {@link #createNode} returns. Subclasses that augment the tree
+     * extend it and override {@link #createNode} in turn.
+     */
+    protected class RedBlackNode extends Node {
+        boolean red = true;
+        // black nodes on every path from here down to a leaf, not counting this one
+        int blackHeight;
+
+        protected RedBlackNode(K key, V value) {
+            super(key, value);
+        }
+    }
+
+    /**
+     * The node {@link #createThreadedNode} returns.
+     */
+    protected class ThreadedRedBlackNode extends RedBlackNode {
+        private Node prev, next;
+
+        protected ThreadedRedBlackNode(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        Node prev() {
+            return prev;
+        }
+
+        @Override
+        Node next() {
+            return next;
+        }
+
+        @Override
+        void setPrev(Node prev) {
+            this.prev = prev;
+        }
+
+        @Override
+        void setNext(Node next) {
+            this.next = next;
+        }
+    }
+
+    public RedBlackBST() {}
+
+    public RedBlackBST(Comparator<? super K> comparator) {
+        super(comparator);
+    }
+
+    @Override
+    protected void findOperation(Node current) {
+        // no-op
+    }
+
+    @Override
+    protected Node createNode(K key, V value) {
+        return new RedBlackNode(key, value);
+    }
+
+    @Override
+    protected Node createThreadedNode(K key, V value) {
+        return new ThreadedRedBlackNode(key, value);
+    }
+
+    /**
+     * Builds a balanced tree from <tt>size</tt> entries in ascending key
+     * order without comparing keys.
+     */
+    public static <K, V> RedBlackBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        return fromSorted(entries, size, null);
+    }
+
+    public static <K, V> RedBlackBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size,
+                                                      Comparator<? super K> comparator) {
+        RedBlackBST<K, V> tree = new RedBlackBST<>(comparator);
+        tree.buildFromSorted(entries, size);
+        return tree;
+    }
+
+    /**
+     * Loads a tree written by {@link #writeSnapshot}.
+     */
+    public static <K, V> RedBlackBST<K, V> fromSnapshot(Path path, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                                        Comparator<? super K> comparator) throws IOException {
+        RedBlackBST<K, V> tree = new RedBlackBST<>(comparator);
+        tree.readSnapshot(path, keyCodec, valueCodec);
+        return tree;
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        return new RedBlackBST<>(comparator());
+    }
+
+    /**
+     * Colors the partly filled bottom level red and everything else black,
+     * so every path has the same number of black nodes.
+     */
+    @Override
+    protected void builtNode(Node node, boolean incompleteLevel) {
+        setRed(node, incompleteLevel);
+    }
+
+    @Override
+    protected void insertNode(Node node) {
+        if(node == root) {
+            setRed(node, false);
+            return;
+        }
+        updatePath(node.parent);
+        fixAfterInsertion(node);
+        updatePath(node);
+    }
+
+    private void fixAfterInsertion(Node node) {
+        setRed(node, true);
+        while(node != root && isRed(node.parent)) {
+            Node parent = node.parent;
+            Node grandparent = parent.parent;
+            if(parent == grandparent.left) {
+                Node uncle = grandparent.right;
+                if(isRed(uncle)) {
+                    setRed(parent, false);
+                    setRed(uncle, false);
+                    setRed(grandparent, true);
+                    node = grandparent;
+                }
+                else {
+                    if(node == parent.right) {
+                        node = parent;
+                        rotateLeft(node);
+                        parent = node.parent;
+                    }
+                    setRed(parent, false);
+                    setRed(grandparent, true);
+                    rotateRight(grandparent);
+                }
+            }
+            else {
+                Node uncle = grandparent.left;
+                if(isRed(uncle)) {
+                    setRed(parent, false);
+                    setRed(uncle, false);
+                    setRed(grandparent, true);
+                    node = grandparent;
+                }
+                else {
+                    if(node == parent.left) {
+                        node = parent;
+                        rotateRight(node);
+                        parent = node.parent;
+                    }
+                    setRed(parent, false);
+                    setRed(grandparent, true);
+                    rotateLeft(grandparent);
+                }
+            }
+        }
+        setRed(root, false);
+    }
+
+    @Override
+    protected void removeNode(Node node) {
+        if(node.left != null && node.right != null) {
+            Node successor = node.right;
+            while(successor.left != null) {
+                successor = successor.left;
+            }
+            swapWithSuccessor(node, successor);
+        }
+
+        Node replacement = node.left != null ? node.left : node.right;
+        if(replacement != null) {
+            replaceChild(node, replacement);
+            if(!isRed(node)) {
+                fixAfterRemoval(replacement);
+            }
+            updatePath(replacement.parent);
+        }
+        else if(node == root) {
+            root = null;
+        }
+        else {
+            if(!isRed(node)) {
+                fixAfterRemoval(node);
+            }
+            Node parent = node.parent;
+            replaceChild(node, null);
+            updatePath(parent);
+        }
+        node.left = node.right = node.parent = null;
+    }
+
+    @Override
+    protected void swapWithSuccessor(Node node, Node successor) {
+        super.swapWithSuccessor(node, successor);
+        boolean red = isRed(node);
+        setRed(node, isRed(successor));
+        setRed(successor, red);
+        RedBlackNode a = (RedBlackNode) node, b = (RedBlackNode) successor;
+        int blackHeight = a.blackHeight;
+        a.blackHeight = b.blackHeight;
+        b.blackHeight = blackHeight;
+    }
+
+    @Override
+    protected void updateNode(Node node) {
+        super.updateNode(node);
+        ((RedBlackNode) node).blackHeight = blackHeight(node.left);
+    }
+
+    @Override
+    protected void setRoot(Node node) {
+        setRed(node, false);
+        super.setRoot(node);
+    }
+
+    /**
+     * Blackens both roots, then hangs <tt>pivot</tt> in red from the spine of
+     * the taller tree at the first black node whose black height matches the
+     * shorter one, fixing the single red-red violation this can cause with a
+     * rotation on the way back up.
+     */
+    @Override
+    protected Node join(Node left, Node pivot, Node right) {
+        setRed(left, false);
+        setRed(right, false);
+        int leftHeight = blackHeight(left), rightHeight = blackHeight(right);
+        Node joined;
+        if(leftHeight > rightHeight) {
+            joined = joinRight(left, pivot, right, rightHeight);
+        }
+        else if(leftHeight < rightHeight) {
+            joined = joinLeft(left, pivot, right, leftHeight);
+        }
+        else {
+            joined = super.join(left, pivot, right);
+        }
+        setRed(joined, false);
+        return joined;
+    }
+
+    private Node joinRight(Node left, Node pivot, Node right, int height) {
+        if(!isRed(left) && blackHeight(left) == height) {
+            Node joined = super.join(left, pivot, right);
+            setRed(joined, true);
+            return joined;
+        }
+        Node joined = joinRight(left.right, pivot, right, height);
+        left.right = joined;
+        joined.parent = left;
+        updateNode(left);
+        if(!isRed(left) && isRed(joined) && isRed(joined.right)) {
+            setRed(joined.right, false);
+            rotateLeft(left);
+            return joined;
+        }
+        return left;
+    }
+
+    private Node joinLeft(Node left, Node pivot, Node right, int height) {
+        if(!isRed(right) && blackHeight(right) == height) {
+            Node joined = super.join(left, pivot, right);
+            setRed(joined, true);
+            return joined;
+        }
+        Node joined = joinLeft(left, pivot, right.left, height);
+        right.left = joined;
+        joined.parent = right;
+        updateNode(right);
+        if(!isRed(right) && isRed(joined) && isRed(joined.left)) {
+            setRed(joined.left, false);
+            rotateRight(right);
+            return joined;
+        }
+        return right;
+    }
+
+    /**
+     * Returns the number of black nodes on every path from <tt>node</tt>,
+     * inclusive, down to a leaf.
+     */
+    private int blackHeight(Node node) {
+        return node == null ? 0 : ((RedBlackNode) node).blackHeight + (isRed(node) ? 0 : 1);
+    }
+
+    private void fixAfterRemoval(Node node) {
+        while(node != root && !isRed(node)) {
+            Node parent = node.parent;
+            if(node == parent.left) {
+                Node sibling = parent.right;
+                if(isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(parent, true);
+                    rotateLeft(parent);
+                    sibling = parent.right;
+                }
+                if(!isRed(sibling.left) && !isRed(sibling.right)) {
+                    setRed(sibling, true);
+                    node = parent;
+                }
+                else {
+                    if(!isRed(sibling.right)) {
+                        setRed(sibling.left, false);
+                        setRed(sibling, true);
+                        rotateRight(sibling);
+                        sibling = parent.right;
+                    }
+                    setRed(sibling, isRed(parent));
+                    setRed(parent, false);
+                    setRed(sibling.right, false);
+                    rotateLeft(parent);
+                    node = root;
+                }
+            }
+            else {
+                Node sibling = parent.left;
+                if(isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(parent, true);
+                    rotateRight(parent);
+                    sibling = parent.left;
+                }
+                if(!isRed(sibling.left) && !isRed(sibling.right)) {
+                    setRed(sibling, true);
+                    node = parent;
+                }
+                else {
+                    if(!isRed(sibling.left)) {
+                        setRed(sibling.right, false);
+                        setRed(sibling, true);
+                        rotateLeft(sibling);
+                        sibling = parent.left;
+                    }
+                    setRed(sibling, isRed(parent));
+                    setRed(parent, false);
+                    setRed(sibling.left, false);
+                    rotateRight(parent);
+                    node = root;
+                }
+            }
+        }
+        setRed(node, false);
+    }
+
+    private boolean isRed(Node node) {
+        return node != null && ((RedBlackNode) node).red;
+    }
+
+    private void setRed(Node node, boolean red) {
+        if(node != null) {
+            ((RedBlackNode) node).red = red;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+
+public class RedBlackBSTSet<K> extends BinarySearchTreeSet<K> {
+    public RedBlackBSTSet() {
+        super(new RedBlackBST());
+    }
+
+    public RedBlackBSTSet(Comparator<? super K> comparator) {
+        super(new RedBlackBST(comparator));
+    }
+}
@@ -0,0 +1,205 @@
+package com.rchome.bst;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * A splay tree. Every insertion and removal rotates the node it reaches up
+ * to the root, so keys that are accessed often stay near the top.
+ * <p>
+ * By default lookups (and replacing a value) splay lazily: only one in
+ * {@link #SPLAY_PERIOD} of the accesses that end deeper than
+ * <tt>log2(size) + 1</tt> nodes splays. Shallow keys are cheap to reach
+ * anyway, and most of the rotations of a full splay would push the hot keys
+ * down again, so on skewed lookups this does far fewer writes for the same
+ * hot set near the root. A run of deep lookups may go without restructuring
+ * for up to <tt>SPLAY_PERIOD - 1</tt> accesses, so the amortized logarithmic
+ * bound of a classic splay tree only holds with
+ * {@link #setSplayEveryAccess}.
+ */
+public class SplayBST<K, V> extends BinarySearchTree<K, V> {
+
+    /**
+     * How many of the deep lookups of a lazily splaying tree it takes for one
+     * to splay.
+     */
+    public static final int SPLAY_PERIOD = 8;
+
+    private Node lastVisited;
+    // nodes visited by the current lookup
+    private int visited;
+    // lookups that were deep enough to splay, so that every SPLAY_PERIOD-th does
+    private int deepAccesses;
+    private boolean splayEveryAccess;
+
+    public SplayBST() {}
+
+    public SplayBST(Comparator<? super K> comparator) {
+        super(comparator);
+    }
+
+    /**
+     * Builds a balanced tree from <tt>size</tt> entries in ascending key
+     * order without comparing keys.
+     */
+    public static <K, V> SplayBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size) {
+        return fromSorted(entries, size, null);
+    }
+
+    public static <K, V> SplayBST<K, V> fromSorted(Iterator<? extends Entry<? extends K, ? extends V>> entries, int size,
+                                                   Comparator<? super K> comparator) {
+        SplayBST<K, V> tree = new SplayBST<>(comparator);
+        tree.buildFromSorted(entries, size);
+        return tree;
+    }
+
+    /**
+     * Loads a tree written by {@link #writeSnapshot}.
+     */
+    public static <K, V> SplayBST<K, V> fromSnapshot(Path path, ByteCodec<K> keyCodec, ByteCodec<V> valueCodec,
+                                                     Comparator<? super K> comparator) throws IOException {
+        SplayBST<K, V> tree = new SplayBST<>(comparator);
+        tree.readSnapshot(path, keyCodec, valueCodec);
+        return tree;
+    }
+
+    @Override
+    protected BinarySearchTree<K, V> newTree() {
+        SplayBST<K, V> tree = new SplayBST<>(comparator());
+        tree.splayEveryAccess = splayEveryAccess;
+        return tree;
+    }
+
+    /**
+     * Makes every lookup splay the node it reaches, as in a classic splay
+     * tree, instead of only some of the deep ones.
+     */
+    public void setSplayEveryAccess(boolean splayEveryAccess) {
+        this.splayEveryAccess = splayEveryAccess;
+    }
+
+    public boolean isSplayEveryAccess() {
+        return splayEveryAccess;
+    }
+
+    @Override
+    protected void findOperation(Node current) {
+        lastVisited = current;
+        visited++;
+    }
+
+    /**
+     * Finds the node for <tt>key</tt> and splays it to the root if
+     * {@link #shouldSplay} says so. If the key is absent, the last node on
+     * the search path is considered instead.
+     */
+    @Override
+    protected Node getNode(Object key) {
+        Node node = super.getNode(key);
+        if(lastVisited != null) {
+            if(shouldSplay(visited)) {
+                splay(lastVisited);
+            }
+            lastVisited = null;
+        }
+        visited = 0;
+        return node;
+    }
+
+    /**
+     * Whether an access that reached a node <tt>depth</tt> nodes from the
+     * top, counting the root, splays it.
+     */
+    private boolean shouldSplay(int depth) {
+        return splayEveryAccess ||
+                depth > 32 - Integer.numberOfLeadingZeros(size()) && deepAccesses++ % SPLAY_PERIOD == 0;
+    }
+
+    @Override
+    protected void insertNode(Node node) {
+        splay(node);
+    }
+
+    /**
+     * Replacing a value counts as an access, so the node is splayed to the
+     * root when it would have been by {@link #get}.
+     */
+    @Override
+    protected void replaceValue(Node node, V value) {
+        super.replaceValue(node, value);
+        int depth = 0;
+        for(Node current = node; current != null; current = current.parent) {
+            depth++;
+        }
+        if(shouldSplay(depth)) {
+            splay(node);
+        }
+    }
+
+    /**
+     * Splays <tt>node</tt> to the root, then joins its two subtrees by
+     * splaying the largest key of the left subtree to the top of it and
+     * hanging the right subtree off that key.
+     */
+    @Override
+    protected void removeNode(Node node) {
+        splay(node);
+        Node left = node.left;
+        Node right = node.right;
+        node.left = node.right = null;
+        if(left == null) {
+            root = right;
+            if(right != null) {
+                right.parent = null;
+            }
+            return;
+        }
+        root = left;
+        left.parent = null;
+        Node max = left;
+        while(max.right != null) {
+            max = max.right;
+        }
+        splay(max);
+        max.right = right;
+        if(right != null) {
+            right.parent = max;
+        }
+        updateNode(max);
+    }
+
+    /**
+     * Rotates <tt>node</tt> up to the root. Only <tt>node</tt>'s own subtree
+     * needs correct sizes beforehand: each rotation recomputes the nodes it
+     * moves, and every stale ancestor is rotated below <tt>node</tt> on the
+     * way up.
+     */
+    private void splay(Node node) {
+        while(node.parent != null) {
+            Node parent = node.parent;
+            Node grandparent = parent.parent;
+            if(grandparent == null) {
+                rotateUp(node);
+            }
+            else if(node.isLeftChild() == parent.isLeftChild()) {
+                rotateUp(parent);
+                rotateUp(node);
+            }
+            else {
+                rotateUp(node);
+                rotateUp(node);
+            }
+        }
+    }
+
+    private void rotateUp(Node node) {
+        if(node.isLeftChild()) {
+            rotateRight(node.parent);
+        }
+        else {
+            rotateLeft(node.parent);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.rchome.bst;
+
+import java.util.Comparator;
+
+public class SplayBSTSet<K> extends BinarySearchTreeSet<K> {
+    public SplayBSTSet() {
+        super(new SplayBST());
+    }
+
+    public SplayBSTSet(Comparator<? super K> comparator) {
+        super(new SplayBST(comparator));
+    }
+}
@@ -0,0 +1,109 @@
+package com.rchome.bst;
+
+import java.util.Arrays;
+
+/**
+ * Counters collected by a {@link BinarySearchTree} while metrics are enabled
+ * (see {@link BinarySearchTree#enableMetrics()}). The tree updates them in
+ * place, so a caller can keep the object and poll it. Like the tree itself,
+ * it is not thread-safe.
+ *
+ * <p>A lookup is one search by key through {@link BinarySearchTree#getNode},
+ * which also serves <tt>containsKey</tt> and <tt>remove</tt>. Its depth is
+ * the number of edges followed from the root, and it takes one comparison per
+ * node visited. The comparison total covers every operation, including
+ * inserts and range queries.
+ */
+public final class TreeMetrics {
+    /** Depths from here on are counted in the last histogram bucket. */
+    public static final int MAX_DEPTH = 64;
+
+    long comparisons;
+    long lookups;
+    long lookupComparisons;
+    long inserts;
+    long replaces;
+    long removes;
+    long rotations;
+    final long[] depths = new long[MAX_DEPTH];
+
+    TreeMetrics() {}
+
+    void recordLookup(int visited) {
+        lookups++;
+        lookupComparisons += visited;
+        int depth = visited == 0 ? 0 : visited - 1;
+        depths[Math.min(depth, MAX_DEPTH - 1)]++;
+    }
+
+    /**
+     * Returns the number of key comparisons made by any operation.
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    public long getLookupComparisons() {
+        return lookupComparisons;
+    }
+
+    /**
+     * Returns the mean number of comparisons per lookup, or 0 if there were
+     * none.
+     */
+    public double getComparisonsPerLookup() {
+        return lookups == 0 ? 0 : (double) lookupComparisons / lookups;
+    }
+
+    /**
+     * Returns how many lookups ended at each depth. Entry <tt>i</tt> counts
+     * lookups that stopped <tt>i</tt> edges below the root; the last entry
+     * also counts everything deeper.
+     */
+    public long[] getDepthHistogram() {
+        return depths.clone();
+    }
+
+    /**
+     * Returns the number of puts that added a new key.
+     */
+    public long getInserts() {
+        return inserts;
+    }
+
+    /**
+     * Returns the number of puts that replaced the value of an existing key.
+     */
+    public long getReplaces() {
+        return replaces;
+    }
+
+    public long getRemoves() {
+        return removes;
+    }
+
+    /**
+     * Returns the number of single rotations, counting a double rotation as
+     * two.
+     */
+    public long getRotations() {
+        return rotations;
+    }
+
+    public void reset() {
+        comparisons = lookups = lookupComparisons = 0;
+        inserts = replaces = removes = rotations = 0;
+        Arrays.fill(depths, 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("comparisons=%d, lookups=%d (%.2f comparisons each), inserts=%d, replaces=%d, " +
+                        "removes=%d, rotations=%d", comparisons, lookups, getComparisonsPerLookup(), inserts,
+                replaces, removes, rotations);
+    }
+}
@@ -0,0 +1,297 @@
+package com.rchome.bst;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * The file format behind {@link BinarySearchTree#writeSnapshot} and
+ * {@link BinarySearchTree#readSnapshot}. A snapshot is a fixed header
+ * <pre>
+ *   0  magic          int   "BSTS"
+ *   4  version        int
+ *   8  entry count    int
+ *  12  payload bytes  long
+ *  20  payload CRC32  int
+ *  24  header CRC32   int   (of bytes 0-23)
+ * </pre>
+ * followed by the entries in ascending key order, each a key length, the key
+ * bytes, a value length and the value bytes. Lengths are unsigned LEB128
+ * varints; a value length is one more than the number of bytes, with 0
+ * standing for a null value. All numbers are big-endian.
+ * <p/>
+ * Reading maps the file in windows of up to 1GB, so snapshots may be larger
+ * than one mapping can cover.
+ */
+final class TreeSnapshot {
+    private static final int MAGIC = 0x42535453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long MAX_WINDOW = 1 << 30;
+    static final int MAX_VARINT = 5;
+
+    private TreeSnapshot() {}
+
+    /**
+     * Writes <tt>size</tt> entries, which must be in ascending key order, to
+     * <tt>path</tt>, replacing any file there. The entries go to a sibling
+     * temporary file that is forced and then renamed over <tt>path</tt>, so a
+     * failure or crash part way leaves the previous snapshot intact.
+     */
+    static <K, V> void write(Path path, Iterator<? extends Entry<K, V>> entries, int size,
+                             ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writeFile(temporary, entries, size, keyCodec, valueCodec);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch(IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static <K, V> void writeFile(Path path, Iterator<? extends Entry<K, V>> entries, int size,
+                                         ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+        int maxEntry = 2 * MAX_VARINT + keyCodec.maxSize() + valueCodec.maxSize();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, maxEntry));
+        CRC32 crc = new CRC32();
+        long payload = 0;
+        int count = 0;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            while(entries.hasNext()) {
+                Entry<K, V> entry = entries.next();
+                if(buffer.remaining() < maxEntry) {
+                    payload += flush(channel, buffer, crc);
+                }
+                // the key and value are encoded past their length prefixes,
+                // then moved down once their lengths are known
+                int start = buffer.position();
+                int keyLength = keyCodec.encode(entry.getKey(), buffer, start + MAX_VARINT);
+                int position = putVarint(buffer, start, keyLength);
+                move(buffer, start + MAX_VARINT, position, keyLength);
+                position += keyLength;
+                V value = entry.getValue();
+                if(value == null) {
+                    position = putVarint(buffer, position, 0);
+                }
+                else {
+                    int valueLength = valueCodec.encode(value, buffer, position + MAX_VARINT);
+                    int valueStart = putVarint(buffer, position, valueLength + 1);
+                    move(buffer, position + MAX_VARINT, valueStart, valueLength);
+                    position = valueStart + valueLength;
+                }
+                buffer.position(position);
+                count++;
+            }
+            payload += flush(channel, buffer, crc);
+            if(count != size) {
+                throw new IllegalStateException("Expected " + size + " entries but found " + count);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putLong(payload).putInt((int) crc.getValue());
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, header.position());
+            header.putInt((int) headerCrc.getValue());
+            header.flip();
+            while(header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        crc.update(buffer.duplicate());
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    static void move(ByteBuffer buffer, int from, int to, int length) {
+        if(from != to) {
+            for(int i = 0; i < length; i++) {
+                buffer.put(to + i, buffer.get(from + i));
+            }
+        }
+    }
+
+    static int putVarint(ByteBuffer buffer, int offset, int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put(offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(offset++, (byte) value);
+        return offset;
+    }
+
+    /**
+     * Checks the header and payload checksum of the snapshot at
+     * <tt>path</tt> and hands its entries, in order, to
+     * <tt>tree.buildFromSorted</tt>.
+     *
+     * @throws IOException if the file cannot be read, or is not an intact snapshot
+     */
+    static <K, V> void read(Path path, BinarySearchTree<K, V> tree,
+                            ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while(header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            if(header.hasRemaining()) {
+                throw new IOException("Not a tree snapshot: " + path);
+            }
+            header.flip();
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, HEADER_SIZE - 4);
+            int magic = header.getInt(), version = header.getInt(), count = header.getInt();
+            long payload = header.getLong();
+            int payloadCrc = header.getInt();
+            if(magic != MAGIC || header.getInt() != (int) headerCrc.getValue()) {
+                throw new IOException("Not a tree snapshot: " + path);
+            }
+            if(version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            if(count < 0 || payload < 0 || channel.size() != HEADER_SIZE + payload) {
+                throw new IOException("Truncated snapshot: " + path);
+            }
+
+            int maxEntry = 2 * MAX_VARINT + keyCodec.maxSize() + valueCodec.maxSize();
+            CRC32 crc = new CRC32();
+            for(long offset = 0; offset < payload; offset += MAX_WINDOW) {
+                crc.update(map(channel, HEADER_SIZE + offset, Math.min(MAX_WINDOW, payload - offset)));
+            }
+            if((int) crc.getValue() != payloadCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+            Entries<K, V> entries = new Entries<>(channel, payload, count, maxEntry, keyCodec, valueCodec);
+            try {
+                tree.buildFromSorted(entries, count);
+            } catch(CorruptSnapshot e) {
+                throw new IOException("Corrupt snapshot: " + path, e);
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Decodes the payload one entry at a time, moving the mapped window
+     * forward whenever less than a whole entry is left in it.
+     */
+    private static class Entries<K, V> implements Iterator<Entry<K, V>> {
+        private final FileChannel channel;
+        private final long payload;
+        private final int maxEntry;
+        private final ByteCodec<K> keyCodec;
+        private final ByteCodec<V> valueCodec;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int offset;
+        private int remaining;
+
+        Entries(FileChannel channel, long payload, int count, int maxEntry,
+                ByteCodec<K> keyCodec, ByteCodec<V> valueCodec) throws IOException {
+            this.channel = channel;
+            this.payload = payload;
+            this.maxEntry = maxEntry;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.remaining = count;
+            remap(0);
+        }
+
+        private void remap(long start) throws IOException {
+            windowStart = start;
+            window = map(channel, HEADER_SIZE + start, Math.min(MAX_WINDOW, payload - start));
+            offset = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if(remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            if(window.limit() - offset < maxEntry && windowStart + window.limit() < payload) {
+                try {
+                    remap(windowStart + offset);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            try {
+                int keyLength = getVarint();
+                K key = keyCodec.decode(window, offset, keyLength);
+                offset += keyLength;
+                int valueLength = getVarint() - 1;
+                V value = null;
+                if(valueLength >= 0) {
+                    value = valueCodec.decode(window, offset, valueLength);
+                    offset += valueLength;
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(key, value);
+            } catch(IndexOutOfBoundsException e) {
+                throw new CorruptSnapshot(e);
+            }
+        }
+
+        private int getVarint() {
+            int value = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte b = window.get(offset++);
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+                if(shift >= 28) {
+                    throw new CorruptSnapshot(null);
+                }
+            }
+        }
+    }
+
+    private static class CorruptSnapshot extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptSnapshot(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.AggregateBST;
+import com.rchome.bst.BinarySearchTreeSet;
+import com.rchome.bst.DoubleSumBST;
+import com.rchome.bst.LongSumBST;
+import com.rchome.bst.TreeMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class AggregateBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private static final int QUERIES = 1000;
+
+    @Test
+    public void testMonoid() throws Exception {
+        // concatenation is not commutative, so this also checks the order
+        AggregateBST<Integer, String> tree = new AggregateBST<>(String::concat, "");
+        AggregateBST<Integer, Integer> max = new AggregateBST<>(Math::max, Integer.MIN_VALUE);
+        TreeMap<Integer, String> map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            int key = random.nextInt(2000);
+            String value = Character.toString((char) ('a' + random.nextInt(26)));
+            assertEquals(map.put(key, value), tree.put(key, value));
+            max.put(key, value.charAt(0) * 1000 + key);
+        }
+        for (int i = 0; i < QUERIES; i++) {
+            int lo = random.nextInt(2000), hi = lo + random.nextInt(500);
+            StringBuilder expected = new StringBuilder();
+            int expectedMax = Integer.MIN_VALUE;
+            for (Map.Entry<Integer, String> entry : map.subMap(lo, hi).entrySet()) {
+                expected.append(entry.getValue());
+                expectedMax = Math.max(expectedMax, entry.getValue().charAt(0) * 1000 + entry.getKey());
+            }
+            assertEquals(expected.toString(), tree.aggregate(lo, hi));
+            assertEquals(expectedMax, (int) max.aggregate(lo, hi));
+            int key = map.ceilingKey(lo) == null ? lo : map.ceilingKey(lo);
+            assertEquals(map.containsKey(key) ? map.get(key) : "", tree.aggregate(key, true, key, true));
+            assertEquals("", tree.aggregate(key, false, key, true));
+        }
+        assertEquals("", tree.aggregate(10, 5));
+        assertEquals(String.join("", map.values()), tree.aggregate());
+
+        // updates through an entry keep the cached aggregates current
+        for (Map.Entry<Integer, String> entry : tree.entrySet()) {
+            entry.setValue(entry.getValue().toUpperCase());
+        }
+        assertEquals(String.join("", map.values()).toUpperCase(), tree.aggregate());
+        assertEquals("", new AggregateBST<Integer, String>(String::concat, "").aggregate(0, 1));
+    }
+
+    @Test
+    public void testSums() throws Exception {
+        LongSumBST<Integer, Long> longs = LongSumBST.ofLongs();
+        DoubleSumBST<Integer, Double> doubles = DoubleSumBST.ofDoubles();
+        TreeMap<Integer, Long> map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt(TEST_SIZE);
+            long value = random.nextInt(1000) - 500;
+            if (random.nextInt(4) == 0) {
+                assertEquals(map.remove(key), longs.remove(key));
+                doubles.remove(key);
+            }
+            else {
+                assertEquals(map.put(key, value), longs.put(key, value));
+                doubles.put(key, (double) value);
+            }
+        }
+        assertEquals(map, longs);
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < QUERIES; i++) {
+            int lo = random.nextInt(TEST_SIZE), hi = lo + random.nextInt(TEST_SIZE / 10);
+            long expected = 0;
+            for (long value : map.subMap(lo, hi).values()) {
+                expected += value;
+            }
+            assertEquals(expected, longs.sum(lo, hi));
+            // the values are small integers, so their double sums are exact
+            assertEquals(expected, doubles.sum(lo, hi), 0);
+            Integer key = keys.get(random.nextInt(keys.size()));
+            assertEquals((long) map.get(key), longs.sum(key, true, key, true));
+        }
+        long total = 0;
+        for (long value : map.values()) {
+            total += value;
+        }
+        assertEquals(total, longs.sum());
+
+        // split and join rebuild the cached sums along the way
+        int middle = TEST_SIZE / 2;
+        long low = longs.sum(Integer.MIN_VALUE, middle);
+        LongSumBST<Integer, Long> high = (LongSumBST<Integer, Long>) longs.split(middle);
+        assertEquals(low, longs.sum());
+        assertEquals(total - low, high.sum());
+        Iterator<Map.Entry<Integer, Long>> it = high.entrySet().iterator();
+        it.next();
+        it.remove();
+        longs.join(middle, 7L, high);
+        assertEquals(total - map.ceilingEntry(middle).getValue() + 7, longs.sum());
+    }
+
+    /**
+     * Sets every value of <tt>tree</tt>, whose values all measure 1, to 2,
+     * one key at a time, checking the sum after each.
+     */
+    private static void assertUpdatesSummed(LongSumBST<Integer, Object> tree) {
+        long sum = tree.sum();
+        assertEquals(tree.size(), sum);
+        for (Integer key : new ArrayList<>(tree.keySet())) {
+            tree.put(key, 2L);
+            assertEquals(++sum, tree.sum());
+        }
+    }
+
+    private static LongSumBST<Integer, Object> counter(int from, int to) {
+        // set elements map to a placeholder, which counts as 1
+        LongSumBST<Integer, Object> tree = new LongSumBST<>(v -> v instanceof Long ? (Long) v : 1);
+        for (int key = from; key < to; key++) {
+            tree.put(key, 1L);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testUpdatesAfterRestructuring() throws Exception {
+        // nodes moved between trees must still update the tree they are in
+        LongSumBST<Integer, Object> low = counter(0, 10);
+        LongSumBST<Integer, Object> high = (LongSumBST<Integer, Object>) low.split(5);
+        assertUpdatesSummed(high);
+        assertUpdatesSummed(low);
+
+        LongSumBST<Integer, Object> left = counter(0, 10);
+        left.join(10, 1L, counter(11, 20));
+        assertUpdatesSummed(left);
+
+        LongSumBST<Integer, Object> union = counter(0, 10);
+        BinarySearchTreeSet<Integer> set = new BinarySearchTreeSet<Integer>(union) {};
+        TreeSet<Integer> other = new TreeSet<>();
+        for (int key = 10; key < 20; key++) {
+            other.add(key);
+        }
+        set.union(other);
+        assertEquals(20, union.size());
+        assertUpdatesSummed(union);
+    }
+
+    @Test
+    public void testSetAlgebraWithMetrics() throws Exception {
+        // the metrics counters are not thread-safe, so nothing may run in the pool
+        Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        AggregateBST<Integer, Object> tree = new AggregateBST<>((a, b) -> {
+            threads.add(Thread.currentThread());
+            return a;
+        }, null);
+        TreeMetrics metrics = tree.enableMetrics();
+        BinarySearchTreeSet<Integer> set = new BinarySearchTreeSet<Integer>(tree) {};
+        TreeSet<Integer> other = new TreeSet<>();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            set.add(2 * i);
+            other.add(3 * i);
+        }
+        long comparisons = metrics.getComparisons();
+        set.union(other);
+        assertEquals(TEST_SIZE * 2 - TEST_SIZE / 3 - 1, set.size());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+        assertTrue(metrics.getComparisons() > comparisons);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNotThreaded() throws Exception {
+        // threaded nodes would lose the aggregates
+        LongSumBST.ofLongs().setThreaded(true);
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        LongSumBST<Integer, Long> longs = LongSumBST.ofLongs();
+        for (int key = 0; key < TEST_SIZE; key++) {
+            longs.put(key, (long) key);
+        }
+        List<Thread> readers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                Random random = new Random();
+                try {
+                    for (int i = 0; i < 10 * QUERIES; i++) {
+                        long lo = random.nextInt(TEST_SIZE - 1000), hi = lo + random.nextInt(1000);
+                        // the sum of lo..hi-1
+                        assertEquals((lo + hi - 1) * (hi - lo) / 2, longs.sum((int) lo, (int) hi));
+                    }
+                }
+                catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(new ArrayList<Throwable>(), failures);
+    }
+}
@@ -1,15 +1,31 @@
 package com.rchome.bst.test;
 
 import com.rchome.bst.BinarySearchTree;
+import com.rchome.bst.BinarySearchTreeSet;
+import com.rchome.bst.ByteCodec;
 import com.rchome.bst.DefaultBST;
+import com.rchome.bst.TreeMetrics;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.rmi.server.ServerRef;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Random;
+import java.util.Spliterator;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -18,9 +34,13 @@ public class BinarySearchTreeTest {
     private BinarySearchTree<Integer, Boolean> tree;
     private TreeMap<Integer, Boolean> map;
 
+    protected <K, V> BinarySearchTree<K, V> createTree() {
+        return new DefaultBST<>();
+    }
+
     @Before
     public void setUp() throws Exception {
-        tree = new DefaultBST<>();
+        tree = createTree();
         map = new TreeMap<>();
         Random random = new Random();
         for (int i = 0; i < TEST_SIZE; i++) {
@@ -83,6 +103,110 @@ public class BinarySearchTreeTest {
         assertTrue(tree.containsKey(i));
     }
 
+    @Test
+    public void testComputeAndMerge() throws Exception {
+        BinarySearchTree<Integer, Integer> counts = createTree();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        counts.setThreaded(true);
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Integer key = random.nextInt(TEST_SIZE / 10);
+            Integer value = random.nextInt(10) - 3;
+            // dropping non-positive results removes keys
+            BiFunction<Integer, Integer, Integer> add = (k, v) -> v == null ? value : v + value > 0 ? v + value : null;
+            switch (random.nextInt(5)) {
+                case 0:
+                    assertEquals(expected.merge(key, value, Integer::sum), counts.merge(key, value, Integer::sum));
+                    break;
+                case 1:
+                    assertEquals(expected.compute(key, add), counts.compute(key, add));
+                    break;
+                case 2:
+                    assertEquals(expected.computeIfPresent(key, (k, v) -> v % 2 == 0 ? null : v + 1),
+                                 counts.computeIfPresent(key, (k, v) -> v % 2 == 0 ? null : v + 1));
+                    break;
+                case 3:
+                    assertEquals(expected.computeIfAbsent(key, k -> value > 0 ? value : null),
+                                 counts.computeIfAbsent(key, k -> value > 0 ? value : null));
+                    break;
+                default:
+                    assertEquals(expected.putIfAbsent(key, value), counts.putIfAbsent(key, value));
+                    break;
+            }
+        }
+        assertEquals(expected, counts);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(counts.keySet()));
+        assertEquals(expected.firstEntry(), counts.firstEntry());
+
+        // replacing values in place leaves iterators valid
+        Iterator<Map.Entry<Integer, Integer>> it = counts.entrySet().iterator();
+        Integer first = it.next().getKey();
+        counts.merge(first, 1, Integer::sum);
+        counts.put(expected.lastKey(), 0);
+        it.next();
+
+        // lookups in the function may restructure a splay tree
+        assertEquals(Integer.valueOf(5), counts.computeIfAbsent(-3, k -> counts.getOrDefault(-4, 5) + counts.get(first) - counts.get(first)));
+        assertEquals(Integer.valueOf(5), counts.get(-3));
+        expected.put(-3, 5);
+        expected.merge(first, 1, Integer::sum);
+        expected.put(expected.lastKey(), 0);
+        assertEquals(expected, counts);
+
+        try {
+            counts.computeIfAbsent(-1, k -> {
+                counts.put(-2, 0);
+                return 1;
+            });
+            fail();
+        }
+        catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNestedMissInCompute() throws Exception {
+        BinarySearchTree<Integer, Integer> tens = createTree();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i <= 90; i += 10) {
+            tens.put(i, i);
+            expected.put(i, i);
+        }
+        // lookups of absent keys inside the function must not move the insert
+        assertEquals(Integer.valueOf(1), tens.compute(15, (k, v) -> {
+            tens.computeIfPresent(95, (k2, v2) -> v2);
+            return 1;
+        }));
+        assertEquals(Integer.valueOf(2), tens.computeIfAbsent(25, k -> {
+            tens.compute(-5, (k2, v2) -> null);
+            return 2;
+        }));
+        expected.put(15, 1);
+        expected.put(25, 2);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(tens.keySet()));
+        assertTrue(tens.containsKey(15));
+        assertTrue(tens.containsKey(25));
+    }
+
+    @Test
+    public void testPutDuringIteration() throws Exception {
+        int key = 0;
+        while (map.containsKey(key)) {
+            key++;
+        }
+        try {
+            for (Integer ignored : tree.keySet()) {
+                tree.put(key, true);
+            }
+            fail();
+        }
+        catch (ConcurrentModificationException e) {
+            // expected
+        }
+        assertTrue(tree.get(key));
+    }
+
     @Test
     public void testRemove() throws Exception {
         for (Integer key : map.keySet()) {
@@ -140,48 +264,491 @@ public class BinarySearchTreeTest {
     }
 
     @Test
-    public void testEfficiency() {
-        long seed = new Random().nextLong();
-        Map<Integer, Integer> treeMap = new TreeMap<>();
-        long time = System.currentTimeMillis();
-        putStressTest(seed, treeMap);
-        System.out.println(System.currentTimeMillis() - time);
+    public void testNavigation() throws Exception {
+        assertEquals(map.firstEntry(), tree.firstEntry());
+        assertEquals(map.lastEntry(), tree.lastEntry());
+        assertEquals(map.firstKey(), tree.firstKey());
+        assertEquals(map.lastKey(), tree.lastKey());
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            assertEquals(map.lowerEntry(key), tree.lowerEntry(key));
+            assertEquals(map.floorKey(key), tree.floorKey(key));
+            assertEquals(map.ceilingEntry(key), tree.ceilingEntry(key));
+            assertEquals(map.higherKey(key), tree.higherKey(key));
+        }
+        for (Integer key : map.keySet()) {
+            assertEquals(key, tree.floorKey(key));
+            assertEquals(key, tree.ceilingKey(key));
+            assertEquals(map.lowerKey(key), tree.lowerKey(key));
+            assertEquals(map.higherKey(key), tree.higherKey(key));
+        }
+    }
 
-        Map<Integer, Integer> defaultBST = new DefaultBST<>();
-        time = System.currentTimeMillis();
-        putStressTest(seed, defaultBST);
-        System.out.println(System.currentTimeMillis() - time);
+    @Test
+    public void testPollFirstAndLast() throws Exception {
+        while (!map.isEmpty()) {
+            assertEquals(map.pollFirstEntry(), tree.pollFirstEntry());
+            assertEquals(map.pollLastEntry(), tree.pollLastEntry());
+            assertEquals(map.size(), tree.size());
+        }
+        assertNull(tree.pollFirstEntry());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void testSubMapViews() throws Exception {
+        Random random = new Random();
+        for (int i = 0; i < 100; i++) {
+            int a = random.nextInt(), b = random.nextInt();
+            int lo = Math.min(a, b), hi = Math.max(a, b);
+            boolean loInclusive = random.nextBoolean(), hiInclusive = random.nextBoolean();
+            NavigableMap<Integer, Boolean> expected = map.subMap(lo, loInclusive, hi, hiInclusive);
+            NavigableMap<Integer, Boolean> actual = tree.subMap(lo, loInclusive, hi, hiInclusive);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+            assertEquals(new ArrayList<>(expected.descendingMap().keySet()), new ArrayList<>(actual.descendingMap().keySet()));
+            assertEquals(expected.firstEntry(), actual.firstEntry());
+            assertEquals(expected.lastEntry(), actual.lastEntry());
+            assertEquals(map.headMap(lo, loInclusive).size(), tree.headMap(lo, loInclusive).size());
+            assertEquals(map.tailMap(hi, hiInclusive).lastEntry(), tree.tailMap(hi, hiInclusive).lastEntry());
 
-        getStressTest(seed, treeMap);
-        getStressTest(seed, defaultBST);
-        removeStressTest(seed, treeMap);
-        removeStressTest(seed, defaultBST);
+            int probe = lo + (int) (((long) hi - lo) / 2);
+            assertEquals(expected.ceilingKey(probe), actual.ceilingKey(probe));
+            assertEquals(expected.descendingMap().ceilingKey(probe), actual.descendingMap().ceilingKey(probe));
+            assertEquals(expected.headMap(probe, true).lastKey() == null, actual.headMap(probe, true).lastKey() == null);
+        }
     }
 
-    private static final int STRESS_SIZE = 10_000_000;
+    @Test
+    public void testSubMapRemoval() throws Exception {
+        Integer lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        Iterator<Integer> it = tree.subMap(lo, hi).keySet().iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        map.subMap(lo, hi).clear();
+        assertEquals(map, tree);
+        assertEquals(map.size(), tree.size());
+
+        tree.descendingMap().pollFirstEntry();
+        map.descendingMap().pollFirstEntry();
+        assertEquals(map.entrySet(), tree.entrySet());
+
+        try {
+            tree.headMap(lo).put(hi, true);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNavigableSet() throws Exception {
+        BinarySearchTreeSet<Integer> set = new BinarySearchTreeSet<Integer>(this.<Integer, Object>createTree()) {};
+        TreeSet<Integer> expected = new TreeSet<>(map.keySet());
+        List<Integer> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled);
+        set.addAll(shuffled);
+        int lo = expected.first() / 2, hi = expected.last() / 2;
+        assertEquals(expected.floor(lo), set.floor(lo));
+        assertEquals(expected.higher(hi), set.higher(hi));
+        assertEquals(new ArrayList<>(expected.subSet(lo, hi)), new ArrayList<>(set.subSet(lo, hi)));
+        assertEquals(new ArrayList<>(expected.descendingSet().headSet(hi)), new ArrayList<>(set.descendingSet().headSet(hi)));
+
+        NavigableSet<Integer> tail = set.tailSet(hi, true);
+        assertTrue(tail.add(hi));
+        assertTrue(set.contains(hi));
+        assertEquals(expected.pollFirst(), set.pollFirst());
+        assertEquals(expected.pollLast(), set.pollLast());
+    }
+
+    @Test
+    public void testRankAndSelect() throws Exception {
+        int index = 0;
+        for (Integer key : map.keySet()) {
+            assertEquals(index, tree.rank(key));
+            assertEquals(key, tree.select(index));
+            index++;
+        }
+        assertEquals(map.size(), tree.rank(Integer.MAX_VALUE) + (map.containsKey(Integer.MAX_VALUE) ? 1 : 0));
+        try {
+            tree.select(map.size());
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
 
-    private void putStressTest(long seed, Map<Integer, Integer> map) {
-        Random random = new Random(seed);
-        for (int i = 0; i < STRESS_SIZE; i++) {
-            map.put(random.nextInt(), random.nextInt());
+    @Test
+    public void testCountInRange() throws Exception {
+        Random random = new Random();
+        for (int i = 0; i < 100; i++) {
+            int a = random.nextInt(), b = random.nextInt();
+            int lo = Math.min(a, b), hi = Math.max(a, b);
+            assertEquals(map.subMap(lo, hi).size(), tree.countInRange(lo, hi));
+            assertEquals(map.subMap(lo, false, hi, true).size(), tree.countInRange(lo, false, hi, true));
+            assertEquals(map.subMap(lo, false, hi, true).size(), tree.subMap(lo, false, hi, true).size());
         }
+        Integer first = map.firstKey();
+        assertEquals(1, tree.countInRange(first, true, first, true));
+        assertEquals(0, tree.countInRange(first, first));
     }
 
-    private void getStressTest(long seed, Map<Integer, Integer> map) {
-        long time = System.currentTimeMillis();
-        Random random = new Random(seed);
-        for (int i = 0; i < STRESS_SIZE; i++) {
-            map.get(random.nextInt());
+    @Test
+    public void testPutAllSorted() throws Exception {
+        BinarySearchTree<Integer, Boolean> copy = createTree();
+        copy.putAll(map);
+        assertEquals(31 - Integer.numberOfLeadingZeros(map.size()), copy.getHeight());
+        assertEquals(map.size(), copy.size());
+        assertEquals(map, copy);
+
+        TreeMap<Integer, Boolean> other = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            other.put(random.nextInt(), random.nextBoolean());
         }
-        System.out.println(System.currentTimeMillis() - time);
+        other.put(map.firstKey(), !map.firstEntry().getValue());
+        tree.putAll(other);
+        map.putAll(other);
+        assertEquals(map, tree);
+        assertEquals(map.size(), tree.size());
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(tree.keySet()));
+
+        tree.put(map.firstKey() - 1, true);
+        tree.remove(map.lastKey());
+        assertEquals(map.size(), tree.size());
     }
 
-    private void removeStressTest(long seed, Map<Integer, Integer> map) {
-        long time = System.currentTimeMillis();
-        Random random = new Random(seed);
-        for (int i = 0; i < STRESS_SIZE; i++) {
-            map.remove(random.nextInt());
+    @Test
+    public void testSplitAndJoin() throws Exception {
+        Integer key = tree.select(tree.size() / 2);
+        BinarySearchTree<Integer, Boolean> high = tree.split(key);
+        assertEquals(map.headMap(key).size(), tree.size());
+        assertEquals(map.headMap(key), tree);
+        assertEquals(map.tailMap(key, true), high);
+
+        Boolean value = high.remove(key);
+        tree.join(key, value, high);
+        assertTrue(high.isEmpty());
+        assertEquals(map.size(), tree.size());
+        assertEquals(map, tree);
+        try {
+            tree.join(key, value, high);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSetAlgebra() throws Exception {
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int otherSize : new int[] {10, TEST_SIZE}) {
+            TreeSet<Integer> other = new TreeSet<>();
+            for (int i = 0; i < otherSize; i++) {
+                other.add(random.nextBoolean() ? random.nextInt() : keys.get(random.nextInt(keys.size())));
+            }
+            for (int operation = 0; operation < 4; operation++) {
+                BinarySearchTreeSet<Integer> set = new BinarySearchTreeSet<Integer>(this.<Integer, Object>createTree()) {};
+                assertTrue(set.addAll(new TreeSet<>(map.keySet())));
+                TreeSet<Integer> expected = new TreeSet<>(map.keySet());
+                switch (operation) {
+                    case 0:
+                        set.union(other);
+                        expected.addAll(other);
+                        break;
+                    case 1:
+                        set.intersection(other);
+                        expected.retainAll(other);
+                        break;
+                    case 2:
+                        set.difference(other);
+                        expected.removeAll(other);
+                        break;
+                    default:
+                        set.symmetricDifference(other);
+                        for (Integer key : other) {
+                            if (!expected.remove(key)) {
+                                expected.add(key);
+                            }
+                        }
+                }
+                assertEquals(expected.size(), set.size());
+                assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+            }
+        }
+    }
+
+    @Test
+    public void testSpliterator() throws Exception {
+        Spliterator<Integer> keys = tree.keySet().spliterator();
+        assertTrue(keys.hasCharacteristics(Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertNull(keys.getComparator());
+        assertEquals(map.size(), keys.getExactSizeIfKnown());
+        Spliterator<Integer> prefix = keys.trySplit();
+        assertEquals(map.size(), prefix.getExactSizeIfKnown() + keys.getExactSizeIfKnown());
+        List<Integer> collected = new ArrayList<>();
+        prefix.forEachRemaining(collected::add);
+        keys.forEachRemaining(collected::add);
+        assertEquals(new ArrayList<>(map.keySet()), collected);
+
+        assertEquals(new ArrayList<>(map.keySet()), tree.keySet().parallelStream().collect(Collectors.toList()));
+        assertEquals(map.values().stream().filter(v -> v).count(), tree.values().parallelStream().filter(v -> v).count());
+        assertEquals(new ArrayList<>(map.entrySet()), tree.entrySet().parallelStream().collect(Collectors.toList()));
+
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        assertEquals(map.subMap(lo, hi).size(), tree.subMap(lo, hi).keySet().spliterator().getExactSizeIfKnown());
+        assertEquals(new ArrayList<>(map.subMap(lo, hi).keySet()),
+                tree.navigableKeySet().subSet(lo, hi).parallelStream().collect(Collectors.toList()));
+        assertEquals(new ArrayList<>(map.descendingMap().values()), new ArrayList<>(tree.descendingMap().values()));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        assertNull(tree.getMetrics());
+        TreeMetrics metrics = tree.enableMetrics();
+        assertSame(metrics, tree.getMetrics());
+        Integer present = map.firstKey();
+        tree.put(present, true);
+        tree.put(-1, true);
+        tree.put(-1, false);
+        tree.remove(present);
+        for (Integer key : map.keySet()) {
+            tree.get(key);
+        }
+        assertEquals(map.containsKey(-1) ? 0 : 1, metrics.getInserts());
+        assertEquals(map.containsKey(-1) ? 3 : 2, metrics.getReplaces());
+        assertEquals(1, metrics.getRemoves());
+        assertEquals(map.size() + 1, metrics.getLookups());
+        long lookups = 0;
+        for (long count : metrics.getDepthHistogram()) {
+            lookups += count;
+        }
+        assertEquals(metrics.getLookups(), lookups);
+        assertTrue(metrics.getLookupComparisons() >= metrics.getLookups() - 1);
+        assertTrue(metrics.getComparisons() > metrics.getLookupComparisons());
+
+        tree.disableMetrics();
+        assertNull(tree.getMetrics());
+        long comparisons = metrics.getComparisons();
+        tree.get(present);
+        assertEquals(comparisons, metrics.getComparisons());
+    }
+
+    @Test
+    public void testKeyOrders() throws Exception {
+        BinarySearchTree<String, Integer> strings = createTree();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            // short keys over a small alphabet share prefixes; the rest use any char
+            char[] chars = new char[random.nextInt(7)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) (random.nextBoolean() ? 'a' + random.nextInt(3) : random.nextInt(Character.MAX_VALUE + 1));
+            }
+            String key = new String(chars);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), strings.remove(key));
+            }
+            else {
+                assertEquals(expected.put(key, i), strings.put(key, i));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(strings.entrySet()));
+        for (String key : new String[] {"", "a", "ab", "abc", "abc\0", "abca", "\uffff\uffff\uffff\uffff\uffff"}) {
+            assertEquals(expected.get(key), strings.get(new String(key)));
+            assertEquals(expected.ceilingKey(key), strings.ceilingKey(key));
+        }
+
+        BinarySearchTree<Long, Integer> longs = createTree();
+        long[] keys = {Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1, Integer.MAX_VALUE + 1L};
+        for (int i = 0; i < keys.length; i++) {
+            longs.put(keys[i], i);
+        }
+        assertEquals(Long.MIN_VALUE, (long) longs.firstKey());
+        assertEquals(Long.MAX_VALUE, (long) longs.lastKey());
+        assertEquals(Integer.valueOf(5), longs.get(Integer.MAX_VALUE + 1L));
+
+        // an emptied tree can take keys of another type
+        BinarySearchTree<Object, Integer> any = createTree();
+        any.put(1, 1);
+        any.clear();
+        any.put("one", 1);
+        assertEquals(Integer.valueOf(1), any.get("one"));
+        try {
+            any.put(2, 2);
+            fail();
+        } catch (ClassCastException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testThreaded() throws Exception {
+        tree.setThreaded(true);
+        assertTrue(tree.isThreaded());
+        assertThreadedLikeMap();
+
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Integer key = random.nextBoolean() ? random.nextInt() : keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                assertEquals(map.remove(key), tree.remove(key));
+            }
+            else {
+                assertEquals(map.put(key, i % 2 == 0), tree.put(key, i % 2 == 0));
+            }
+        }
+        assertEquals(map.pollFirstEntry(), tree.pollFirstEntry());
+        Iterator<Integer> it = tree.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 3 == 0) {
+                it.remove();
+            }
+        }
+        map.keySet().removeIf(k -> k % 3 == 0);
+        assertThreadedLikeMap();
+
+        Integer key = tree.select(tree.size() / 3);
+        BinarySearchTree<Integer, Boolean> high = tree.split(key);
+        assertTrue(high.isThreaded());
+        assertEquals(new ArrayList<>(map.headMap(key).keySet()), new ArrayList<>(tree.keySet()));
+        assertEquals(new ArrayList<>(map.tailMap(key, true).descendingKeySet()), new ArrayList<>(high.descendingKeySet()));
+        tree.join(key, high.remove(key), high);
+        assertThreadedLikeMap();
+
+        TreeMap<Integer, Boolean> other = new TreeMap<>();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            other.put(random.nextInt(), true);
+        }
+        tree.putAll(other);
+        map.putAll(other);
+        assertThreadedLikeMap();
+
+        tree.setThreaded(false);
+        assertEquals(new ArrayList<>(map.descendingMap().entrySet()), new ArrayList<>(tree.descendingMap().entrySet()));
+    }
+
+    private void assertThreadedLikeMap() {
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(tree.entrySet()));
+        assertEquals(new ArrayList<>(map.descendingKeySet()), new ArrayList<>(tree.descendingKeySet()));
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        assertEquals(new ArrayList<>(map.subMap(lo, hi).keySet()), new ArrayList<>(tree.subMap(lo, hi).keySet()));
+        assertEquals(new ArrayList<>(map.subMap(lo, true, hi, true).descendingKeySet()),
+                new ArrayList<>(tree.subMap(lo, true, hi, true).descendingKeySet()));
+    }
+
+    @Test
+    public void testJoinThreadedWithUnthreaded() throws Exception {
+        Integer key = tree.select(tree.size() / 2);
+        BinarySearchTree<Integer, Boolean> high = tree.split(key);
+        Boolean value = high.remove(key);
+        tree.setThreaded(true);
+        tree.join(key, value, high);
+        assertThreadedLikeMap();
+
+        high = tree.split(key);
+        high.remove(key);
+        tree.setThreaded(false);
+        high.put(key, value);
+        high.join(map.lastKey() + 1, true, createTree());
+        map.put(map.lastKey() + 1, true);
+        assertTrue(high.isThreaded());
+        assertEquals(new ArrayList<>(map.tailMap(key, true).descendingKeySet()), new ArrayList<>(high.descendingKeySet()));
+    }
+
+    @Test
+    public void testBatchLookup() throws Exception {
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        TreeSet<Integer> batch = new TreeSet<>();
+        for (int i = 0; i < TEST_SIZE / 10; i++) {
+            batch.add(random.nextBoolean() ? random.nextInt() : keys.get(random.nextInt(keys.size())));
+        }
+        TreeMap<Integer, Boolean> expected = new TreeMap<>();
+        for (Integer key : batch) {
+            if (map.containsKey(key)) {
+                expected.put(key, map.get(key));
+            }
+        }
+
+        Integer[] sorted = batch.toArray(new Integer[0]);
+        Boolean[] values = new Boolean[sorted.length];
+        assertEquals(expected.size(), tree.getAll(sorted, values));
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(map.get(sorted[i]), values[i]);
+        }
+        Integer[] descending = batch.descendingSet().toArray(new Integer[0]);
+        assertEquals(expected.size(), tree.getAll(descending, values));
+        assertEquals(map.get(descending[0]), values[0]);
+
+        assertEquals(expected, tree.getAll(batch));
+        assertEquals(expected, tree.getAll(batch.descendingSet()));
+        assertTrue(tree.containsAllKeys(expected.keySet()));
+        assertEquals(expected.size() == batch.size(), tree.containsAllKeys(batch));
+        assertTrue(tree.keySet().containsAll(expected.navigableKeySet().descendingSet()));
+
+        BinarySearchTreeSet<Integer> set = new BinarySearchTreeSet<Integer>(this.<Integer, Object>createTree()) {};
+        set.addAll(map.keySet());
+        assertTrue(set.containsAll(expected.keySet()));
+        assertTrue(set.containsAll(new TreeSet<>(keys.subList(keys.size() / 2, keys.size()))));
+        assertEquals(expected.size() == batch.size(), set.containsAll(batch));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        TreeMap<Integer, String> strings = new TreeMap<>();
+        for (Map.Entry<Integer, Boolean> entry : map.entrySet()) {
+            strings.put(entry.getKey(), entry.getValue() ? String.valueOf(entry.getKey()) : null);
+        }
+        BinarySearchTree<Integer, String> source = createTree();
+        source.putAll(strings);
+        ByteCodec<String> values = ByteCodec.utf8(16);
+        Path path = Files.createTempFile("snapshot", ".bin");
+        try {
+            source.writeSnapshot(path, ByteCodec.INTEGER, values);
+            BinarySearchTree<Integer, String> loaded = createTree();
+            loaded.put(0, "replaced");
+            loaded.readSnapshot(path, ByteCodec.INTEGER, values);
+            assertEquals(source.size(), loaded.size());
+            assertEquals(new ArrayList<>(source.entrySet()), new ArrayList<>(loaded.entrySet()));
+            assertTrue(loaded.getHeight() <= 32 - Integer.numberOfLeadingZeros(loaded.size()));
+
+            // a failed write leaves the previous snapshot in place
+            BinarySearchTree<Integer, String> oversized = createTree();
+            oversized.putAll(strings);
+            oversized.put(0, "longer than sixteen bytes");
+            try {
+                oversized.writeSnapshot(path, ByteCodec.INTEGER, values);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+            loaded.readSnapshot(path, ByteCodec.INTEGER, values);
+            assertEquals(source, loaded);
+
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(path, bytes);
+            try {
+                loaded.readSnapshot(path, ByteCodec.INTEGER, values);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals(source, loaded);
+
+            source.clear();
+            source.writeSnapshot(path, ByteCodec.INTEGER, values);
+            loaded.readSnapshot(path, ByteCodec.INTEGER, values);
+            assertTrue(loaded.isEmpty());
+        } finally {
+            Files.delete(path);
         }
-        System.out.println(System.currentTimeMillis() - time);
     }
 }
\ No newline at end of file
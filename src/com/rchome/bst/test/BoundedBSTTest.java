@@ -0,0 +1,203 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.BoundedBST;
+import com.rchome.bst.BoundedBST.EvictionPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BoundedBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private static final int CAPACITY = 1000;
+
+    @Test
+    public void testLeastRecentlyUsed() throws Exception {
+        BoundedBST<Integer, Integer> cache = new BoundedBST<>(CAPACITY, EvictionPolicy.LRU);
+        Map<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+        List<Integer> evicted = new ArrayList<>();
+        cache.addEvictionListener((key, value) -> evicted.add(key));
+        Random random = new Random();
+        int hits = 0, misses = 0, removes = 0;
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt(3 * CAPACITY);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                Integer value = expected.get(key);
+                assertEquals(value, cache.get(key));
+                if (value == null) {
+                    misses++;
+                }
+                else {
+                    hits++;
+                }
+            }
+            else if (op < 9) {
+                assertEquals(expected.put(key, i), cache.put(key, i));
+            }
+            else if (expected.remove(key) != null) {
+                assertNotNull(cache.remove(key));
+                removes++;
+            }
+        }
+        assertEquals(hits, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(new TreeMap<>(expected), cache);
+        assertEquals(expected.size(), cache.getWeight());
+        assertEquals(evicted.size(), cache.getEvictionCount());
+        int puts = TEST_SIZE - hits - misses - removes;
+        assertTrue(cache.getEvictionCount() > 0 && cache.getEvictionCount() <= puts);
+    }
+
+    @Test
+    public void testLeastFrequentlyUsed() throws Exception {
+        BoundedBST<Integer, Integer> cache = new BoundedBST<>(3, EvictionPolicy.LFU);
+        List<Integer> evicted = new ArrayList<>();
+        cache.addEvictionListener((key, value) -> evicted.add(key));
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.get(2);
+        cache.put(3, 30);
+        // 1 and 4 have been used once, 1 less recently
+        cache.put(4, 4);
+        assertEquals(Arrays.asList(2, 3, 4), new ArrayList<>(cache.keySet()));
+        cache.get(4);
+        // all used twice, so the least recent of them makes room
+        cache.put(5, 5);
+        assertEquals(Arrays.asList(3, 4, 5), new ArrayList<>(cache.keySet()));
+        assertEquals(Arrays.asList(1, 2), evicted);
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(Integer.valueOf(30), cache.get(3));
+    }
+
+    @Test
+    public void testNewEntriesAdmitted() throws Exception {
+        BoundedBST<Integer, Integer> cache = new BoundedBST<>(2, EvictionPolicy.LFU);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.get(1);
+        cache.get(2);
+        // a new key displaces a resident rather than itself
+        cache.put(3, 3);
+        assertEquals(Arrays.asList(2, 3), new ArrayList<>(cache.keySet()));
+        cache.put(4, 4);
+        assertEquals(Arrays.asList(2, 4), new ArrayList<>(cache.keySet()));
+    }
+
+    @Test
+    public void testKeyOrderPolicies() throws Exception {
+        BoundedBST<Integer, Integer> lowest = new BoundedBST<>(CAPACITY, EvictionPolicy.LOWEST_KEY);
+        BoundedBST<Integer, Integer> highest = new BoundedBST<>(CAPACITY, EvictionPolicy.HIGHEST_KEY);
+        TreeMap<Integer, Integer> all = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            all.put(key, i);
+            lowest.put(key, i);
+            highest.put(key, i);
+        }
+        Integer[] keys = all.keySet().toArray(new Integer[0]);
+        assertEquals(all.tailMap(keys[keys.length - CAPACITY], true), lowest);
+        assertEquals(all.headMap(keys[CAPACITY - 1], true), highest);
+        assertEquals(all.lastKey(), lowest.lastKey());
+        assertEquals(all.firstKey(), highest.firstKey());
+    }
+
+    @Test
+    public void testSplayDepth() throws Exception {
+        BoundedBST<Integer, Integer> cache = new BoundedBST<>(CAPACITY, EvictionPolicy.SPLAY_DEPTH);
+        List<Integer> evicted = new ArrayList<>();
+        cache.addEvictionListener((key, value) -> evicted.add(key));
+        // seeded, since the hot set is only almost never evicted
+        Random random = new Random(42);
+        for (int key = 0; key < 10; key++) {
+            cache.put(key, key);
+        }
+        int hotMisses = 0;
+        for (int i = 0; i < TEST_SIZE; i++) {
+            cache.put(10 + random.nextInt(100 * CAPACITY), i);
+            // a small hot set, used all the time, stays near the root, though
+            // now and then a splay leaves one of them the deepest leaf
+            int hot = random.nextInt(10);
+            if (cache.get(hot) == null) {
+                hotMisses++;
+                cache.put(hot, hot);
+            }
+            assertTrue(cache.size() <= CAPACITY);
+        }
+        assertEquals(CAPACITY, cache.size());
+        assertEquals(TEST_SIZE - hotMisses, cache.getHitCount());
+        assertEquals(evicted.size(), cache.getEvictionCount());
+        assertTrue(hotMisses < TEST_SIZE / 1000);
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        BoundedBST<String, String> cache = new BoundedBST<>(100, (key, value) -> value.length(),
+                EvictionPolicy.LRU);
+        List<String> evicted = new ArrayList<>();
+        cache.addEvictionListener((key, value) -> evicted.add(key));
+        cache.put("a", new String(new char[40]));
+        cache.put("b", new String(new char[40]));
+        assertEquals(80, cache.getWeight());
+        cache.get("a");
+        cache.put("c", new String(new char[30]));
+        assertEquals(Arrays.asList("b"), evicted);
+        assertEquals(70, cache.getWeight());
+        cache.put("a", "");
+        assertEquals(30, cache.getWeight());
+        cache.put("d", new String(new char[200]));
+        assertEquals(Arrays.asList("b", "c", "a", "d"), evicted);
+        assertTrue(cache.isEmpty());
+        assertEquals(0, cache.getWeight());
+
+        TreeMap<String, String> values = new TreeMap<>();
+        for (int i = 0; i < 20; i++) {
+            values.put("k" + i, "0123456789");
+        }
+        cache.putAll(values);
+        assertEquals(10, cache.size());
+        assertEquals(100, cache.getWeight());
+        assertEquals(values.tailMap("k18", true), cache.tailMap("k18", true));
+    }
+
+    @Test
+    public void testPutAllKeepsAccessOrder() throws Exception {
+        for (EvictionPolicy policy : new EvictionPolicy[]{EvictionPolicy.LRU, EvictionPolicy.LFU}) {
+            BoundedBST<Integer, Integer> cache = new BoundedBST<>(100, policy);
+            for (int key = 0; key < 100; key++) {
+                cache.put(key, key);
+            }
+            for (int key = 0; key < 50; key++) {
+                cache.get(key);
+            }
+            // a sorted map must not reset the order the way a rebuild would
+            TreeMap<Integer, Integer> added = new TreeMap<>();
+            for (int key = 100; key < 120; key++) {
+                added.put(key, key);
+            }
+            cache.putAll(added);
+            assertEquals(policy.toString(), 100, cache.size());
+            for (int key = 0; key < 50; key++) {
+                assertTrue(policy + " " + key, cache.containsKey(key));
+            }
+            for (int key = 50; key < 70; key++) {
+                assertFalse(policy + " " + key, cache.containsKey(key));
+            }
+            assertTrue(policy.toString(), cache.keySet().containsAll(added.keySet()));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.CompactBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class CompactBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private CompactBST<Integer, Integer> tree;
+    private TreeMap<Integer, Integer> map;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new CompactBST<>();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            assertEquals(map.put(key, i), tree.put(key, i));
+        }
+    }
+
+    private void assertBalanced() {
+        // a left-leaning red-black tree is never more than 2 log2(n + 1) high
+        assertTrue(tree.getHeight() <= 2 * (32 - Integer.numberOfLeadingZeros(tree.size())));
+    }
+
+    @Test
+    public void testMapOperations() throws Exception {
+        assertEquals(map, tree);
+        assertBalanced();
+        assertEquals(map.firstKey(), tree.firstKey());
+        assertEquals(map.lastKey(), tree.lastKey());
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Integer key = random.nextBoolean() ? keys.get(random.nextInt(keys.size())) : random.nextInt();
+            assertEquals(map.remove(key), tree.remove(key));
+            assertEquals(map.ceilingKey(key), tree.ceilingKey(key));
+            assertEquals(map.lowerKey(key), tree.lowerKey(key));
+        }
+        assertEquals(map.size(), tree.size());
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(tree.entrySet()));
+        assertBalanced();
+        assertSame(tree.entrySet(), tree.entrySet());
+
+        List<Integer> visited = new ArrayList<>();
+        tree.forEach((key, value) -> visited.add(key));
+        tree.forEach((key, value) -> assertEquals(map.get(key), value));
+        assertEquals(new ArrayList<>(map.keySet()), visited);
+
+        for (Integer key : keys) {
+            assertEquals(map.remove(key), tree.remove(key));
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.getHeight());
+    }
+
+    @Test
+    public void testIteratorRemove() throws Exception {
+        int size = map.size();
+        Iterator<Map.Entry<Integer, Integer>> it = tree.entrySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            assertEquals(map.get(entry.getKey()), entry.getValue());
+            if (entry.getKey() % 3 != 0) {
+                it.remove();
+                map.remove(entry.getKey());
+            }
+            count++;
+        }
+        assertEquals(size, count);
+        assertEquals(map, tree);
+        assertBalanced();
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        SortedMap<Integer, Integer> view = tree.subMap(lo, hi);
+        assertEquals(map.subMap(lo, hi), view);
+        assertEquals(map.subMap(lo, hi).size(), view.size());
+        assertEquals(map.subMap(lo, hi).firstKey(), view.firstKey());
+        assertEquals(map.subMap(lo, hi).lastKey(), view.lastKey());
+        assertEquals(map.headMap(0).lastKey(), tree.headMap(0).lastKey());
+        assertEquals(map.tailMap(0).firstKey(), tree.tailMap(0).firstKey());
+        assertEquals(map.tailMap(lo).headMap(0), tree.tailMap(lo).headMap(0));
+        view.put(lo, -1);
+        map.put(lo, -1);
+        try {
+            view.put(hi, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        view.entrySet().removeIf(entry -> entry.getKey() % 2 == 0);
+        map.subMap(lo, hi).entrySet().removeIf(entry -> entry.getKey() % 2 == 0);
+        assertEquals(map, tree);
+        view.clear();
+        map.subMap(lo, hi).clear();
+        assertEquals(map, tree);
+        assertTrue(view.isEmpty());
+    }
+
+    @Test
+    public void testComparator() throws Exception {
+        CompactBST<String, Integer> strings = new CompactBST<>(Comparator.reverseOrder());
+        TreeMap<String, Integer> expected = new TreeMap<>(Comparator.reverseOrder());
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            strings.put(entry.getKey().toString(), entry.getValue());
+            expected.put(entry.getKey().toString(), entry.getValue());
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(strings.keySet()));
+        assertEquals(expected.firstKey(), strings.firstKey());
+    }
+}
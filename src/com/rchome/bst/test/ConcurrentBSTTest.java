@@ -0,0 +1,162 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.ConcurrentBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private ConcurrentBST<Integer, Integer> tree;
+    private TreeMap<Integer, Integer> map;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new ConcurrentBST<>();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            tree.put(key, i);
+            map.put(key, i);
+        }
+    }
+
+    @Test
+    public void testMapOperations() throws Exception {
+        assertEquals(map.size(), tree.size());
+        assertEquals(map, tree);
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Integer key = keys.get(random.nextInt(keys.size()));
+            assertEquals(map.remove(key), tree.remove(key));
+            int other = random.nextInt();
+            assertEquals(map.putIfAbsent(other, i), tree.putIfAbsent(other, i));
+            assertEquals(map.higherKey(other), tree.higherKey(other));
+            assertEquals(map.floorEntry(other), tree.floorEntry(other));
+        }
+        assertEquals(map.size(), tree.size());
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(tree.entrySet()));
+        assertEquals(map.pollFirstEntry(), tree.pollFirstEntry());
+        assertEquals(map.pollLastEntry(), tree.pollLastEntry());
+
+        Integer key = keys.get(0);
+        tree.put(key, 1);
+        assertFalse(tree.replace(key, 2, 3));
+        assertTrue(tree.replace(key, 1, 3));
+        assertFalse(tree.remove(key, 1));
+        assertTrue(tree.remove(key, 3));
+        assertNull(tree.replace(key, 4));
+    }
+
+    @Test
+    public void testSubMapViews() throws Exception {
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        NavigableMap<Integer, Integer> expected = map.subMap(lo, true, hi, false);
+        ConcurrentNavigableMap<Integer, Integer> view = tree.subMap(lo, true, hi, false);
+        assertEquals(expected.size(), view.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(view.keySet()));
+        assertEquals(new ArrayList<>(expected.descendingMap().entrySet()), new ArrayList<>(view.descendingMap().entrySet()));
+        assertEquals(expected.headMap(0, false).lastEntry(), view.headMap(0, false).lastEntry());
+        assertEquals(new ArrayList<>(map.descendingKeySet()), new ArrayList<>(tree.descendingKeySet()));
+        try {
+            view.put(hi, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Iterator<Integer> it = view.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+        }
+        expected.keySet().removeIf(k -> k % 2 == 0);
+        assertEquals(map, tree);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final ConcurrentBST<Integer, Integer> shared = new ConcurrentBST<>();
+        final CyclicBarrier start = new CyclicBarrier(threads + 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    // each writer owns the keys equal to its id modulo the thread count
+                    Random random = new Random(id);
+                    for (int i = 0; i < TEST_SIZE; i++) {
+                        int key = random.nextInt(TEST_SIZE) * threads + id;
+                        if (random.nextInt(3) == 0) {
+                            shared.remove(key);
+                        }
+                        else {
+                            shared.put(key, id);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        Thread reader = new Thread(() -> {
+            try {
+                start.await();
+                while (workers.stream().anyMatch(Thread::isAlive)) {
+                    Integer previous = null;
+                    for (Integer key : shared.keySet()) {
+                        assertTrue(previous == null || previous < key);
+                        previous = key;
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        reader.start();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // replay each writer's operations on its own keys, which no other writer touched
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int id = 0; id < threads; id++) {
+            Random random = new Random(id);
+            for (int i = 0; i < TEST_SIZE; i++) {
+                int key = random.nextInt(TEST_SIZE) * threads + id;
+                if (random.nextInt(3) == 0) {
+                    expected.remove(key);
+                }
+                else {
+                    expected.put(key, id);
+                }
+            }
+        }
+        assertEquals(expected.size(), shared.size());
+        assertEquals(expected, shared);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(shared.keySet()));
+    }
+}
@@ -0,0 +1,202 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.ByteCodec;
+import com.rchome.bst.DurableBST;
+import com.rchome.bst.DurableBST.SyncPolicy;
+import com.rchome.bst.RedBlackBST;
+import com.rchome.bst.SplayBST;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DurableBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("durable");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.forEach(paths::add);
+        }
+        paths.sort(Comparator.reverseOrder());
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    private DurableBST<Long, String> open(SyncPolicy policy, long compactionThreshold) throws IOException {
+        return DurableBST.open(directory, new RedBlackBST<>(), ByteCodec.LONG, ByteCodec.utf8(32), policy,
+                               DurableBST.DEFAULT_SYNC_INTERVAL_MILLIS, compactionThreshold);
+    }
+
+    private static void update(DurableBST<Long, String> durable, TreeMap<Long, String> expected,
+                               Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            long key = random.nextInt(TEST_SIZE / 10);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), durable.remove(key));
+            }
+            else {
+                String value = random.nextInt(10) == 0 ? null : String.valueOf(i);
+                assertEquals(expected.put(key, value), durable.put(key, value));
+            }
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        TreeMap<Long, String> expected = new TreeMap<>();
+        Random random = new Random();
+        DurableBST<Long, String> durable = open(SyncPolicy.NEVER, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        update(durable, expected, random, TEST_SIZE);
+        assertEquals(expected, durable);
+        durable.close();
+
+        durable = open(SyncPolicy.NEVER, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(expected, durable);
+        durable.checkpoint();
+        assertEquals(0, durable.getLogSize());
+        update(durable, expected, random, TEST_SIZE / 10);
+        durable.clear();
+        expected.clear();
+        update(durable, expected, random, TEST_SIZE / 10);
+        durable.close();
+
+        // replayed on a differently shaped tree with the same order
+        durable = DurableBST.open(directory, new SplayBST<>(), ByteCodec.LONG, ByteCodec.utf8(32), SyncPolicy.NEVER);
+        assertEquals(expected, durable);
+        durable.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        TreeMap<Long, String> expected = new TreeMap<>();
+        Random random = new Random();
+        DurableBST<Long, String> durable = open(SyncPolicy.PERIODIC, 1 << 16);
+        update(durable, expected, random, TEST_SIZE);
+        assertTrue(durable.getLogSize() <= 1 << 16);
+        assertTrue(Files.exists(directory.resolve("checkpoint")));
+        durable.close();
+        assertTrue(Files.size(directory.resolve("log")) <= (1 << 16) + 1000);
+
+        durable = open(SyncPolicy.PERIODIC, 1 << 16);
+        assertEquals(expected, durable);
+        durable.close();
+    }
+
+    @Test
+    public void testTornLog() throws Exception {
+        TreeMap<Long, String> expected = new TreeMap<>();
+        DurableBST<Long, String> durable = open(SyncPolicy.ALWAYS, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        update(durable, expected, new Random(), 1000);
+        durable.close();
+        Path log = directory.resolve("log");
+        long size = Files.size(log);
+
+        // half a record, as a crash during an append leaves it
+        Files.write(log, new byte[]{0, 0, 0, 20, 1, 2, 3, 4, 1, 0}, StandardOpenOption.APPEND);
+        durable = open(SyncPolicy.ALWAYS, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(expected, durable);
+        assertEquals(size, Files.size(log));
+        assertNull(durable.put(-1L, "after"));
+        durable.close();
+        expected.put(-1L, "after");
+
+        // a damaged last record is dropped as well
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+        expected.remove(-1L);
+        durable = open(SyncPolicy.ALWAYS, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(expected, durable);
+        durable.close();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        DurableBST<Long, String> durable = open(SyncPolicy.ALWAYS, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        int threads = 8, perThread = 200;
+        // released together, so that while one writer is blocked in a force
+        // the others append behind it and share the next one
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = t * perThread;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException | BrokenBarrierException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < perThread; i++) {
+                    durable.put(base + i, String.valueOf(i));
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(threads * perThread, durable.size());
+        assertTrue(durable.getSyncCount() < threads * perThread);
+        durable.close();
+
+        DurableBST<Long, String> reopened = open(SyncPolicy.ALWAYS, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(threads * perThread, reopened.size());
+        assertEquals("7", reopened.get(3L * perThread + 7));
+        reopened.close();
+    }
+
+    @Test
+    public void testRejectedUpdates() throws Exception {
+        DurableBST<Long, String> durable = open(SyncPolicy.NEVER, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        durable.put(1L, "one");
+        try {
+            durable.put(2L, "a value longer than the thirty-two bytes the codec allows");
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        long logSize = durable.getLogSize();
+        assertNull(durable.remove(3L));
+        assertEquals(logSize, durable.getLogSize());
+        durable.close();
+        try {
+            durable.put(4L, "four");
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+
+        durable = open(SyncPolicy.NEVER, DurableBST.DEFAULT_COMPACTION_THRESHOLD);
+        assertEquals(1, durable.size());
+        assertEquals("one", durable.get(1L));
+        durable.close();
+    }
+}
@@ -0,0 +1,118 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.DefaultBST;
+import com.rchome.bst.FrozenLongMap;
+import com.rchome.bst.FrozenMap;
+import com.rchome.bst.RedBlackBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class FrozenMapTest {
+    public static final int TEST_SIZE = 100_000;
+    private TreeMap<Integer, Integer> map;
+    private FrozenMap<Integer, Integer> frozen;
+
+    @Before
+    public void setUp() throws Exception {
+        RedBlackBST<Integer, Integer> tree = new RedBlackBST<>();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            tree.put(key, i);
+            map.put(key, i);
+        }
+        frozen = tree.freeze();
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        assertEquals(map.size(), frozen.size());
+        assertEquals(map, frozen);
+        assertEquals(map.firstKey(), frozen.firstKey());
+        assertEquals(map.lastKey(), frozen.lastKey());
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            assertEquals(map.get(key), frozen.get(key));
+        }
+        for (Integer key : map.keySet()) {
+            assertTrue(frozen.containsKey(key));
+        }
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(frozen.entrySet()));
+        try {
+            frozen.put(0, 0);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // every shape of the bottom level
+        for (int size = 0; size < 70; size++) {
+            DefaultBST<Integer, Integer> small = new DefaultBST<>(Collections.reverseOrder());
+            TreeMap<Integer, Integer> expected = new TreeMap<>(Collections.reverseOrder());
+            for (int i = 0; i < size; i++) {
+                small.put(2 * i, i);
+                expected.put(2 * i, i);
+            }
+            FrozenMap<Integer, Integer> copy = small.freeze();
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(copy.entrySet()));
+            for (int key = -1; key <= 2 * size; key++) {
+                assertEquals(expected.get(key), copy.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testViews() throws Exception {
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        SortedMap<Integer, Integer> expected = map.subMap(lo, hi);
+        SortedMap<Integer, Integer> view = frozen.subMap(lo, hi);
+        assertEquals(expected.size(), view.size());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(view.entrySet()));
+        assertEquals(expected.firstKey(), view.firstKey());
+        assertEquals(expected.lastKey(), view.lastKey());
+        assertNull(view.get(map.lastKey()));
+        assertEquals(map.headMap(0).lastKey(), frozen.headMap(0).lastKey());
+        assertEquals(map.tailMap(0).firstKey(), frozen.tailMap(0).firstKey());
+        assertEquals(expected.headMap(0).size(), view.headMap(0).size());
+        assertEquals(expected.tailMap(0).size(), view.tailMap(0).size());
+        assertTrue(view.subMap(hi, hi).isEmpty());
+        try {
+            view.subMap(lo - 1, hi);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLongKeys() throws Exception {
+        TreeMap<Long, Integer> longs = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            longs.put(random.nextLong(), i);
+        }
+        longs.put(Long.MIN_VALUE, -1);
+        longs.put(Long.MAX_VALUE, -2);
+        FrozenLongMap<Integer> copy = FrozenLongMap.of(longs);
+        assertEquals(longs, copy);
+        for (Map.Entry<Long, Integer> entry : longs.entrySet()) {
+            assertEquals(entry.getValue(), copy.get((long) entry.getKey()));
+        }
+        for (int i = 0; i < TEST_SIZE; i++) {
+            long key = random.nextLong();
+            assertEquals(longs.containsKey(key), copy.containsKey(key));
+        }
+        assertNull(copy.get("not a long"));
+    }
+}
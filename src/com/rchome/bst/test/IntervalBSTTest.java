@@ -0,0 +1,120 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.Interval;
+import com.rchome.bst.IntervalBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class IntervalBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private static final int RANGE = 10 * TEST_SIZE;
+    private IntervalBST<Integer, Integer> tree;
+    private TreeMap<Interval<Integer>, Integer> map;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new IntervalBST<>();
+        map = new TreeMap<>();
+        random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Interval<Integer> interval = randomInterval();
+            assertEquals(map.put(interval, i), tree.put(interval, i));
+        }
+    }
+
+    private Interval<Integer> randomInterval() {
+        int lo = random.nextInt(RANGE);
+        // mostly short intervals with the occasional long one
+        int length = random.nextInt(10) == 0 ? random.nextInt(RANGE / 10) : random.nextInt(100);
+        return new Interval<>(lo, lo + length);
+    }
+
+    private List<Interval<Integer>> expectedOverlapping(int lo, int hi) {
+        List<Interval<Integer>> expected = new ArrayList<>();
+        for (Interval<Integer> interval : map.keySet()) {
+            if (interval.overlaps(lo, hi)) {
+                expected.add(interval);
+            }
+        }
+        return expected;
+    }
+
+    private static List<Interval<Integer>> keys(Iterator<Map.Entry<Interval<Integer>, Integer>> it) {
+        List<Interval<Integer>> keys = new ArrayList<>();
+        while (it.hasNext()) {
+            keys.add(it.next().getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            int lo = random.nextInt(RANGE);
+            int hi = lo + random.nextInt(1000);
+            assertEquals(expectedOverlapping(lo, hi), keys(tree.overlapping(lo, hi)));
+            assertEquals(expectedOverlapping(lo, lo), keys(tree.stabbing(lo)));
+        }
+        assertEquals(new ArrayList<>(map.keySet()), keys(tree.overlapping(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        assertFalse(tree.overlapping(-2, -1).hasNext());
+        assertFalse(tree.stabbing(2 * RANGE).hasNext());
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        Interval<Integer> middle = new Interval<>(RANGE / 2, RANGE / 2);
+        IntervalBST<Integer, Integer> high = (IntervalBST<Integer, Integer>) tree.split(middle);
+        int lo = RANGE / 2 - 1000, hi = RANGE / 2 + 1000;
+        List<Interval<Integer>> expected = expectedOverlapping(lo, hi);
+        List<Interval<Integer>> actual = keys(tree.overlapping(lo, hi));
+        actual.addAll(keys(high.overlapping(lo, hi)));
+        assertEquals(expected, actual);
+        tree.join(middle, 0, high);
+        map.put(middle, 0);
+        assertEquals(expectedOverlapping(lo, hi), keys(tree.overlapping(lo, hi)));
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        List<Interval<Integer>> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < TEST_SIZE / 2; i++) {
+            Interval<Integer> key = keys.get(random.nextInt(keys.size()));
+            assertEquals(map.remove(key), tree.remove(key));
+            Interval<Integer> interval = randomInterval();
+            assertEquals(map.put(interval, i), tree.put(interval.getLo(), interval.getHi(), i));
+        }
+        assertEquals(map, tree);
+        for (int i = 0; i < 100; i++) {
+            int lo = random.nextInt(RANGE);
+            int hi = lo + random.nextInt(1000);
+            assertEquals(expectedOverlapping(lo, hi), keys(tree.overlapping(lo, hi)));
+        }
+
+        // removing through the iterator leaves the rest of the answer intact
+        int lo = RANGE / 4, hi = RANGE / 2;
+        List<Interval<Integer>> expected = expectedOverlapping(lo, hi);
+        List<Interval<Integer>> seen = new ArrayList<>();
+        Iterator<Map.Entry<Interval<Integer>, Integer>> it = tree.overlapping(lo, hi);
+        while (it.hasNext()) {
+            Interval<Integer> key = it.next().getKey();
+            seen.add(key);
+            if (key.getLo() % 2 == 0) {
+                it.remove();
+                map.remove(key);
+            }
+        }
+        assertEquals(expected, seen);
+        assertEquals(map, tree);
+        assertEquals(expectedOverlapping(lo, hi), keys(tree.overlapping(lo, hi)));
+    }
+}
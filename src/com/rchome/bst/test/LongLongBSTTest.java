@@ -0,0 +1,134 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.LongLongBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class LongLongBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private LongLongBST tree;
+    private TreeMap<Long, Long> map;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new LongLongBST();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            long key = random.nextLong();
+            long value = random.nextLong();
+            tree.put(key, value);
+            map.put(key, value);
+        }
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        for (Map.Entry<Long, Long> entry : map.entrySet()) {
+            assertEquals(entry.getValue().longValue(), tree.get(entry.getKey().longValue()));
+            assertEquals(entry.getValue(), tree.get((Object) entry.getKey()));
+        }
+        long missing = 0;
+        while (map.containsKey(missing)) {
+            missing++;
+        }
+        assertFalse(tree.containsKey(missing));
+        assertEquals(tree.getNoEntryValue(), tree.get(missing));
+        assertNull(tree.get((Object) missing));
+    }
+
+    @Test
+    public void testPutAndRemove() throws Exception {
+        for (Map.Entry<Long, Long> entry : map.entrySet()) {
+            long key = entry.getKey();
+            assertEquals(entry.getValue().longValue(), tree.put(key, key));
+            assertEquals(key, tree.get(key));
+        }
+        assertEquals(map.size(), tree.size());
+
+        int removed = 0;
+        for (Long key : map.keySet()) {
+            if (removed++ % 2 == 0) {
+                assertEquals(key.longValue(), tree.remove(key.longValue()));
+                assertFalse(tree.containsKey(key.longValue()));
+            }
+        }
+        assertEquals(map.size() / 2, tree.size());
+
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            long key = random.nextLong();
+            tree.put(key, key);
+            assertEquals(key, tree.get(key));
+        }
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        Iterator<Map.Entry<Long, Long>> it = map.entrySet().iterator();
+        tree.forEachEntry((key, value) -> {
+            Map.Entry<Long, Long> entry = it.next();
+            assertEquals(entry.getKey().longValue(), key);
+            assertEquals(entry.getValue().longValue(), value);
+        });
+        assertFalse(it.hasNext());
+
+        // the boxed Map.forEach takes an untyped lambda as well
+        Map<Long, Long> copy = new TreeMap<>();
+        tree.forEach((key, value) -> copy.put(key, value));
+        assertEquals(map, copy);
+    }
+
+    @Test
+    public void testEntrySet() throws Exception {
+        assertEquals(map.entrySet(), tree.entrySet());
+        assertEquals(map, tree);
+    }
+
+    @Test
+    public void testIteratorRemove() throws Exception {
+        Iterator<Map.Entry<Long, Long>> it = tree.entrySet().iterator();
+        for (Map.Entry<Long, Long> entry : map.entrySet()) {
+            assertEquals(entry, it.next());
+            it.remove();
+            assertFalse(tree.containsKey(entry.getKey()));
+        }
+        assertFalse(it.hasNext());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void testPutDuringIteration() throws Exception {
+        long key = 0;
+        while (map.containsKey(key) || map.containsKey(key + 1)) {
+            key++;
+        }
+        Iterator<Map.Entry<Long, Long>> it = tree.entrySet().iterator();
+        it.next();
+        tree.put(key, 1L);
+        try {
+            it.next();
+            fail();
+        }
+        catch (ConcurrentModificationException e) {
+            // expected
+        }
+
+        long absent = key + 1;
+        try {
+            tree.forEachEntry((k, value) -> tree.put(absent, value));
+            fail();
+        }
+        catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+}
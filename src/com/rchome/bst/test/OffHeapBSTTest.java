@@ -0,0 +1,170 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.ByteCodec;
+import com.rchome.bst.OffHeapBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class OffHeapBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private OffHeapBST<Long, String> tree;
+    private TreeMap<Long, String> map;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new OffHeapBST<>(ByteCodec.LONG, ByteCodec.utf8(32));
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            long key = random.nextLong();
+            String value = Long.toHexString(random.nextLong());
+            tree.put(key, value);
+            map.put(key, value);
+        }
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        assertEquals(map.size(), tree.size());
+        for (Map.Entry<Long, String> entry : map.entrySet()) {
+            assertEquals(entry.getValue(), tree.get(entry.getKey()));
+        }
+        long missing = 0;
+        while (map.containsKey(missing)) {
+            missing++;
+        }
+        assertFalse(tree.containsKey(missing));
+        assertNull(tree.get(missing));
+    }
+
+    @Test
+    public void testPutAndRemove() throws Exception {
+        for (Map.Entry<Long, String> entry : map.entrySet()) {
+            assertEquals(entry.getValue(), tree.put(entry.getKey(), null));
+            assertTrue(tree.containsKey(entry.getKey()));
+            assertNull(tree.get(entry.getKey()));
+        }
+
+        int removed = 0;
+        for (Long key : map.keySet()) {
+            if (removed++ % 2 == 0) {
+                tree.remove(key);
+                assertFalse(tree.containsKey(key));
+            }
+        }
+        assertEquals(map.size() / 2, tree.size());
+    }
+
+    @Test
+    public void testEntrySet() throws Exception {
+        assertEquals(map.entrySet(), tree.entrySet());
+        assertEquals(map, tree);
+    }
+
+    @Test
+    public void testIteratorRemove() throws Exception {
+        Iterator<Map.Entry<Long, String>> it = tree.entrySet().iterator();
+        for (Map.Entry<Long, String> entry : map.entrySet()) {
+            assertEquals(entry, it.next());
+            it.remove();
+            assertFalse(tree.containsKey(entry.getKey()));
+        }
+        assertFalse(it.hasNext());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void testStringKeys() throws Exception {
+        OffHeapBST<String, Long> strings = new OffHeapBST<>(ByteCodec.utf8(32), ByteCodec.LONG);
+        TreeMap<String, Long> expected = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            String key = Long.toString(random.nextLong(), 36);
+            strings.put(key, (long) i);
+            expected.put(key, (long) i);
+        }
+        assertEquals(expected.entrySet(), strings.entrySet());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(strings.keySet()));
+
+        strings.clear();
+        assertTrue(strings.isEmpty());
+        strings.put("a", 1L);
+        assertEquals(Long.valueOf(1L), strings.get("a"));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        List<Long> keys = new ArrayList<>(map.keySet());
+        List<Thread> readers = new ArrayList<>();
+        int[] wrong = new int[4];
+        for (int t = 0; t < wrong.length; t++) {
+            int reader = t;
+            readers.add(new Thread(() -> {
+                Random random = new Random();
+                for (int i = 0; i < TEST_SIZE; i++) {
+                    Long key = keys.get(random.nextInt(keys.size()));
+                    if (!map.get(key).equals(tree.get(key))) {
+                        wrong[reader]++;
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertArrayEquals(new int[wrong.length], wrong);
+    }
+
+    @Test
+    public void testRejectedValue() throws Exception {
+        long key = 0;
+        while (map.containsKey(key)) {
+            key++;
+        }
+        for (int i = 0; i < 10; i++) {
+            try {
+                tree.put(key, "a value longer than the thirty-two bytes the codec allows");
+                fail();
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(map.size(), tree.size());
+        assertFalse(tree.containsKey(key));
+        tree.put(key, "fits");
+        map.put(key, "fits");
+        assertEquals(map, tree);
+    }
+
+    @Test
+    public void testPutDuringIteration() throws Exception {
+        long key = 0;
+        while (map.containsKey(key)) {
+            key++;
+        }
+        Iterator<Map.Entry<Long, String>> it = tree.entrySet().iterator();
+        it.next();
+        tree.put(key, "new");
+        try {
+            it.next();
+            fail();
+        }
+        catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.PersistentBST;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class PersistentBSTTest {
+    public static final int TEST_SIZE = 100_000;
+    private PersistentBST<Integer, Integer> tree;
+    private TreeMap<Integer, Integer> map;
+
+    @Before
+    public void setUp() throws Exception {
+        tree = new PersistentBST<>();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            assertEquals(map.put(key, i), tree.put(key, i));
+        }
+    }
+
+    @Test
+    public void testMapOperations() throws Exception {
+        assertEquals(map.size(), tree.size());
+        assertEquals(map, tree);
+        assertEquals(map.firstKey(), tree.firstKey());
+        assertEquals(map.lastKey(), tree.lastKey());
+        Random random = new Random();
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        for (int i = 0; i < TEST_SIZE; i++) {
+            Integer key = keys.get(random.nextInt(keys.size()));
+            assertEquals(map.remove(key), tree.remove(key));
+        }
+        assertEquals(map.size(), tree.size());
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(tree.entrySet()));
+
+        int lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        SortedMap<Integer, Integer> view = tree.subMap(lo, hi);
+        assertEquals(map.subMap(lo, hi).size(), view.size());
+        assertEquals(new ArrayList<>(map.subMap(lo, hi).keySet()), new ArrayList<>(view.keySet()));
+        assertEquals(map.headMap(0).lastKey(), tree.headMap(0).lastKey());
+        view.clear();
+        map.subMap(lo, hi).clear();
+        assertEquals(map, tree);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        SortedMap<Integer, Integer> snapshot = tree.snapshot();
+        TreeMap<Integer, Integer> expected = new TreeMap<>(map);
+        Iterator<Map.Entry<Integer, Integer>> it = snapshot.entrySet().iterator();
+        Random random = new Random();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            // the snapshot does not see updates made while it is iterated
+            tree.remove(entry.getKey());
+            tree.put(random.nextInt(), 0);
+        }
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(expected, snapshot);
+        try {
+            snapshot.put(0, 0);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.entrySet().iterator().next().setValue(0);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIterateWhileUpdating() throws Exception {
+        int size = map.size();
+        Iterator<Integer> it = tree.keySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Integer key = it.next();
+            if (key % 2 == 0) {
+                it.remove();
+                map.remove(key);
+            }
+            tree.put(key + 1, 0);
+            map.put(key + 1, 0);
+            count++;
+        }
+        assertEquals(size, count);
+        assertEquals(map, tree);
+    }
+}
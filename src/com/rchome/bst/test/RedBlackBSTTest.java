@@ -0,0 +1,56 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.BinarySearchTree;
+import com.rchome.bst.RedBlackBST;
+import org.junit.Test;
+
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class RedBlackBSTTest extends BinarySearchTreeTest {
+
+    @Override
+    protected <K, V> BinarySearchTree<K, V> createTree() {
+        return new RedBlackBST<>();
+    }
+
+    @Test
+    public void testSortedInsertHeight() throws Exception {
+        BinarySearchTree<Integer, Integer> sorted = createTree();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            sorted.put(i, i);
+        }
+        assertTrue(String.valueOf(sorted.getHeight()), sorted.getHeight() <= 2 * log2(TEST_SIZE + 1));
+
+        for (int i = 0; i < TEST_SIZE; i += 2) {
+            sorted.remove(i);
+        }
+        assertEquals(TEST_SIZE / 2, sorted.size());
+        assertTrue(String.valueOf(sorted.getHeight()), sorted.getHeight() <= 2 * log2(TEST_SIZE / 2 + 1));
+        for (int i = 0; i < TEST_SIZE; i++) {
+            assertEquals(String.valueOf(i), i % 2 == 1, sorted.containsKey(i));
+        }
+    }
+
+    @Test
+    public void testFromSorted() throws Exception {
+        TreeMap<Integer, Integer> sorted = new TreeMap<>();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            sorted.put(i, i);
+        }
+        RedBlackBST<Integer, Integer> built = RedBlackBST.fromSorted(sorted.entrySet().iterator(), sorted.size());
+        assertEquals(sorted, built);
+        assertEquals(log2(TEST_SIZE) - 1, built.getHeight());
+
+        for (int i = 0; i < TEST_SIZE; i += 3) {
+            built.remove(i);
+            built.put(TEST_SIZE + i, i);
+        }
+        assertTrue(String.valueOf(built.getHeight()), built.getHeight() <= 2 * log2(built.size() + 1));
+    }
+
+    private static int log2(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+}
@@ -0,0 +1,87 @@
+package com.rchome.bst.test;
+
+import com.rchome.bst.BinarySearchTree;
+import com.rchome.bst.SplayBST;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class SplayBSTTest extends BinarySearchTreeTest {
+
+    private static class InspectableSplayBST<K, V> extends SplayBST<K, V> {
+        K rootKey() {
+            return root == null ? null : root.getKey();
+        }
+    }
+
+    @Override
+    protected <K, V> BinarySearchTree<K, V> createTree() {
+        return new SplayBST<>();
+    }
+
+    @Test
+    public void testAccessSplaysToRoot() throws Exception {
+        InspectableSplayBST<Integer, Integer> splay = new InspectableSplayBST<>();
+        splay.setSplayEveryAccess(true);
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            splay.put(key, key);
+            assertEquals(Integer.valueOf(key), splay.rootKey());
+        }
+        for (Integer key : new TreeMap<>(splay).keySet()) {
+            assertEquals(key, splay.get(key));
+            assertEquals(key, splay.rootKey());
+        }
+
+        int height = splay.getHeight();
+        Integer key = splay.rootKey();
+        splay.containsKey(key);
+        assertEquals(height, splay.getHeight());
+
+        int size = splay.size();
+        splay.remove(key);
+        assertFalse(splay.containsKey(key));
+        assertEquals(size - 1, splay.size());
+    }
+
+    @Test
+    public void testLazySplay() throws Exception {
+        InspectableSplayBST<Integer, Integer> splay = new InspectableSplayBST<>();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            splay.put(i, i);
+        }
+        // the root is the most recent insert, and shallow lookups leave it there
+        assertEquals(Integer.valueOf(TEST_SIZE - 1), splay.rootKey());
+        assertEquals(Integer.valueOf(TEST_SIZE - 2), splay.get(TEST_SIZE - 2));
+        assertEquals(Integer.valueOf(TEST_SIZE - 1), splay.rootKey());
+
+        // deep ones splay once every SPLAY_PERIOD
+        for (int i = 0; i < SplayBST.SPLAY_PERIOD; i++) {
+            int height = splay.getHeight();
+            assertEquals(Integer.valueOf(i), splay.get(i));
+            if (i == 0) {
+                assertEquals(Integer.valueOf(0), splay.rootKey());
+            }
+            else {
+                assertEquals(height, splay.getHeight());
+            }
+        }
+        splay.get(SplayBST.SPLAY_PERIOD);
+        assertEquals(Integer.valueOf(SplayBST.SPLAY_PERIOD), splay.rootKey());
+    }
+
+    @Test
+    public void testSortedInsertThenLookup() throws Exception {
+        BinarySearchTree<Integer, Integer> sorted = createTree();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            sorted.put(i, i);
+        }
+        assertEquals(TEST_SIZE - 1, sorted.getHeight());
+        sorted.get(0);
+        assertTrue(String.valueOf(sorted.getHeight()), sorted.getHeight() <= TEST_SIZE / 2 + 1);
+    }
+}
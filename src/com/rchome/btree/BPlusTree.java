@@ -0,0 +1,1354 @@
+package com.rchome.btree;
+
+import java.util.*;
+
+/**
+ * A B+-tree. Internal nodes hold packed arrays of up to <tt>fanOut - 1</tt>
+ * separator keys and <tt>fanOut</tt> children, and all entries live in
+ * leaves of up to <tt>fanOut</tt> keys and values that are linked left to
+ * right, so a lookup touches one short array per level and iteration walks
+ * the leaf arrays in order.
+ * <p/>
+ * Navigation and range views descend to the leaf holding their first key
+ * and then scan the leaf arrays from there to the bound, backwards through
+ * <tt>prev</tt> links for the descending views.
+ * <p/>
+ * Every key in the subtree to the left of a separator is smaller than it,
+ * and every key to the right is greater than or equal to it. Non-root nodes
+ * are kept at least half full.
+ */
+public class BPlusTree<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    public static final int DEFAULT_FAN_OUT = 64;
+
+    private abstract static class Node {
+        final Object[] keys;
+        int size;
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+
+        abstract boolean isLeaf();
+    }
+
+    private static class Leaf extends Node {
+        final Object[] values;
+        Leaf prev, next;
+
+        Leaf(int fanOut) {
+            super(fanOut + 1);
+            values = new Object[fanOut + 1];
+        }
+
+        @Override
+        boolean isLeaf() {
+            return true;
+        }
+    }
+
+    private static class Internal extends Node {
+        final Node[] children;
+
+        Internal(int fanOut) {
+            super(fanOut);
+            children = new Node[fanOut + 1];
+        }
+
+        @Override
+        boolean isLeaf() {
+            return false;
+        }
+    }
+
+    private final int fanOut;
+    private final int minLeafSize;
+    private final int minInternalSize;
+    private Comparator<? super K> comparator;
+    private Node root;
+    private int size;
+    private int modCount;
+    // views, created on first use
+    private transient KeySet<K> keySet;
+    private transient NavigableMap<K, V> descendingMap;
+
+    // results handed back up the recursion by insert and delete
+    private Node splitSibling;
+    private Object splitKey;
+    private Object previousValue;
+    private boolean found;
+
+    public BPlusTree() {
+        this(DEFAULT_FAN_OUT);
+    }
+
+    public BPlusTree(int fanOut) {
+        this(fanOut, null);
+    }
+
+    public BPlusTree(Comparator<? super K> comparator) {
+        this(DEFAULT_FAN_OUT, comparator);
+    }
+
+    public BPlusTree(int fanOut, Comparator<? super K> comparator) {
+        if(fanOut < 3) {
+            throw new IllegalArgumentException("Fan-out must be at least 3: " + fanOut);
+        }
+        this.fanOut = fanOut;
+        this.minLeafSize = fanOut / 2;
+        this.minInternalSize = (fanOut - 1) / 2;
+        this.comparator = comparator;
+    }
+
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of edges from the root to a leaf, which is the same
+     * for every leaf.
+     */
+    public int getHeight() {
+        int height = 0;
+        Node current = root;
+        while(current != null && !current.isLeaf()) {
+            current = ((Internal) current).children[0];
+            height++;
+        }
+        return height;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Leaf leaf = findLeaf(key);
+        return leaf != null && search(leaf, key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf leaf = findLeaf(key);
+        if(leaf == null) {
+            return null;
+        }
+        int index = search(leaf, key);
+        return index < 0 ? null : (V) leaf.values[index];
+    }
+
+    private Leaf findLeaf(Object key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        Node current = root;
+        while(current != null && !current.isLeaf()) {
+            current = ((Internal) current).children[childIndex(current, key)];
+        }
+        return (Leaf) current;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        if(root == null) {
+            root = new Leaf(fanOut);
+        }
+        previousValue = null;
+        if(insert(root, key, value)) {
+            Internal newRoot = new Internal(fanOut);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitSibling;
+            newRoot.size = 1;
+            root = newRoot;
+            splitKey = null;
+            splitSibling = null;
+        }
+        V old = (V) previousValue;
+        previousValue = null;
+        return old;
+    }
+
+    /**
+     * Inserts into the subtree rooted at <tt>node</tt>. Returns <tt>true</tt>
+     * if <tt>node</tt> overflowed and was split, in which case the new right
+     * sibling and the separator to insert above it are left in
+     * {@link #splitSibling} and {@link #splitKey}.
+     */
+    private boolean insert(Node node, K key, V value) {
+        if(node.isLeaf()) {
+            Leaf leaf = (Leaf) node;
+            int index = search(leaf, key);
+            if(index >= 0) {
+                previousValue = leaf.values[index];
+                leaf.values[index] = value;
+                return false;
+            }
+            index = -index - 1;
+            shiftRight(leaf.keys, index, leaf.size);
+            shiftRight(leaf.values, index, leaf.size);
+            leaf.keys[index] = key;
+            leaf.values[index] = value;
+            leaf.size++;
+            size++;
+            modCount++;
+            if(leaf.size <= fanOut) {
+                return false;
+            }
+            splitLeaf(leaf);
+            return true;
+        }
+
+        Internal internal = (Internal) node;
+        int index = childIndex(internal, key);
+        if(!insert(internal.children[index], key, value)) {
+            return false;
+        }
+        shiftRight(internal.keys, index, internal.size);
+        shiftRight(internal.children, index + 1, internal.size + 1);
+        internal.keys[index] = splitKey;
+        internal.children[index + 1] = splitSibling;
+        internal.size++;
+        if(internal.size < fanOut) {
+            splitKey = null;
+            splitSibling = null;
+            return false;
+        }
+        splitInternal(internal);
+        return true;
+    }
+
+    private void splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(fanOut);
+        int keep = leaf.size / 2;
+        int move = leaf.size - keep;
+        System.arraycopy(leaf.keys, keep, right.keys, 0, move);
+        System.arraycopy(leaf.values, keep, right.values, 0, move);
+        Arrays.fill(leaf.keys, keep, leaf.size, null);
+        Arrays.fill(leaf.values, keep, leaf.size, null);
+        leaf.size = keep;
+        right.size = move;
+        right.prev = leaf;
+        right.next = leaf.next;
+        if(leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        splitKey = right.keys[0];
+        splitSibling = right;
+    }
+
+    private void splitInternal(Internal internal) {
+        Internal right = new Internal(fanOut);
+        int middle = internal.size / 2;
+        int move = internal.size - middle - 1;
+        splitKey = internal.keys[middle];
+        System.arraycopy(internal.keys, middle + 1, right.keys, 0, move);
+        System.arraycopy(internal.children, middle + 1, right.children, 0, move + 1);
+        Arrays.fill(internal.keys, middle, internal.size, null);
+        Arrays.fill(internal.children, middle + 1, internal.size + 1, null);
+        internal.size = middle;
+        right.size = move;
+        splitSibling = right;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        if(root == null) {
+            return null;
+        }
+        found = false;
+        previousValue = null;
+        delete(root, key);
+        if(root.size == 0) {
+            root = root.isLeaf() ? null : ((Internal) root).children[0];
+        }
+        V old = (V) previousValue;
+        previousValue = null;
+        return old;
+    }
+
+    private void delete(Node node, Object key) {
+        if(node.isLeaf()) {
+            Leaf leaf = (Leaf) node;
+            int index = search(leaf, key);
+            if(index < 0) {
+                return;
+            }
+            found = true;
+            previousValue = leaf.values[index];
+            shiftLeft(leaf.keys, index, leaf.size);
+            shiftLeft(leaf.values, index, leaf.size);
+            leaf.size--;
+            size--;
+            modCount++;
+            return;
+        }
+
+        Internal internal = (Internal) node;
+        int index = childIndex(internal, key);
+        Node child = internal.children[index];
+        delete(child, key);
+        if(found && child.size < (child.isLeaf() ? minLeafSize : minInternalSize)) {
+            rebalance(internal, index);
+        }
+    }
+
+    /**
+     * Refills the underflowing child at <tt>index</tt> by borrowing from a
+     * sibling that can spare an entry, or else merges it with a sibling.
+     */
+    private void rebalance(Internal parent, int index) {
+        Node child = parent.children[index];
+        int min = child.isLeaf() ? minLeafSize : minInternalSize;
+        if(index > 0 && parent.children[index - 1].size > min) {
+            borrowFromLeft(parent, index);
+        }
+        else if(index < parent.size && parent.children[index + 1].size > min) {
+            borrowFromRight(parent, index);
+        }
+        else if(index > 0) {
+            merge(parent, index - 1);
+        }
+        else {
+            merge(parent, index);
+        }
+    }
+
+    private void borrowFromLeft(Internal parent, int index) {
+        Node child = parent.children[index];
+        Node left = parent.children[index - 1];
+        shiftRight(child.keys, 0, child.size);
+        if(child.isLeaf()) {
+            Leaf leaf = (Leaf) child, leftLeaf = (Leaf) left;
+            shiftRight(leaf.values, 0, leaf.size);
+            leaf.keys[0] = leftLeaf.keys[leftLeaf.size - 1];
+            leaf.values[0] = leftLeaf.values[leftLeaf.size - 1];
+            leftLeaf.keys[leftLeaf.size - 1] = null;
+            leftLeaf.values[leftLeaf.size - 1] = null;
+            parent.keys[index - 1] = leaf.keys[0];
+        }
+        else {
+            Internal internal = (Internal) child, leftInternal = (Internal) left;
+            shiftRight(internal.children, 0, internal.size + 1);
+            internal.keys[0] = parent.keys[index - 1];
+            internal.children[0] = leftInternal.children[leftInternal.size];
+            parent.keys[index - 1] = leftInternal.keys[leftInternal.size - 1];
+            leftInternal.keys[leftInternal.size - 1] = null;
+            leftInternal.children[leftInternal.size] = null;
+        }
+        child.size++;
+        left.size--;
+    }
+
+    private void borrowFromRight(Internal parent, int index) {
+        Node child = parent.children[index];
+        Node right = parent.children[index + 1];
+        if(child.isLeaf()) {
+            Leaf leaf = (Leaf) child, rightLeaf = (Leaf) right;
+            leaf.keys[leaf.size] = rightLeaf.keys[0];
+            leaf.values[leaf.size] = rightLeaf.values[0];
+            shiftLeft(rightLeaf.keys, 0, rightLeaf.size);
+            shiftLeft(rightLeaf.values, 0, rightLeaf.size);
+            parent.keys[index] = rightLeaf.keys[0];
+        }
+        else {
+            Internal internal = (Internal) child, rightInternal = (Internal) right;
+            internal.keys[internal.size] = parent.keys[index];
+            internal.children[internal.size + 1] = rightInternal.children[0];
+            parent.keys[index] = rightInternal.keys[0];
+            shiftLeft(rightInternal.keys, 0, rightInternal.size);
+            shiftLeft(rightInternal.children, 0, rightInternal.size + 1);
+        }
+        child.size++;
+        right.size--;
+    }
+
+    /**
+     * Merges the child at <tt>index + 1</tt> into the child at
+     * <tt>index</tt> and drops the separator between them.
+     */
+    private void merge(Internal parent, int index) {
+        Node left = parent.children[index];
+        Node right = parent.children[index + 1];
+        if(left.isLeaf()) {
+            Leaf leftLeaf = (Leaf) left, rightLeaf = (Leaf) right;
+            System.arraycopy(rightLeaf.keys, 0, leftLeaf.keys, leftLeaf.size, rightLeaf.size);
+            System.arraycopy(rightLeaf.values, 0, leftLeaf.values, leftLeaf.size, rightLeaf.size);
+            leftLeaf.size += rightLeaf.size;
+            leftLeaf.next = rightLeaf.next;
+            if(rightLeaf.next != null) {
+                rightLeaf.next.prev = leftLeaf;
+            }
+        }
+        else {
+            Internal leftInternal = (Internal) left, rightInternal = (Internal) right;
+            leftInternal.keys[leftInternal.size] = parent.keys[index];
+            System.arraycopy(rightInternal.keys, 0, leftInternal.keys, leftInternal.size + 1, rightInternal.size);
+            System.arraycopy(rightInternal.children, 0, leftInternal.children, leftInternal.size + 1, rightInternal.size + 1);
+            leftInternal.size += rightInternal.size + 1;
+        }
+        shiftLeft(parent.keys, index, parent.size);
+        shiftLeft(parent.children, index + 1, parent.size + 1);
+        parent.size--;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the index of <tt>key</tt> in <tt>node</tt>, or
+     * <tt>-(insertion point) - 1</tt> if it is absent.
+     */
+    private int search(Node node, Object key) {
+        K key1 = (K) key;
+        int low = 0, high = node.size - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compare((K) node.keys[middle], key1);
+            if(compare < 0) {
+                low = middle + 1;
+            }
+            else if(compare > 0) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the child of <tt>node</tt> whose subtree may
+     * contain <tt>key</tt>.
+     */
+    private int childIndex(Node node, Object key) {
+        int index = search(node, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private int compare(K key1, K key2) {
+        if(comparator == null) {
+            return ((Comparable<? super K>)key1).compareTo(key2);
+        }
+        return comparator.compare(key1, key2);
+    }
+
+    private static void shiftRight(Object[] array, int from, int length) {
+        System.arraycopy(array, from, array, from + 1, length - from);
+    }
+
+    private static void shiftLeft(Object[] array, int from, int length) {
+        System.arraycopy(array, from + 1, array, from, length - from - 1);
+        array[length - 1] = null;
+    }
+
+    private Leaf firstLeaf() {
+        Node current = root;
+        while(current != null && !current.isLeaf()) {
+            current = ((Internal) current).children[0];
+        }
+        return (Leaf) current;
+    }
+
+    private Leaf lastLeaf() {
+        Node current = root;
+        while(current != null && !current.isLeaf()) {
+            current = ((Internal) current).children[current.size];
+        }
+        return (Leaf) current;
+    }
+
+    /**
+     * A position in the chain of leaves: the entry at <tt>index</tt> in
+     * <tt>leaf</tt>, or no entry at all once <tt>leaf</tt> is null.
+     */
+    private final class Cursor {
+        Leaf leaf;
+        int index;
+
+        Cursor(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+        }
+
+        K key() {
+            return (K) leaf.keys[index];
+        }
+
+        V value() {
+            return (V) leaf.values[index];
+        }
+
+        void next() {
+            index++;
+            skipForward();
+        }
+
+        void previous() {
+            index--;
+            skipBackward();
+        }
+
+        Cursor skipForward() {
+            while(leaf != null && index >= leaf.size) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            return this;
+        }
+
+        Cursor skipBackward() {
+            while(leaf != null && index < 0) {
+                leaf = leaf.prev;
+                index = leaf == null ? 0 : leaf.size - 1;
+            }
+            return this;
+        }
+    }
+
+    private Cursor firstCursor() {
+        return new Cursor(firstLeaf(), 0).skipForward();
+    }
+
+    private Cursor lastCursor() {
+        Leaf leaf = lastLeaf();
+        return new Cursor(leaf, leaf == null ? 0 : leaf.size - 1).skipBackward();
+    }
+
+    /**
+     * Returns the position of the least key greater than (or equal to, if
+     * <tt>inclusive</tt>) <tt>key</tt>. Only the leaf that would hold
+     * <tt>key</tt> is searched; the answer is there or first in a later one.
+     */
+    private Cursor ceilingCursor(Object key, boolean inclusive) {
+        Leaf leaf = findLeaf(key);
+        if(leaf == null) {
+            return new Cursor(null, 0);
+        }
+        int index = search(leaf, key);
+        index = index >= 0 ? (inclusive ? index : index + 1) : -index - 1;
+        return new Cursor(leaf, index).skipForward();
+    }
+
+    /**
+     * Returns the position of the greatest key less than (or equal to, if
+     * <tt>inclusive</tt>) <tt>key</tt>.
+     */
+    private Cursor floorCursor(Object key, boolean inclusive) {
+        Leaf leaf = findLeaf(key);
+        if(leaf == null) {
+            return new Cursor(null, 0);
+        }
+        int index = search(leaf, key);
+        index = index >= 0 ? (inclusive ? index : index - 1) : -index - 2;
+        return new Cursor(leaf, index).skipBackward();
+    }
+
+    private Entry<K, V> exportEntry(Cursor cursor) {
+        return cursor.leaf == null ? null : new SimpleImmutableEntry<>(cursor.key(), cursor.value());
+    }
+
+    private K keyOrNull(Cursor cursor) {
+        return cursor.leaf == null ? null : cursor.key();
+    }
+
+    private K key(Cursor cursor) {
+        if(cursor.leaf == null) {
+            throw new NoSuchElementException();
+        }
+        return cursor.key();
+    }
+
+    private Entry<K, V> pollEntry(Cursor cursor) {
+        Entry<K, V> entry = exportEntry(cursor);
+        if(entry != null) {
+            remove(entry.getKey());
+        }
+        return entry;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return key(firstCursor());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(lastCursor());
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return exportEntry(firstCursor());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return exportEntry(lastCursor());
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return pollEntry(firstCursor());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return pollEntry(lastCursor());
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return exportEntry(floorCursor(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(floorCursor(key, false));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return exportEntry(floorCursor(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorCursor(key, true));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(ceilingCursor(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingCursor(key, true));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return exportEntry(ceilingCursor(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(ceilingCursor(key, false));
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        if(keySet == null) {
+            keySet = new KeySet<>(this);
+        }
+        return keySet;
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        if(descendingMap == null) {
+            descendingMap = new SubMap(true, null, true, true, null, true, true);
+        }
+        return descendingMap;
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap(true, null, true, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap(false, fromKey, inclusive, true, null, true, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>o</tt> is an entry whose key lies in
+     * <tt>range</tt> (if given) and is mapped to its value.
+     */
+    private boolean containsEntry(Object o, SubMap range) {
+        if(!(o instanceof Entry)) {
+            return false;
+        }
+        Entry<?, ?> entry = (Entry<?, ?>) o;
+        Object key = entry.getKey();
+        if(key == null || (range != null && !range.inRange(key))) {
+            return false;
+        }
+        Leaf leaf = findLeaf(key);
+        if(leaf == null) {
+            return false;
+        }
+        int index = search(leaf, key);
+        return index >= 0 && Objects.equals(leaf.values[index], entry.getValue());
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new BPlusTreeIterator(firstCursor(), true, null);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsEntry(o, null);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(!containsEntry(o, null)) {
+                return false;
+            }
+            BPlusTree.this.remove(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return BPlusTree.this.size();
+        }
+    }
+
+    private class BPlusTreeEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        BPlusTreeEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Walks the leaf arrays through their <tt>next</tt> links, or their
+     * <tt>prev</tt> links when descending, and stops at the bound of
+     * <tt>range</tt> if there is one. Removing through the iterator may
+     * merge or rebalance leaves, so the iterator finds its place again by
+     * searching for the removed key.
+     */
+    private class BPlusTreeIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final boolean ascending;
+        private final SubMap range;
+        private Cursor cursor;
+        private K lastKey;
+        private boolean canRemove;
+        private int expectedModCount;
+
+        BPlusTreeIterator(Cursor first, boolean ascending, SubMap range) {
+            this.ascending = ascending;
+            this.range = range;
+            expectedModCount = modCount;
+            cursor = first;
+            checkBound();
+        }
+
+        private void checkBound() {
+            if(cursor.leaf != null && range != null
+                    && (ascending ? range.tooHigh(cursor.key()) : range.tooLow(cursor.key()))) {
+                cursor.leaf = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.leaf != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if(cursor.leaf == null) {
+                throw new NoSuchElementException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            K key = cursor.key();
+            V value = cursor.value();
+            if(ascending) {
+                cursor.next();
+            }
+            else {
+                cursor.previous();
+            }
+            checkBound();
+            lastKey = key;
+            canRemove = true;
+            return new BPlusTreeEntry(key, value);
+        }
+
+        @Override
+        public void remove() {
+            if(!canRemove) {
+                throw new IllegalStateException();
+            }
+            if(expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            BPlusTree.this.remove(lastKey);
+            canRemove = false;
+            expectedModCount = modCount;
+            cursor = ascending ? ceilingCursor(lastKey, false) : floorCursor(lastKey, false);
+            checkBound();
+        }
+    }
+
+    /**
+     * A view of the entries with keys between optional low and high bounds,
+     * in ascending or descending order. Lookups search the whole tree and
+     * reject keys outside the bounds; iteration seeks to the first entry in
+     * range and scans the leaves until it passes the other bound.
+     */
+    private class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+        private final boolean fromStart, loInclusive, toEnd, hiInclusive, descending;
+        private final K lo, hi;
+
+        SubMap(boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+            if((!fromStart && lo == null) || (!toEnd && hi == null)) {
+                throw new NullPointerException();
+            }
+            if(!fromStart && !toEnd && compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        boolean tooLow(Object key) {
+            if(fromStart) {
+                return false;
+            }
+            int compare = compare((K) key, lo);
+            return compare < 0 || (compare == 0 && !loInclusive);
+        }
+
+        boolean tooHigh(Object key) {
+            if(toEnd) {
+                return false;
+            }
+            int compare = compare((K) key, hi);
+            return compare > 0 || (compare == 0 && !hiInclusive);
+        }
+
+        boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        /**
+         * Checks a bound for a nested view: an exclusive bound may sit on
+         * this view's own exclusive bound.
+         */
+        private boolean inRange(K key, boolean inclusive) {
+            if(inclusive) {
+                return inRange(key);
+            }
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+        }
+
+        private Cursor absLowest() {
+            Cursor cursor = fromStart ? firstCursor() : ceilingCursor(lo, loInclusive);
+            if(cursor.leaf != null && tooHigh(cursor.key())) {
+                cursor.leaf = null;
+            }
+            return cursor;
+        }
+
+        private Cursor absHighest() {
+            Cursor cursor = toEnd ? lastCursor() : floorCursor(hi, hiInclusive);
+            if(cursor.leaf != null && tooLow(cursor.key())) {
+                cursor.leaf = null;
+            }
+            return cursor;
+        }
+
+        private Cursor absCeiling(K key, boolean inclusive) {
+            if(tooLow(key)) {
+                return absLowest();
+            }
+            Cursor cursor = ceilingCursor(key, inclusive);
+            if(cursor.leaf != null && tooHigh(cursor.key())) {
+                cursor.leaf = null;
+            }
+            return cursor;
+        }
+
+        private Cursor absFloor(K key, boolean inclusive) {
+            if(tooHigh(key)) {
+                return absHighest();
+            }
+            Cursor cursor = floorCursor(key, inclusive);
+            if(cursor.leaf != null && tooLow(cursor.key())) {
+                cursor.leaf = null;
+            }
+            return cursor;
+        }
+
+        private Cursor lowest() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Cursor highest() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        private Cursor ceiling(K key, boolean inclusive) {
+            return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        private Cursor floor(K key, boolean inclusive) {
+            return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && BPlusTree.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? BPlusTree.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if(!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+            return BPlusTree.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? BPlusTree.this.remove(key) : null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest().leaf == null;
+        }
+
+        /**
+         * Counts the entries in range, adding up whole leaves until the leaf
+         * that holds the high bound.
+         */
+        @Override
+        public int size() {
+            Cursor cursor = absLowest();
+            Leaf leaf = cursor.leaf;
+            int index = cursor.index;
+            int count = 0;
+            while(leaf != null && !tooHigh(leaf.keys[leaf.size - 1])) {
+                count += leaf.size - index;
+                leaf = leaf.next;
+                index = 0;
+            }
+            while(leaf != null && index < leaf.size && !tooHigh(leaf.keys[index])) {
+                count++;
+                index++;
+            }
+            return count;
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new BPlusTreeIterator(lowest(), !descending, SubMap.this);
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsEntry(o, SubMap.this);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if(!containsEntry(o, SubMap.this)) {
+                        return false;
+                    }
+                    BPlusTree.this.remove(((Entry<?, ?>) o).getKey());
+                    return true;
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public K firstKey() {
+            return key(lowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(highest());
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return exportEntry(lowest());
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return exportEntry(highest());
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            return pollEntry(lowest());
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            return pollEntry(highest());
+        }
+
+        @Override
+        public Entry<K, V> lowerEntry(K key) {
+            return exportEntry(floor(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(floor(key, false));
+        }
+
+        @Override
+        public Entry<K, V> floorEntry(K key) {
+            return exportEntry(floor(key, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floor(key, true));
+        }
+
+        @Override
+        public Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(ceiling(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceiling(key, true));
+        }
+
+        @Override
+        public Entry<K, V> higherEntry(K key) {
+            return exportEntry(ceiling(key, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(ceiling(key, false));
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if(!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+            }
+            return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if(!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            if(descending) {
+                return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+            }
+            return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if(!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if(descending) {
+                return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+            }
+            return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /**
+     * A navigable view of the keys of a {@link BPlusTree} or one of its
+     * sub-maps.
+     */
+    private static class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+
+        private final NavigableMap<E, ?> map;
+
+        KeySet(NavigableMap<E, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            final Iterator<? extends Entry<E, ?>> it = map.entrySet().iterator();
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(!map.containsKey(o)) {
+                return false;
+            }
+            map.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public E lower(E e) {
+            return map.lowerKey(e);
+        }
+
+        @Override
+        public E floor(E e) {
+            return map.floorKey(e);
+        }
+
+        @Override
+        public E ceiling(E e) {
+            return map.ceilingKey(e);
+        }
+
+        @Override
+        public E higher(E e) {
+            return map.higherKey(e);
+        }
+
+        @Override
+        public E pollFirst() {
+            Entry<E, ?> entry = map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public E pollLast() {
+            Entry<E, ?> entry = map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super E> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public E first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public E last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(map.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+            return new KeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.rchome.btree;
+
+import java.util.*;
+
+/**
+ * A set view over the keys of a {@link BPlusTree}, in the style of
+ * {@link com.rchome.bst.BinarySearchTreeSet}.
+ */
+public class BPlusTreeSet<E> extends AbstractSet<E> implements NavigableSet<E> {
+
+    private static final Object VALUE = new Object();
+
+    private NavigableMap<E, Object> tree;
+
+    public BPlusTreeSet() {
+        this(new BPlusTree<E, Object>());
+    }
+
+    public BPlusTreeSet(int fanOut) {
+        this(new BPlusTree<E, Object>(fanOut));
+    }
+
+    public BPlusTreeSet(Comparator<? super E> comparator) {
+        this(new BPlusTree<E, Object>(comparator));
+    }
+
+    public BPlusTreeSet(BPlusTree<E, Object> tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * A set backed by a range or descending view of another set's tree.
+     * Like {@link TreeSet}'s views, it supports adding elements that fall
+     * inside its range.
+     */
+    private BPlusTreeSet(NavigableMap<E, Object> view) {
+        this.tree = view;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return tree.keySet().iterator();
+    }
+
+    @Override
+    public boolean add(E e) {
+        return tree.put(e, VALUE) == null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return tree.remove(o) != null;
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return tree.containsKey(o);
+    }
+
+    @Override
+    public E lower(E e) {
+        return tree.lowerKey(e);
+    }
+
+    @Override
+    public E floor(E e) {
+        return tree.floorKey(e);
+    }
+
+    @Override
+    public E ceiling(E e) {
+        return tree.ceilingKey(e);
+    }
+
+    @Override
+    public E higher(E e) {
+        return tree.higherKey(e);
+    }
+
+    @Override
+    public E pollFirst() {
+        Map.Entry<E, ?> entry = tree.pollFirstEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public E pollLast() {
+        Map.Entry<E, ?> entry = tree.pollLastEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return tree.comparator();
+    }
+
+    @Override
+    public E first() {
+        return tree.firstKey();
+    }
+
+    @Override
+    public E last() {
+        return tree.lastKey();
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return tree.descendingKeySet().iterator();
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet() {
+        return new BPlusTreeSet<>(tree.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        return new BPlusTreeSet<>(tree.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+        return new BPlusTreeSet<>(tree.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+        return new BPlusTreeSet<>(tree.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
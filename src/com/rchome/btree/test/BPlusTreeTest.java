@@ -0,0 +1,246 @@
+package com.rchome.btree.test;
+
+import com.rchome.btree.BPlusTree;
+import com.rchome.btree.BPlusTreeSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BPlusTreeTest {
+    public static final int TEST_SIZE = 100_000;
+    private BPlusTree<Integer, Boolean> tree;
+    private TreeMap<Integer, Boolean> map;
+
+    protected BPlusTree<Integer, Boolean> createTree() {
+        return new BPlusTree<>(4);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tree = createTree();
+        map = new TreeMap<>();
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            boolean value = random.nextBoolean();
+            tree.put(key, value);
+            map.put(key, value);
+        }
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        assertEquals(map.size(), tree.size());
+        for (Integer key : map.keySet()) {
+            assertEquals(key.toString(), map.get(key), tree.get(key));
+        }
+        int i = 0;
+        while (map.containsKey(i)) {
+            i++;
+        }
+        assertFalse(tree.containsKey(i));
+        assertNull(tree.get(i));
+    }
+
+    @Test
+    public void testPut() throws Exception {
+        for (Integer key : map.keySet()) {
+            Boolean value = map.get(key);
+            assertEquals(key.toString(), value, tree.put(key, !value));
+            assertEquals(!value, tree.get(key));
+        }
+        assertEquals(map.size(), tree.size());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        for (Integer key : map.keySet()) {
+            assertEquals(key.toString(), map.get(key), tree.remove(key));
+            assertFalse(tree.containsKey(key));
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.getHeight());
+        assertNull(tree.remove(0));
+    }
+
+    @Test
+    public void testRandomRemoveKeepsOrder() throws Exception {
+        List<Integer> keys = new ArrayList<>(map.keySet());
+        Collections.shuffle(keys);
+        for (int i = 0; i < keys.size() / 2; i++) {
+            tree.remove(keys.get(i));
+            map.remove(keys.get(i));
+        }
+        assertEquals(map.entrySet(), tree.entrySet());
+        assertEquals(new ArrayList<>(map.keySet()), new ArrayList<>(tree.keySet()));
+    }
+
+    @Test
+    public void testSortedInsertHeight() throws Exception {
+        BPlusTree<Integer, Integer> sorted = new BPlusTree<>(4);
+        for (int i = 0; i < TEST_SIZE; i++) {
+            sorted.put(i, i);
+        }
+        // every non-root node has at least two children
+        assertTrue(String.valueOf(sorted.getHeight()), sorted.getHeight() <= 32 - Integer.numberOfLeadingZeros(TEST_SIZE));
+        for (int i = 0; i < TEST_SIZE; i++) {
+            assertEquals(Integer.valueOf(i), sorted.get(i));
+        }
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        Iterator<Map.Entry<Integer, Boolean>> it = tree.entrySet().iterator();
+        for (Map.Entry<Integer, Boolean> entry : map.entrySet()) {
+            assertTrue(it.hasNext());
+            assertEquals(entry, it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testIteratorRemove() throws Exception {
+        Iterator<Map.Entry<Integer, Boolean>> it = tree.entrySet().iterator();
+        int i = 0;
+        for (Map.Entry<Integer, Boolean> entry : map.entrySet()) {
+            assertEquals(entry, it.next());
+            if (i++ % 3 != 0) {
+                it.remove();
+                assertFalse(tree.containsKey(entry.getKey()));
+            }
+        }
+        assertFalse(it.hasNext());
+        assertEquals((map.size() + 2) / 3, tree.size());
+    }
+
+    @Test
+    public void testSet() throws Exception {
+        BPlusTreeSet<Integer> set = new BPlusTreeSet<>(8);
+        for (Integer key : map.keySet()) {
+            assertTrue(set.add(key));
+        }
+        assertEquals(map.keySet(), set);
+        assertTrue(set.containsAll(map.keySet()));
+        assertTrue(set.remove(map.firstKey()));
+        assertFalse(set.contains(map.firstKey()));
+    }
+
+    @Test
+    public void testNavigation() throws Exception {
+        assertEquals(map.firstEntry(), tree.firstEntry());
+        assertEquals(map.lastEntry(), tree.lastEntry());
+        assertEquals(map.firstKey(), tree.firstKey());
+        assertEquals(map.lastKey(), tree.lastKey());
+        Random random = new Random();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            int key = random.nextInt();
+            assertEquals(map.lowerEntry(key), tree.lowerEntry(key));
+            assertEquals(map.floorKey(key), tree.floorKey(key));
+            assertEquals(map.ceilingEntry(key), tree.ceilingEntry(key));
+            assertEquals(map.higherKey(key), tree.higherKey(key));
+        }
+        for (Integer key : map.keySet()) {
+            assertEquals(key, tree.floorKey(key));
+            assertEquals(key, tree.ceilingKey(key));
+            assertEquals(map.lowerKey(key), tree.lowerKey(key));
+            assertEquals(map.higherKey(key), tree.higherKey(key));
+        }
+    }
+
+    @Test
+    public void testPollFirstAndLast() throws Exception {
+        while (!map.isEmpty()) {
+            assertEquals(map.pollFirstEntry(), tree.pollFirstEntry());
+            assertEquals(map.pollLastEntry(), tree.pollLastEntry());
+            assertEquals(map.size(), tree.size());
+        }
+        assertNull(tree.pollFirstEntry());
+        assertNull(tree.lastEntry());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void testSubMapViews() throws Exception {
+        Random random = new Random();
+        for (int i = 0; i < 100; i++) {
+            int a = random.nextInt(), b = random.nextInt();
+            int lo = Math.min(a, b), hi = Math.max(a, b);
+            boolean loInclusive = random.nextBoolean(), hiInclusive = random.nextBoolean();
+            NavigableMap<Integer, Boolean> expected = map.subMap(lo, loInclusive, hi, hiInclusive);
+            NavigableMap<Integer, Boolean> actual = tree.subMap(lo, loInclusive, hi, hiInclusive);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+            assertEquals(new ArrayList<>(expected.descendingMap().keySet()), new ArrayList<>(actual.descendingMap().keySet()));
+            assertEquals(expected.firstEntry(), actual.firstEntry());
+            assertEquals(expected.lastEntry(), actual.lastEntry());
+            assertEquals(map.headMap(lo, loInclusive).size(), tree.headMap(lo, loInclusive).size());
+            assertEquals(map.tailMap(hi, hiInclusive).lastEntry(), tree.tailMap(hi, hiInclusive).lastEntry());
+
+            int probe = lo + (int) (((long) hi - lo) / 2);
+            assertEquals(expected.ceilingKey(probe), actual.ceilingKey(probe));
+            assertEquals(expected.descendingMap().ceilingKey(probe), actual.descendingMap().ceilingKey(probe));
+            assertEquals(expected.headMap(probe, true).size(), actual.headMap(probe, true).size());
+        }
+        assertEquals(new ArrayList<>(map.descendingMap().entrySet()), new ArrayList<>(tree.descendingMap().entrySet()));
+    }
+
+    @Test
+    public void testSubMapRemoval() throws Exception {
+        Integer lo = map.firstKey() / 2, hi = map.lastKey() / 2;
+        Iterator<Integer> it = tree.subMap(lo, hi).keySet().iterator();
+        while (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        map.subMap(lo, hi).clear();
+        assertEquals(map, tree);
+        assertEquals(map.size(), tree.size());
+
+        // every other key of the upper half, walking down
+        it = tree.descendingMap().headMap(hi, true).keySet().iterator();
+        Iterator<Integer> expected = map.descendingMap().headMap(hi, true).keySet().iterator();
+        for (int i = 0; expected.hasNext(); i++) {
+            assertEquals(expected.next(), it.next());
+            if (i % 2 == 0) {
+                it.remove();
+                expected.remove();
+            }
+        }
+        assertFalse(it.hasNext());
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(tree.entrySet()));
+
+        tree.descendingMap().pollFirstEntry();
+        map.descendingMap().pollFirstEntry();
+        assertEquals(map.entrySet(), tree.entrySet());
+
+        try {
+            tree.headMap(lo).put(hi, true);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNavigableSet() throws Exception {
+        BPlusTreeSet<Integer> set = new BPlusTreeSet<>(8);
+        TreeSet<Integer> expected = new TreeSet<>(map.keySet());
+        List<Integer> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled);
+        set.addAll(shuffled);
+        int lo = expected.first() / 2, hi = expected.last() / 2;
+        assertEquals(expected.floor(lo), set.floor(lo));
+        assertEquals(expected.higher(hi), set.higher(hi));
+        assertEquals(new ArrayList<>(expected.subSet(lo, hi)), new ArrayList<>(set.subSet(lo, hi)));
+        assertEquals(new ArrayList<>(expected.descendingSet().headSet(hi)), new ArrayList<>(set.descendingSet().headSet(hi)));
+
+        NavigableSet<Integer> tail = set.tailSet(hi, true);
+        assertTrue(tail.add(hi));
+        assertTrue(set.contains(hi));
+        assertEquals(expected.pollFirst(), set.pollFirst());
+        assertEquals(expected.pollLast(), set.pollLast());
+    }
+}